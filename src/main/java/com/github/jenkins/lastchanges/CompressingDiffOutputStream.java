@@ -0,0 +1,179 @@
+package com.github.jenkins.lastchanges;
+
+import com.github.jenkins.lastchanges.model.DiffOptions;
+import com.github.jenkins.lastchanges.model.FileDiff;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Receives a diff while it is being formatted by the VCS. The diff is kept as plain bytes while it is smaller
+ * than the compression threshold, once the threshold is exceeded the content is compressed on the fly (with the
+ * codec of the {@link DiffOptions}, see {@link DiffCodecs}) so big diffs
+ * are never held uncompressed (nor converted to a String).
+ *
+ * The files of the diff are indexed in the same pass (see {@link DiffFiles.Indexer}).
+ */
+public class CompressingDiffOutputStream extends OutputStream {
+
+    private final long threshold;
+    private final DiffOptions options;
+    private ByteArrayOutputStream plain = new ByteArrayOutputStream();
+    private ByteArrayOutputStream compressed;
+    private OutputStream compressor;
+    private final DiffFiles.Indexer indexer = new DiffFiles.Indexer();
+    private List<FileDiff> files;//files of a diff read back, not indexed by this stream
+    private long size;
+    private boolean finished;
+
+    public CompressingDiffOutputStream() {
+        this(LastChangesUtil.DIFF_COMPRESS_THRESHOLD_BYTES, null);
+    }
+
+    /**
+     * @param threshold diffs reaching this number of bytes are compressed
+     */
+    public CompressingDiffOutputStream(long threshold) {
+        this(threshold, null);
+    }
+
+    /**
+     * @param options codec and compression level of the diff, <code>null</code> for the default codec
+     */
+    public CompressingDiffOutputStream(DiffOptions options) {
+        this(LastChangesUtil.DIFF_COMPRESS_THRESHOLD_BYTES, options);
+    }
+
+    /**
+     * @param threshold diffs reaching this number of bytes are compressed
+     * @param options codec and compression level of the diff, <code>null</code> for the default codec
+     */
+    public CompressingDiffOutputStream(long threshold, DiffOptions options) {
+        this.threshold = threshold;
+        this.options = options;
+    }
+
+    /**
+     * @param diff content of a finished stream (see {@link #toByteArray()}), e.g. read back from a cache
+     * @param compressed <code>true</code> if the diff is compressed (by any codec, the codec is recorded in it)
+     * @param size size in bytes of the uncompressed diff
+     * @param files files of the diff
+     * @return a closed stream holding the diff as is, in the form it was written
+     */
+    public static CompressingDiffOutputStream of(byte[] diff, boolean compressed, long size, List<FileDiff> files) {
+        CompressingDiffOutputStream stream = new CompressingDiffOutputStream();
+        if (compressed) {
+            stream.plain = null;
+            stream.compressed = new ByteArrayOutputStream(diff.length);
+            stream.compressed.writeBytes(diff);
+        } else {
+            stream.plain.writeBytes(diff);
+        }
+        stream.size = size;
+        stream.files = files;
+        stream.finished = true;
+        return stream;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (compressor != null) {
+            compressor.write(b);
+        } else {
+            plain.write(b);
+        }
+        indexer.write(b);
+        size++;
+        compressIfNeeded();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (compressor != null) {
+            compressor.write(b, off, len);
+        } else {
+            plain.write(b, off, len);
+        }
+        indexer.write(b, off, len);
+        size += len;
+        compressIfNeeded();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!finished) {
+            finished = true;
+            if (compressor != null) {
+                compressor.close();
+            }
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the diff exceeded the threshold and was compressed
+     */
+    public boolean isCompressed() {
+        return compressed != null;
+    }
+
+    /**
+     * @return number of (uncompressed) diff bytes written to this stream
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return files of the diff written to this stream, the stream must be closed
+     */
+    public List<FileDiff> getFiles() {
+        return files != null ? files : indexer.finish();
+    }
+
+    /**
+     * Finishes the stream and returns its content.
+     *
+     * @return compressed diff when {@link #isCompressed()}, plain UTF-8 diff otherwise
+     */
+    public byte[] toByteArray() {
+        try {
+            close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not finish diff compression.", e);
+        }
+        return isCompressed() ? compressed.toByteArray() : plain.toByteArray();
+    }
+
+    /**
+     * @return the diff text, only available when the diff was not compressed
+     */
+    @Override
+    public String toString() {
+        if (isCompressed()) {
+            throw new IllegalStateException("Diff was compressed and cannot be converted to String.");
+        }
+        return plain.toString(UTF_8);
+    }
+
+    private void compressIfNeeded() throws IOException {
+        if (compressor == null && size >= threshold) {
+            compressed = new ByteArrayOutputStream();
+            compressor = DiffCodecs.compress(compressed, options);
+            plain.writeTo(compressor);
+            plain = null;
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (finished) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
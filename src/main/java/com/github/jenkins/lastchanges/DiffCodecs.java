@@ -0,0 +1,465 @@
+package com.github.jenkins.lastchanges;
+
+import com.github.jenkins.lastchanges.api.DiffCodec;
+import com.github.jenkins.lastchanges.model.DiffOptions;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Registry of the {@link DiffCodec}s and format of compressed diffs.
+ *
+ * gzip diffs are written as plain gzip streams (as older plugin versions did), diffs of the other codecs are framed:
+ * <pre>
+ * compressed := MAGIC byte(codec id) payload uint64(uncompressed size)
+ * </pre>
+ * so the codec of a diff and its uncompressed size are known without decompressing it. Diffs which are neither are
+ * read as plain (uncompressed) diffs.
+ */
+public final class DiffCodecs {
+
+    private static final Logger LOG = Logger.getLogger(DiffCodecs.class.getName());
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+    public static final String DEFLATE_DICTIONARY = "deflate-dictionary";
+
+    private static final byte[] MAGIC = {'L', 'C', 'D'};
+    private static final int HEADER_LENGTH = MAGIC.length + 1;
+    private static final int TRAILER_LENGTH = 8;
+
+    /**
+     * Size of a gzip header and trailer, the smallest gzip stream
+     */
+    private static final int GZIP_MIN_LENGTH = 18;
+
+    /**
+     * Preset dictionary of {@link #DEFLATE_DICTIONARY}: the lines and tokens found in most unified diffs (git and
+     * svn), the most frequent ones last as they are the cheapest to reference. Diffs written with it can only be read
+     * with the same bytes, a new dictionary needs a new codec.
+     */
+    private static final byte[] DIFF_DICTIONARY = String.join("",
+            "Property changes on: ", "Added: svn:", "Modified: svn:", "svn:mime-type = application/octet-stream\n",
+            "Cannot display: file marked as a binary type.\n", "\t(nonexistent)\n", "\t(working copy)\n", "\t(revision ",
+            "===================================================================\n", "Index: ",
+            "GIT binary patch\n", "literal ", "Binary files /dev/null and b/", " differ\n",
+            "similarity index ", "dissimilarity index ", "rename from ", "rename to ", "copy from ", "copy to ",
+            "old mode 100644\nnew mode 100755\n", "deleted file mode 100644\n", "new file mode 100644\n",
+            "\\ No newline at end of file\n",
+            "<div class=\"", "</div>\n", "function ", "const ", "let ", "var ", "def ", "self.", "#include <",
+            "package ", "import java.util.", "import ", "@Override\n", "/**\n", " * @param ", " * @return ", " */\n",
+            "public static final ", "private static final ", "protected ", "private final ", "public void ", "public ",
+            "private ", "String ", "return ", "new ", "this.", "null", "true", "false", "throw new ", "catch (", "try {",
+            "} else {", "if (", "for (", "while (", ");\n", "() {\n", "        }\n", "    }\n", "}\n",
+            "+            ", "-            ", "+        ", "-        ", "+    ", "-    ", "+\n", "-\n",
+            "             ", "         ", "     ", "\n \n", "\n+", "\n-", "\n ",
+            "diff --git a/", " b/", "\nindex ", "..", " 100644\n", "--- a/", "\n+++ b/", "--- /dev/null\n",
+            "+++ /dev/null\n", "\n@@ -", ",7 +", ",6 +", " @@\n", " @@ ").getBytes(UTF_8);
+
+    private static final Map<String, DiffCodec> CODECS = new LinkedHashMap<>();
+
+    private static volatile DiffCodec defaultCodec;
+    private static volatile int defaultLevel;
+
+    static {
+        register(new GzipCodec());
+        register(new DeflateCodec(DEFLATE, 1, null));
+        register(new DeflateCodec(DEFLATE_DICTIONARY, 2, DIFF_DICTIONARY));
+        defaultCodec = of(GZIP);
+    }
+
+    private DiffCodecs() {
+    }
+
+    /**
+     * @param codec codec to add, its name and id must be unused
+     */
+    public static void register(DiffCodec codec) {
+        synchronized (CODECS) {
+            for (DiffCodec registered : CODECS.values()) {
+                if (registered.getName().equals(codec.getName()) || registered.getId() == codec.getId()) {
+                    throw new IllegalArgumentException("Diff codec %s (%d) is already registered.".formatted(codec.getName(), codec.getId()));
+                }
+            }
+            if (codec.getId() < 0 || codec.getId() > 127 || (codec.getId() == 0 && !GZIP.equals(codec.getName()))) {
+                throw new IllegalArgumentException("Invalid id %d of diff codec %s.".formatted(codec.getId(), codec.getName()));
+            }
+            CODECS.put(codec.getName(), codec);
+        }
+    }
+
+    /**
+     * @param name name of the codec
+     * @return the codec, gzip when there is no codec with this name
+     */
+    public static DiffCodec of(String name) {
+        if (name == null || name.isEmpty()) {
+            return defaultCodec != null ? defaultCodec : of(GZIP);
+        }
+        synchronized (CODECS) {
+            DiffCodec codec = CODECS.get(name);
+            if (codec == null) {
+                LOG.warning("Unknown diff codec %s, diffs are gzipped.".formatted(name));
+                return CODECS.get(GZIP);
+            }
+            return codec;
+        }
+    }
+
+    /**
+     * @return names of the registered codecs
+     */
+    public static List<String> names() {
+        synchronized (CODECS) {
+            return new ArrayList<>(CODECS.keySet());
+        }
+    }
+
+    /**
+     * Sets the codec used when none is given (e.g. by the global configuration).
+     *
+     * @param name name of the codec
+     * @param level compression level, zero for the default level of the codec
+     */
+    public static void setDefault(String name, int level) {
+        defaultCodec = of(name != null && !name.isEmpty() ? name : GZIP);
+        defaultLevel = level;
+    }
+
+    public static DiffCodec getDefault() {
+        return defaultCodec;
+    }
+
+    public static int getDefaultLevel() {
+        return defaultLevel;
+    }
+
+    /**
+     * @param out receives the diff compressed with the default codec, it is closed with the returned stream
+     */
+    public static OutputStream compress(OutputStream out) throws IOException {
+        return compress(out, defaultCodec, defaultLevel);
+    }
+
+    /**
+     * @param out receives the compressed diff, it is closed with the returned stream
+     * @param options codec and level of the diff, the default codec is used when they have no codec
+     * @return stream compressing what is written to it
+     */
+    public static OutputStream compress(OutputStream out, DiffOptions options) throws IOException {
+        if (options == null || options.getDiffCodec() == null || options.getDiffCodec().isEmpty()) {
+            return compress(out);
+        }
+        return compress(out, of(options.getDiffCodec()), options.getCompressionLevel());
+    }
+
+    /**
+     * @param out receives the compressed diff, it is closed with the returned stream
+     * @param codec codec of the diff
+     * @param level compression level, zero for the default level of the codec
+     * @return stream compressing what is written to it
+     */
+    public static OutputStream compress(OutputStream out, DiffCodec codec, int level) throws IOException {
+        if (codec.getId() == 0) {
+            return codec.compress(out, level);
+        }
+        out.write(MAGIC);
+        out.write(codec.getId());
+        return new FramedOutputStream(out, codec, level);
+    }
+
+    /**
+     * @param in compressed (with any codec) or plain diff
+     * @return stream of the uncompressed diff
+     */
+    public static InputStream decompress(InputStream in) throws IOException {
+        BufferedInputStream buffered = in instanceof BufferedInputStream bis ? bis : new BufferedInputStream(in, 8192);
+        buffered.mark(HEADER_LENGTH);
+        byte[] header = buffered.readNBytes(HEADER_LENGTH);
+        buffered.reset();
+        if (isGzip(header)) {
+            return of(GZIP).decompress(buffered);
+        }
+        if (isFramed(header)) {
+            buffered.skipNBytes(HEADER_LENGTH);
+            return codecOf(header[MAGIC.length]).decompress(buffered);
+        }
+        return buffered;
+    }
+
+    /**
+     * @param diff compressed (with any codec) or plain diff
+     * @return the uncompressed diff
+     */
+    public static byte[] decompress(byte[] diff) throws IOException {
+        try (InputStream in = decompress(new ByteArrayInputStream(diff))) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * @param bytes first bytes of a diff
+     * @return <code>true</code> if the diff is compressed by any codec
+     */
+    public static boolean isCompressed(byte[] bytes) {
+        return isGzip(bytes) || isFramed(bytes);
+    }
+
+    /**
+     * @param bytes first bytes of a diff
+     * @return <code>true</code> if the diff is a gzip stream (which can be sent as is to http clients)
+     */
+    public static boolean isGzip(byte[] bytes) {
+        return bytes.length >= 2 && (bytes[0] & 0xFF) == 0x1F && (bytes[1] & 0xFF) == 0x8B;
+    }
+
+    /**
+     * @param file compressed diff file
+     * @return <code>true</code> if the file is a gzip stream
+     */
+    public static boolean isGzip(File file) {
+        try (InputStream in = new FileInputStream(file)) {
+            return isGzip(in.readNBytes(2));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads the size of a compressed diff from its trailer (modulo 4 GB for gzip diffs).
+     *
+     * @param diff compressed diff
+     * @return size in bytes of the uncompressed diff, -1 when the diff is not compressed
+     */
+    public static long uncompressedSize(byte[] diff) {
+        if (diff.length >= GZIP_MIN_LENGTH && isGzip(diff)) {
+            return littleEndianInt(diff, diff.length - 4);
+        }
+        if (diff.length >= HEADER_LENGTH + TRAILER_LENGTH && isFramed(diff)) {
+            return bigEndianLong(diff, diff.length - TRAILER_LENGTH);
+        }
+        return -1;
+    }
+
+    /**
+     * @param file compressed diff file
+     * @return size in bytes of the uncompressed diff, -1 when the file is not a compressed diff
+     */
+    public static long uncompressedSize(File file) throws IOException {
+        try (RandomAccessFile diff = new RandomAccessFile(file, "r")) {
+            if (diff.length() < HEADER_LENGTH) {
+                return -1;
+            }
+            byte[] header = new byte[HEADER_LENGTH];
+            diff.readFully(header);
+            if (isGzip(header) && diff.length() >= GZIP_MIN_LENGTH) {
+                byte[] trailer = new byte[4];
+                diff.seek(diff.length() - trailer.length);
+                diff.readFully(trailer);
+                return littleEndianInt(trailer, 0);
+            }
+            if (isFramed(header) && diff.length() >= HEADER_LENGTH + TRAILER_LENGTH) {
+                diff.seek(diff.length() - TRAILER_LENGTH);
+                return diff.readLong();
+            }
+            return -1;
+        }
+    }
+
+    private static boolean isFramed(byte[] bytes) {
+        return bytes.length >= HEADER_LENGTH && bytes[0] == MAGIC[0] && bytes[1] == MAGIC[1] && bytes[2] == MAGIC[2];
+    }
+
+    private static DiffCodec codecOf(int id) throws IOException {
+        synchronized (CODECS) {
+            for (DiffCodec codec : CODECS.values()) {
+                if (codec.getId() == id) {
+                    return codec;
+                }
+            }
+        }
+        throw new IOException("Diff compressed with unknown codec " + id + ".");
+    }
+
+    private static long littleEndianInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFFL) | (bytes[offset + 1] & 0xFFL) << 8 | (bytes[offset + 2] & 0xFFL) << 16 | (bytes[offset + 3] & 0xFFL) << 24;
+    }
+
+    private static long bigEndianLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = value << 8 | (bytes[offset + i] & 0xFFL);
+        }
+        return value;
+    }
+
+    private static int deflateLevel(int level) {
+        return level > 0 ? Math.min(level, Deflater.BEST_COMPRESSION) : Deflater.DEFAULT_COMPRESSION;
+    }
+
+    /**
+     * Compresses with a framed codec and writes the uncompressed size once the codec is finished.
+     */
+    private static final class FramedOutputStream extends FilterOutputStream {
+
+        private final OutputStream target;
+        private long size;
+        private boolean closed;
+
+        FramedOutputStream(OutputStream target, DiffCodec codec, int level) throws IOException {
+            super(null);
+            this.target = target;
+            //the codec must not close the target before the trailer is written
+            this.out = codec.compress(new FilterOutputStream(target) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            }, level);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            size++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            size += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                out.close();
+                DataOutputStream trailer = new DataOutputStream(target);
+                trailer.writeLong(size);
+                trailer.flush();
+            } finally {
+                target.close();
+            }
+        }
+    }
+
+    private static final class GzipCodec implements DiffCodec {
+
+        @Override
+        public String getName() {
+            return GZIP;
+        }
+
+        @Override
+        public int getId() {
+            return 0;
+        }
+
+        @Override
+        public OutputStream compress(OutputStream out, int level) throws IOException {
+            return new GZIPOutputStream(out, 8192) {
+                {
+                    def.setLevel(deflateLevel(level));
+                }
+            };
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) throws IOException {
+            return new GZIPInputStream(in, 8192);
+        }
+    }
+
+    /**
+     * Deflate (zlib) streams, with a preset dictionary the streams are raw deflate as zlib only accepts a dictionary
+     * up front for raw streams.
+     */
+    private static final class DeflateCodec implements DiffCodec {
+
+        private final String name;
+        private final int id;
+        private final byte[] dictionary;
+
+        DeflateCodec(String name, int id, byte[] dictionary) {
+            this.name = name;
+            this.id = id;
+            this.dictionary = dictionary;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public int getId() {
+            return id;
+        }
+
+        @Override
+        public OutputStream compress(OutputStream out, int level) {
+            Deflater deflater = new Deflater(deflateLevel(level), dictionary != null);
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            return new DeflaterOutputStream(out, deflater, 8192) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        deflater.end();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) {
+            Inflater inflater = new Inflater(dictionary != null);
+            if (dictionary != null) {
+                inflater.setDictionary(dictionary);
+            }
+            return new InflaterInputStream(in, inflater, 8192) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inflater.end();
+                    }
+                }
+            };
+        }
+    }
+}
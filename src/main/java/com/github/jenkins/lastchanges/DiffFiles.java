@@ -0,0 +1,331 @@
+package com.github.jenkins.lastchanges;
+
+import com.github.jenkins.lastchanges.model.ChangeType;
+import com.github.jenkins.lastchanges.model.FileDiff;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Splits unified diffs (git and svn) into files without loading the whole diff in memory, so the diff of each
+ * file can be served separately. Diffs are indexed while the VCS writes them (see {@link Indexer}), so the files of
+ * published changes are known without reading their diff again.
+ */
+public final class DiffFiles {
+
+    private static final String GIT_FILE_HEADER = "diff --git ";
+    private static final String SVN_FILE_HEADER = "Index: ";
+    private static final String DEV_NULL = "/dev/null";
+    private static final String OMITTED_FILE = "file ";
+    private static final String SVN_BINARY_FILE = "Cannot display: file marked as a binary type.";
+    //summary line of a file which diff was omitted, see DiffLimitingOutputStream
+    private static final Pattern OMITTED_FILE_SUMMARY = Pattern.compile(": \\+(\\d+)/-(\\d+), diff omitted");
+
+    private DiffFiles() {
+    }
+
+    /**
+     * Reads the diff once and collects its files.
+     *
+     * @param diff uncompressed diff, it is not closed
+     * @return files of the diff in the order they appear
+     */
+    public static List<FileDiff> index(InputStream diff) throws IOException {
+        Indexer indexer = new Indexer();
+        diff.transferTo(indexer);
+        return indexer.finish();
+    }
+
+    /**
+     * Copies the diff of the files between first and last (inclusive).
+     *
+     * @param diff uncompressed diff, it is not closed
+     * @param first first file to copy
+     * @param last last file to copy
+     * @param out receives the diff of the files
+     */
+    public static void copy(InputStream diff, FileDiff first, FileDiff last, OutputStream out) throws IOException {
+        skipFully(diff, first.getOffset());
+        long remaining = last.getOffset() + last.getLength() - first.getOffset();
+        byte[] buffer = new byte[8192];
+        while (remaining > 0) {
+            int read = diff.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read < 0) {
+                throw new EOFException("Diff ended before file " + last.getPath());
+            }
+            out.write(buffer, 0, read);
+            remaining -= read;
+        }
+    }
+
+    private static void skipFully(InputStream in, long bytes) throws IOException {
+        long remaining = bytes;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException("Diff ended before offset " + bytes);
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    /**
+     * @param header file header line of a diff (<code>diff --git a/path b/path</code> or <code>Index: path</code>)
+     * @return path of the file in the new revision
+     */
+    static String pathOf(String header) {
+        return paths(header)[1];
+    }
+
+    private static String[] paths(String header) {
+        if (header.startsWith(GIT_FILE_HEADER)) {
+            //diff --git a/path b/path, used when there is no ---/+++ header (e.g. binary files)
+            String paths = header.substring(GIT_FILE_HEADER.length());
+            int separator = paths.lastIndexOf(" b/");
+            if (separator > 0) {
+                return new String[]{stripPrefix(paths.substring(0, separator)), stripPrefix(paths.substring(separator + 1))};
+            }
+            return new String[]{paths, paths};
+        }
+        String path = header.startsWith(SVN_FILE_HEADER) ? header.substring(SVN_FILE_HEADER.length()) : header;
+        return new String[]{path, path};
+    }
+
+    private static String stripPrefix(String path) {
+        if (path.startsWith("a/") || path.startsWith("b/")) {
+            return path.substring(2);
+        }
+        return path;
+    }
+
+    private static boolean startsWith(byte[] line, String prefix) {
+        if (line.length < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (line[i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Indexes a diff while it is written, lines are parsed as they complete and only the beginning of long lines
+     * (enough for file and hunk headers) is buffered.
+     */
+    public static final class Indexer extends OutputStream {
+
+        private static final int MAX_LINE_PREFIX = 8192;
+
+        private final List<FileDiff> files = new ArrayList<>();
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+        private long offset;
+        private long lineOffset;
+        private FileSection section;
+        private boolean finished;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (finished) {
+                throw new IOException("Diff already indexed");
+            }
+            int end = off + len;
+            int start = off;
+            for (int i = off; i < end; i++) {
+                if (b[i] == '\n') {
+                    append(b, start, i + 1 - start);
+                    endLine();
+                    start = i + 1;
+                }
+            }
+            if (start < end) {
+                append(b, start, end - start);
+            }
+        }
+
+        /**
+         * Indexes the pending line, next calls return the same files.
+         *
+         * @return files of the diff written so far in the order they appear
+         */
+        public List<FileDiff> finish() {
+            if (!finished) {
+                finished = true;
+                if (offset > lineOffset) {
+                    endLine();
+                }
+                if (section != null) {
+                    files.add(section.toFileDiff(files.size(), offset));
+                    section = null;
+                }
+            }
+            return Collections.unmodifiableList(files);
+        }
+
+        private void append(byte[] b, int off, int len) {
+            int kept = Math.min(len, MAX_LINE_PREFIX - line.size());
+            if (kept > 0) {
+                line.write(b, off, kept);
+            }
+            offset += len;
+        }
+
+        private void endLine() {
+            byte[] bytes = line.toByteArray();
+            line.reset();
+            if (startsWith(bytes, GIT_FILE_HEADER) || startsWith(bytes, SVN_FILE_HEADER)) {
+                if (section != null) {
+                    files.add(section.toFileDiff(files.size(), lineOffset));
+                }
+                section = new FileSection(lineOffset, new String(bytes, UTF_8).trim());
+            } else if (section != null) {
+                section.readLine(bytes);
+            }
+            lineOffset = offset;
+        }
+    }
+
+    /**
+     * State of the file being read.
+     */
+    private static class FileSection {
+
+        private final long offset;
+        private final boolean git;
+        private String path;
+        private String oldPath;
+        private ChangeType changeType = ChangeType.MODIFIED;
+        private boolean binary;
+        private boolean inHunk;
+        private int hunks;
+        private int added;
+        private int removed;
+
+        FileSection(long offset, String header) {
+            this.offset = offset;
+            this.git = header.startsWith(GIT_FILE_HEADER);
+            String[] paths = paths(header);
+            oldPath = paths[0];
+            path = paths[1];
+        }
+
+        void readLine(byte[] line) {
+            if (line.length == 0) {
+                return;
+            }
+            if (inHunk) {
+                if (line[0] == '+') {
+                    added++;
+                } else if (line[0] == '-') {
+                    removed++;
+                } else if (startsWith(line, "@@")) {
+                    hunks++;
+                } else if (line[0] != ' ' && line[0] != '\\' && line[0] != '\n' && line[0] != '\r') {
+                    inHunk = false;
+                }
+                if (inHunk) {
+                    return;
+                }
+            }
+            if (startsWith(line, "@@")) {
+                inHunk = true;
+                hunks++;
+            } else if (startsWith(line, OMITTED_FILE)) {
+                Matcher omitted = OMITTED_FILE_SUMMARY.matcher(new String(line, UTF_8));
+                if (omitted.find()) {
+                    added = Integer.parseInt(omitted.group(1));
+                    removed = Integer.parseInt(omitted.group(2));
+                }
+            } else if (startsWith(line, "--- ")) {
+                String header = headerPath(line);
+                if (DEV_NULL.equals(header) || isNonexistent(line)) {
+                    changeType = ChangeType.ADDED;
+                } else {
+                    oldPath = header;
+                }
+            } else if (startsWith(line, "+++ ")) {
+                String header = headerPath(line);
+                if (DEV_NULL.equals(header) || isNonexistent(line)) {
+                    changeType = ChangeType.DELETED;
+                }
+                path = DEV_NULL.equals(header) ? oldPath : header;
+            } else if (startsWith(line, "new file mode")) {
+                changeType = ChangeType.ADDED;
+            } else if (startsWith(line, "deleted file mode")) {
+                changeType = ChangeType.DELETED;
+            } else if (startsWith(line, "rename from ")) {
+                changeType = ChangeType.RENAMED;
+                oldPath = lineValue(line, "rename from ");
+            } else if (startsWith(line, "rename to ")) {
+                path = lineValue(line, "rename to ");
+            } else if (startsWith(line, "copy from ")) {
+                changeType = ChangeType.COPIED;
+                oldPath = lineValue(line, "copy from ");
+            } else if (startsWith(line, "copy to ")) {
+                path = lineValue(line, "copy to ");
+            } else if (startsWith(line, "Binary files ") || startsWith(line, "GIT binary patch") || startsWith(line, SVN_BINARY_FILE)) {
+                binary = true;
+            }
+        }
+
+        private static String lineValue(byte[] line, String prefix) {
+            return new String(line, prefix.length(), line.length - prefix.length(), UTF_8).trim();
+        }
+
+        /**
+         * svn marks the missing side of an added or deleted file with <code>(nonexistent)</code> (or revision 0)
+         */
+        private boolean isNonexistent(byte[] line) {
+            if (git) {
+                return false;
+            }
+            String header = new String(line, UTF_8);
+            int tab = header.indexOf('\t');
+            if (tab < 0) {
+                return false;
+            }
+            String revision = header.substring(tab + 1).trim();
+            return revision.equals("(nonexistent)") || revision.equals("(revision 0)");
+        }
+
+        private String headerPath(byte[] line) {
+            String header = new String(line, 4, line.length - 4, UTF_8);
+            int tab = header.indexOf('\t');
+            if (tab >= 0) {
+                header = header.substring(0, tab);
+            }
+            header = header.trim();
+            if (header.length() > 1 && header.startsWith("\"") && header.endsWith("\"")) {
+                header = header.substring(1, header.length() - 1);
+            }
+            return git ? stripPrefix(header) : header;
+        }
+
+        private String stripPrefix(String path) {
+            return DiffFiles.stripPrefix(path);
+        }
+
+        FileDiff toFileDiff(int index, long end) {
+            return new FileDiff(index, path, oldPath, changeType, added, removed, hunks, binary, offset, end - offset);
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package com.github.jenkins.lastchanges;
+
+import com.github.jenkins.lastchanges.model.DiffOptions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.Predicate;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Enforces the limits of {@link DiffOptions} on a unified diff (git and svn) while it is being formatted.
+ *
+ * The diff of each file is held until it is complete (at most the per file limit), a file exceeding the per file
+ * limit or the remaining total size is replaced by its header followed by a summary line
+ * (<code>file X: +added/-removed, diff omitted (reason)</code>). Once the total size is exceeded the next files
+ * are only summarized and files over the maximum number of files are omitted, so the lines of omitted diffs are
+ * only counted, never buffered. Files rejected by the file filter (if any) are dropped.
+ */
+public class DiffLimitingOutputStream extends OutputStream {
+
+    private static final String GIT_FILE_HEADER = "diff --git ";
+    private static final String SVN_FILE_HEADER = "Index: ";
+    private static final String HUNK_HEADER = "@@";
+
+    /**
+     * Number of bytes kept from each line of an omitted diff, enough to recognize file headers
+     */
+    private static final int OMITTED_LINE_PREFIX = 4096;
+
+    private final OutputStream out;
+    private final long maxDiffBytes;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final Predicate<String> fileFilter;
+
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+    private int lineStart = -1;
+
+    //file being written
+    private boolean inFile;
+    private String path;
+    private final ByteArrayOutputStream header = new ByteArrayOutputStream(256);
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private boolean inHunk;
+    private boolean skipped;
+    private boolean excluded;
+    private String omittedReason;
+    private int added;
+    private int removed;
+
+    private long written;
+    private int files;
+    private int omittedFiles;
+    private boolean totalExceeded;
+    private boolean finished;
+
+    /**
+     * @param out receives the limited diff, it is closed with this stream
+     * @param options limits of the diff
+     */
+    public DiffLimitingOutputStream(OutputStream out, DiffOptions options) {
+        this(out, options, null);
+    }
+
+    /**
+     * @param out receives the limited diff, it is closed with this stream
+     * @param options limits of the diff
+     * @param fileFilter tells, from the path of its file header, if a file is kept, <code>null</code> keeps all files
+     */
+    public DiffLimitingOutputStream(OutputStream out, DiffOptions options, Predicate<String> fileFilter) {
+        this.out = out;
+        this.maxDiffBytes = options.getMaxDiffBytes();
+        this.maxFileBytes = options.getMaxFileBytes();
+        this.maxFiles = options.getMaxFiles();
+        this.fileFilter = fileFilter;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (line.size() == 0) {
+            lineStart = b;
+        }
+        if (!isLineTruncated()) {
+            line.write(b);
+            checkFileLimit();
+        }
+        if (b == '\n') {
+            endLine();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        int end = off + len;
+        int start = off;
+        for (int i = off; i < end; i++) {
+            if (b[i] == '\n') {
+                append(b, start, i + 1 - start);
+                endLine();
+                start = i + 1;
+            }
+        }
+        if (start < end) {
+            append(b, start, end - start);
+        }
+    }
+
+    /**
+     * @return <code>true</code> when the total size was exceeded, the next files are only summarized
+     */
+    public boolean isTotalExceeded() {
+        return totalExceeded;
+    }
+
+    /**
+     * @return <code>true</code> when the maximum number of files was reached, the next files are omitted
+     */
+    public boolean isFilesExceeded() {
+        return maxFiles > 0 && files >= maxFiles;
+    }
+
+    /**
+     * Summarizes a file without writing its diff, used by formatters which can count the changed lines of a file
+     * without formatting it. The diff written so far must end with a complete line.
+     *
+     * @param fileHeader header line of the file (e.g. <code>diff --git a/path b/path</code>)
+     * @param path path of the file
+     * @param added number of added lines
+     * @param removed number of removed lines
+     */
+    public void writeOmitted(String fileHeader, String path, int added, int removed) throws IOException {
+        writeOmitted(fileHeader, path, added, removed, totalReason());
+    }
+
+    /**
+     * @param fileBytes size a file diff is known to reach without formatting it
+     * @return <code>true</code> when such a file diff exceeds the per file limit
+     */
+    public boolean isFileExceeded(long fileBytes) {
+        return maxFileBytes > 0 && fileBytes > maxFileBytes;
+    }
+
+    /**
+     * Summarizes a file which diff is known to exceed the per file limit without writing its diff, see
+     * {@link #writeOmitted(String, String, int, int)}.
+     */
+    public void writeFileOmitted(String fileHeader, String path, int added, int removed) throws IOException {
+        writeOmitted(fileHeader, path, added, removed, fileReason());
+    }
+
+    private void writeOmitted(String fileHeader, String path, int added, int removed, String reason) throws IOException {
+        if (line.size() > 0) {
+            endLine();
+        }
+        finishFile();
+        files++;
+        if (maxFiles > 0 && files > maxFiles) {
+            omittedFiles++;
+            return;
+        }
+        writeOut((fileHeader + "\n").getBytes(UTF_8));
+        writeOut(omittedLine(path, added, removed, reason));
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Writes the pending file and the number of omitted files, the underlying stream is flushed but not closed.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (line.size() > 0) {
+            endLine();
+        }
+        finishFile();
+        if (omittedFiles > 0) {
+            writeOut("%d more file(s) omitted, diff exceeds %d files.%n".formatted(omittedFiles, maxFiles).getBytes(UTF_8));
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @param path path of the omitted file
+     * @param added number of added lines
+     * @param removed number of removed lines
+     * @param reason why the diff of the file was omitted
+     * @return summary line of the omitted file, recognized by {@link DiffFiles#index(java.io.InputStream)}
+     */
+    static byte[] omittedLine(String path, int added, int removed, String reason) {
+        return "file %s: +%d/-%d, diff omitted (%s)%n".formatted(path, added, removed, reason).getBytes(UTF_8);
+    }
+
+    private void append(byte[] b, int off, int len) {
+        if (len == 0) {
+            return;
+        }
+        if (line.size() == 0) {
+            lineStart = b[off];
+        }
+        if (!isLineTruncated()) {
+            line.write(b, off, isOmitting() ? Math.min(len, OMITTED_LINE_PREFIX - line.size()) : len);
+            checkFileLimit();
+        }
+    }
+
+    private boolean isOmitting() {
+        return inFile && inHunk && (skipped || excluded || omittedReason != null || totalExceeded);
+    }
+
+    private boolean isLineTruncated() {
+        return isOmitting() && line.size() >= OMITTED_LINE_PREFIX;
+    }
+
+    /**
+     * Stops buffering the diff of the current file as soon as it exceeds the limits, even in the middle of a line.
+     */
+    private void checkFileLimit() {
+        if (!inFile || !inHunk || isOmitting()) {
+            return;
+        }
+        long size = body.size() + line.size();
+        if (maxFileBytes > 0 && size > maxFileBytes) {
+            omittedReason = fileReason();
+        } else if (maxDiffBytes > 0 && written + header.size() + size > maxDiffBytes) {
+            totalExceeded = true;
+            omittedReason = totalReason();
+        } else {
+            return;
+        }
+        body.reset();
+        if (line.size() > OMITTED_LINE_PREFIX) {
+            byte[] prefix = line.toByteArray();
+            line.reset();
+            line.write(prefix, 0, OMITTED_LINE_PREFIX);
+        }
+    }
+
+    private void endLine() throws IOException {
+        byte[] bytes = line.toByteArray();
+        int first = lineStart;
+        line.reset();
+        lineStart = -1;
+        if (startsWith(bytes, GIT_FILE_HEADER) || startsWith(bytes, SVN_FILE_HEADER)) {
+            finishFile();
+            startFile(bytes);
+            return;
+        }
+        if (!inFile) {
+            writeOut(bytes);
+            return;
+        }
+        if (!inHunk && !startsWith(bytes, HUNK_HEADER)) {
+            if (!skipped && !excluded) {
+                header.write(bytes);
+            }
+            return;
+        }
+        if (!inHunk) {
+            inHunk = true;
+            if (!skipped && !excluded && omittedReason == null && totalExceeded) {
+                omittedReason = totalReason();
+            }
+        }
+        if (first == '+') {
+            added++;
+        } else if (first == '-') {
+            removed++;
+        }
+        if (!isOmitting()) {
+            body.write(bytes);
+        }
+    }
+
+    private void startFile(byte[] fileHeader) {
+        inFile = true;
+        path = DiffFiles.pathOf(new String(fileHeader, UTF_8).trim());
+        excluded = fileFilter != null && !fileFilter.test(path);
+        if (!excluded) {
+            files++;
+        }
+        skipped = !excluded && maxFiles > 0 && files > maxFiles;
+        header.reset();
+        body.reset();
+        if (!skipped && !excluded) {
+            header.write(fileHeader, 0, fileHeader.length);
+        }
+    }
+
+    private void finishFile() throws IOException {
+        if (!inFile) {
+            return;
+        }
+        if (skipped) {
+            omittedFiles++;
+        } else if (omittedReason != null) {
+            writeOut(header.toByteArray());
+            writeOut(omittedLine(path, added, removed, omittedReason));
+        } else if (!excluded) {
+            writeOut(header.toByteArray());
+            writeOut(body.toByteArray());
+        }
+        inFile = false;
+        inHunk = false;
+        skipped = false;
+        excluded = false;
+        omittedReason = null;
+        added = 0;
+        removed = 0;
+        header.reset();
+        body.reset();
+    }
+
+    private String fileReason() {
+        return "file diff exceeds %d bytes".formatted(maxFileBytes);
+    }
+
+    private String totalReason() {
+        return "diff exceeds %d bytes".formatted(maxDiffBytes);
+    }
+
+    private void writeOut(byte[] bytes) throws IOException {
+        out.write(bytes);
+        written += bytes.length;
+    }
+
+    private static boolean startsWith(byte[] line, String prefix) {
+        if (line.length < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (line[i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
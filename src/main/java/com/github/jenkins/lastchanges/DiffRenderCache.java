@@ -0,0 +1,122 @@
+package com.github.jenkins.lastchanges;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Keeps the rendered forms (decompressed, escaped) of the most recently viewed stored diffs, so pages showing a diff
+ * do not decompress it on every request.
+ *
+ * The cache is bounded by the total size of its entries, least recently used entries are evicted first, and entries
+ * are softly referenced so they are dropped under memory pressure. Entries are keyed by the diff file and its
+ * modification time, a rewritten diff file is rendered again.
+ */
+public final class DiffRenderCache {
+
+    /**
+     * Maximum size (in MB) of the rendered diffs kept in memory, 0 disables the cache
+     */
+    private static final long MAX_SIZE = Long.getLong("lastchanges.render-cache.max-size", 32) * 1024 * 1024;
+
+    private static final Map<String, Entry> ENTRIES = new LinkedHashMap<>(16, 0.75f, true);
+
+    private static long size;
+
+    private DiffRenderCache() {
+    }
+
+    /**
+     * @param diffFile stored diff the form is rendered from, <code>null</code> when the diff is not stored (the form
+     *                 is then rendered without caching it)
+     * @param form name of the rendered form (e.g. <code>diff</code>, <code>escaped</code>)
+     * @param render renders the form from the diff file
+     * @return the rendered form
+     */
+    public static String get(File diffFile, String form, Supplier<String> render) {
+        //a UTF-16 char takes two bytes
+        return get(diffFile, form, render, value -> value.length() * 2L);
+    }
+
+    /**
+     * @param diffFile stored diff the bytes are read from, <code>null</code> when the diff is not stored
+     * @param form name of the rendered form (e.g. <code>bytes</code>)
+     * @param render reads the bytes from the diff file
+     * @return the bytes
+     */
+    public static byte[] getBytes(File diffFile, String form, Supplier<byte[]> render) {
+        return get(diffFile, form, render, value -> value.length);
+    }
+
+    /**
+     * @param size size in bytes of a rendered form
+     * @return <code>true</code> if a form of this size is kept in the cache
+     */
+    public static boolean isCacheable(long size) {
+        //a single diff may not take over the cache
+        return MAX_SIZE > 0 && size <= MAX_SIZE / 4;
+    }
+
+    private static <T> T get(File diffFile, String form, Supplier<T> render, ToLongFunction<T> sizeOf) {
+        if (diffFile == null || MAX_SIZE <= 0) {
+            return render.get();
+        }
+        String key = diffFile.getAbsolutePath() + '|' + diffFile.lastModified() + '|' + form;
+        synchronized (ENTRIES) {
+            Entry entry = ENTRIES.get(key);
+            if (entry != null) {
+                @SuppressWarnings("unchecked")
+                T value = (T) entry.value.get();
+                if (value != null) {
+                    return value;
+                }
+                remove(key);
+            }
+        }
+        T value = render.get();
+        long valueSize = sizeOf.applyAsLong(value);
+        if (isCacheable(valueSize)) {
+            synchronized (ENTRIES) {
+                remove(key);
+                ENTRIES.put(key, new Entry(value, valueSize));
+                size += valueSize;
+                evict();
+            }
+        }
+        return value;
+    }
+
+    private static void remove(String key) {
+        Entry removed = ENTRIES.remove(key);
+        if (removed != null) {
+            size -= removed.size;
+        }
+    }
+
+    private static void evict() {
+        Iterator<Entry> entries = ENTRIES.values().iterator();
+        while (entries.hasNext()) {
+            Entry entry = entries.next();
+            if (size <= MAX_SIZE && entry.value.get() != null) {
+                break;
+            }
+            size -= entry.size;
+            entries.remove();
+        }
+    }
+
+    private static final class Entry {
+
+        private final SoftReference<Object> value;
+        private final long size;
+
+        Entry(Object value, long size) {
+            this.value = new SoftReference<>(value);
+            this.size = size;
+        }
+    }
+}
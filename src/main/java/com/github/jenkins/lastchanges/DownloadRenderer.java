@@ -1,21 +1,22 @@
 package com.github.jenkins.lastchanges;
 
 import com.github.jenkins.lastchanges.model.LastChanges;
-import java.io.ByteArrayInputStream;
 import org.kohsuke.stapler.StaplerRequest2;
 import org.kohsuke.stapler.StaplerResponse2;
 
 import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
-import java.io.StringWriter;
-import java.nio.charset.Charset;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.apache.commons.io.IOUtils;
-import static java.nio.charset.StandardCharsets.UTF_8;
 
+/**
+ * Downloads the diff of a build, streamed from its storage: a gzipped diff is sent as is to clients accepting gzip,
+ * byte ranges of the uncompressed diff are supported (e.g. to resume a download).
+ */
 public class DownloadRenderer implements Serializable {
 
     private final String buildName;
@@ -39,24 +40,139 @@ public class DownloadRenderer implements Serializable {
             throws IOException, ServletException {
         String fileName = buildName + (isHtml ? ".html" : ".diff");
 
-        InputStream is = null;
         try {
+            response.addHeader("Content-Disposition", "attachment; filename=" + fileName);
             if (isHtml) {
-                String htmlDiff = LastChangesUtil.toHtmlDiff(buildChanges, buildName);
-                is = new ByteArrayInputStream(htmlDiff.getBytes(UTF_8));
+                response.setContentType("text/html;charset=UTF-8");
+                HtmlDiffTemplate.getInstance().write(buildChanges, buildName, response.getOutputStream());
             } else {
-                is = new ByteArrayInputStream(buildChanges.getDiff().getBytes(UTF_8));
+                serveDiff(request, response);
             }
-                
-            response.addHeader("Content-Disposition", "attachment; filename=" + fileName);
-            response.serveFile(request, is, 0l, 0l, -1l, fileName);
         } catch (Exception e) {
             Logger.getLogger(getClass().getName()).log(Level.SEVERE, "Could not download diff for build " + buildName, e);
-        } finally {
-            if (is != null) {
-                is.close();
+        }
+    }
+
+    private void serveDiff(StaplerRequest2 request, StaplerResponse2 response) throws IOException {
+        response.setContentType("text/x-diff;charset=UTF-8");
+        response.setHeader("Accept-Ranges", "bytes");
+        response.setHeader("Vary", "Accept-Encoding");
+        String range = request.getHeader("Range");
+        long compressedSize = buildChanges.getCompressedDiffSize();
+        if (range == null && compressedSize >= 0 && acceptsGzip(request.getHeader("Accept-Encoding"))) {
+            response.setHeader("Content-Encoding", "gzip");
+            response.setContentLengthLong(compressedSize);
+            try (InputStream is = buildChanges.openCompressedDiff()) {
+                is.transferTo(response.getOutputStream());
+            }
+            return;
+        }
+        long size = buildChanges.getDiffSize();
+        long[] bounds = parseRange(range, size);
+        if (bounds != null && bounds.length == 0) {
+            response.setHeader("Content-Range", "bytes */" + size);
+            response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+        long start = 0;
+        long length = size;
+        if (bounds != null) {
+            start = bounds[0];
+            length = bounds[1] - bounds[0] + 1;
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader("Content-Range", "bytes " + bounds[0] + "-" + bounds[1] + "/" + size);
+        }
+        response.setContentLengthLong(length);
+        try (InputStream is = buildChanges.openDiff()) {
+            is.skipNBytes(start);
+            copy(is, response.getOutputStream(), length);
+        }
+    }
+
+    /**
+     * @param acceptEncoding value of the <code>Accept-Encoding</code> header
+     * @return <code>true</code> if gzip is accepted with a non zero quality (explicitly or through <code>*</code>)
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        boolean any = false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] params = coding.split(";");
+            String name = params[0].trim();
+            boolean accepted = true;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        accepted = Double.parseDouble(param.substring(2).trim()) > 0;
+                    } catch (NumberFormatException e) {
+                        accepted = false;
+                    }
+                }
+            }
+            if (name.equalsIgnoreCase("gzip") || name.equalsIgnoreCase("x-gzip")) {
+                return accepted;
             }
+            if (name.equals("*")) {
+                any = accepted;
+            }
+        }
+        return any;
+    }
+
+    /**
+     * Parses a single byte range (<code>bytes=first-last</code>, <code>bytes=first-</code> or
+     * <code>bytes=-suffixLength</code>), multiple or malformed ranges are ignored and the whole diff is sent.
+     *
+     * @param range value of the <code>Range</code> header
+     * @param size size of the uncompressed diff
+     * @return first and last byte of the range, <code>null</code> for the whole diff, an empty array when the range
+     *         cannot be satisfied
+     */
+    static long[] parseRange(String range, long size) {
+        if (range == null || !range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = range.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || size == 0) {
+                    return suffix < 0 ? null : new long[0];
+                }
+                return new long[]{Math.max(0, size - suffix), size - 1};
+            }
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+            if (start < 0 || (!last.isEmpty() && Long.parseLong(last) < start)) {
+                return null;
+            }
+            if (start >= size) {
+                return new long[0];
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out, long length) throws IOException {
+        byte[] buffer = new byte[8192];
+        long remaining = length;
+        int read;
+        while (remaining > 0 && (read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+            out.write(buffer, 0, read);
+            remaining -= read;
         }
+        out.flush();
     }
 
 }
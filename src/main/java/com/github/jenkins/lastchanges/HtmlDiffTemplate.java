@@ -0,0 +1,181 @@
+package com.github.jenkins.lastchanges;
+
+import com.github.jenkins.lastchanges.model.CommitInfo;
+import com.github.jenkins.lastchanges.model.LastChanges;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringEscapeUtils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The html page of a diff (<code>/htmlDiffTemplate</code>), parsed once into literal and placeholder segments.
+ *
+ * Pages are written in a single pass over the segments: placeholder values are written as they come and the diff is
+ * read from its (compressed) storage and escaped chunk by chunk, so neither the page nor the escaped diff are ever
+ * held in memory.
+ */
+public final class HtmlDiffTemplate {
+
+    private static final String TEMPLATE = "/htmlDiffTemplate";
+
+    private static final HtmlDiffTemplate INSTANCE = load(TEMPLATE);
+
+    /**
+     * Placeholders of the template, written as <code>[NAME]</code>.
+     */
+    enum Placeholder {
+        TITLE, PREV_REVISION, PREV_AUTHOR, PREV_EMAIL, PREV_DATE, PREV_MESSAGE,
+        CURRENT_REVISION, CURRENT_AUTHOR, CURRENT_EMAIL, CURRENT_DATE, CURRENT_MESSAGE, DIFF
+    }
+
+    private final List<Object> segments;//literal strings and placeholders in template order
+
+    private HtmlDiffTemplate(List<Object> segments) {
+        this.segments = Collections.unmodifiableList(segments);
+    }
+
+    /**
+     * @return the template of html diffs
+     */
+    public static HtmlDiffTemplate getInstance() {
+        return INSTANCE;
+    }
+
+    static HtmlDiffTemplate load(String resource) {
+        try (InputStream is = HtmlDiffTemplate.class.getResourceAsStream(resource)) {
+            if (is == null) {
+                throw new IllegalStateException("Html diff template " + resource + " not found.");
+            }
+            return parse(IOUtils.toString(is, UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read html diff template " + resource + ".", e);
+        }
+    }
+
+    /**
+     * @param template template text, text between brackets which is not a {@link Placeholder} is kept as is
+     * @return the parsed template
+     */
+    static HtmlDiffTemplate parse(String template) {
+        List<Object> segments = new ArrayList<>();
+        int literalStart = 0;
+        int open = template.indexOf('[');
+        while (open >= 0) {
+            int close = template.indexOf(']', open + 1);
+            if (close < 0) {
+                break;
+            }
+            Placeholder placeholder = placeholderOf(template.substring(open + 1, close));
+            if (placeholder == null) {
+                open = template.indexOf('[', open + 1);
+                continue;
+            }
+            if (open > literalStart) {
+                segments.add(template.substring(literalStart, open));
+            }
+            segments.add(placeholder);
+            literalStart = close + 1;
+            open = template.indexOf('[', literalStart);
+        }
+        if (literalStart < template.length()) {
+            segments.add(template.substring(literalStart));
+        }
+        return new HtmlDiffTemplate(segments);
+    }
+
+    private static Placeholder placeholderOf(String name) {
+        for (Placeholder placeholder : Placeholder.values()) {
+            if (placeholder.name().equals(name)) {
+                return placeholder;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param buildChanges changes of the page
+     * @param buildName name of the build, part of the page title
+     * @param out receives the page encoded in UTF-8, it is flushed but not closed
+     */
+    public void write(LastChanges buildChanges, String buildName, OutputStream out) throws IOException {
+        write(buildChanges, buildName, new BufferedWriter(new OutputStreamWriter(out, UTF_8)));
+    }
+
+    /**
+     * @param buildChanges changes of the page
+     * @param buildName name of the build, part of the page title
+     * @param writer receives the page, it is flushed but not closed
+     */
+    public void write(LastChanges buildChanges, String buildName, Writer writer) throws IOException {
+        CommitInfo previous = buildChanges.getPreviousRevision();
+        CommitInfo current = buildChanges.getCurrentRevision();
+        for (Object segment : segments) {
+            if (!(segment instanceof Placeholder placeholder)) {
+                writer.write((String) segment);
+                continue;
+            }
+            switch (placeholder) {
+                case TITLE -> writer.write("Changes of build " + buildName);
+                case PREV_REVISION -> writeValue(previous != null ? previous.getCommitId() : null, writer);
+                case PREV_AUTHOR -> writeValue(previous != null ? previous.getCommitterName() : null, writer);
+                case PREV_EMAIL -> writeValue(previous != null ? previous.getCommitterEmail() : null, writer);
+                case PREV_DATE -> writeValue(previous != null ? previous.getCommitDate() : null, writer);
+                case PREV_MESSAGE -> writeValue(previous != null ? previous.getCommitMessage() : null, writer);
+                case CURRENT_REVISION -> writeValue(current != null ? current.getCommitId() : null, writer);
+                case CURRENT_AUTHOR -> writeValue(current != null ? current.getCommitterName() : null, writer);
+                case CURRENT_EMAIL -> writeValue(current != null ? current.getCommitterEmail() : null, writer);
+                case CURRENT_DATE -> writeValue(current != null ? current.getCommitDate() : null, writer);
+                case CURRENT_MESSAGE -> writeValue(current != null ? current.getCommitMessage() : null, writer);
+                case DIFF -> {
+                    try (InputStream diff = buildChanges.openDiff()) {
+                        writeEscapedDiff(diff, writer);
+                    }
+                }
+            }
+        }
+        writer.flush();
+    }
+
+    private static void writeValue(String value, Writer writer) throws IOException {
+        if (value != null) {
+            writer.write(value);
+        }
+    }
+
+    /**
+     * Escapes (as an ECMAScript string) the diff chunk by chunk, a surrogate pair split between two chunks is
+     * escaped with the next chunk.
+     */
+    static void writeEscapedDiff(InputStream diff, Writer writer) throws IOException {
+        Reader reader = new InputStreamReader(diff, UTF_8);
+        char[] buffer = new char[8192];
+        int pending = 0;
+        int read;
+        while ((read = reader.read(buffer, pending, buffer.length - pending)) != -1) {
+            int length = pending + read;
+            int escaped = length > 0 && Character.isHighSurrogate(buffer[length - 1]) ? length - 1 : length;
+            StringEscapeUtils.ESCAPE_ECMASCRIPT.translate(CharBuffer.wrap(buffer, 0, escaped), writer);
+            pending = length - escaped;
+            if (pending > 0) {
+                buffer[0] = buffer[escaped];
+            }
+        }
+        if (pending > 0) {
+            StringEscapeUtils.ESCAPE_ECMASCRIPT.translate(CharBuffer.wrap(buffer, 0, pending), writer);
+        }
+    }
+}
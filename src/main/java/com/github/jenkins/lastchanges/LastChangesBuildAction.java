@@ -1,16 +1,51 @@
 package com.github.jenkins.lastchanges;
 
 import com.github.jenkins.lastchanges.model.CommitChanges;
+import com.github.jenkins.lastchanges.model.FileDiff;
 import com.github.jenkins.lastchanges.model.LastChanges;
 import com.github.jenkins.lastchanges.model.LastChangesConfig;
 import hudson.model.Run;
 import jenkins.model.RunAction2;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.kohsuke.stapler.StaplerRequest2;
+import org.kohsuke.stapler.StaplerResponse2;
+import org.kohsuke.stapler.verb.GET;
+
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
 
 public class LastChangesBuildAction extends LastChangesBaseAction implements RunAction2 {
 
+    /**
+     * Directory (inside the build directory) where the diffs are stored
+     */
+    public static final String DIFFS_DIR = "last-changes";
+
+    /**
+     * Maximum number of files served by a single fileDiffs request
+     */
+    private static final int MAX_FILES_PER_REQUEST = 50;
+
+    /**
+     * Directory (inside the diffs directory) where the diffs of the repositories, except the first one, are stored
+     */
+    private static final String REPOSITORIES_DIR = "repositories";
+
     private transient Run<?, ?> build;
     private final LastChanges buildChanges;
     private final LastChangesConfig config;
+    private final List<LastChanges> repositories;//changes of each repository (the first one is buildChanges) when several repositories were published
+    private transient LastChangesBuildAction parent;//action holding the repositories, for repository views
+    private transient volatile LastChangesBuildAction[] repositoryViews;
 
     public LastChangesBuildAction(Run<?, ?> build, LastChanges lastChanges, LastChangesConfig config) {
         this.build = build;
@@ -19,6 +54,28 @@ public class LastChangesBuildAction extends LastChangesBaseAction implements Run
             config = new LastChangesConfig();
         }
         this.config = config;
+        this.repositories = null;
+    }
+
+    /**
+     * @param repositoriesChanges changes of each repository of the workspace, the first one is the build changes
+     */
+    public LastChangesBuildAction(Run<?, ?> build, List<LastChanges> repositoriesChanges, LastChangesConfig config) {
+        this.build = build;
+        buildChanges = repositoriesChanges.get(0);
+        if (config == null) {
+            config = new LastChangesConfig();
+        }
+        this.config = config;
+        this.repositories = repositoriesChanges.size() > 1 ? new ArrayList<>(repositoriesChanges) : null;
+    }
+
+    private LastChangesBuildAction(LastChangesBuildAction parent, LastChanges repositoryChanges) {
+        this.build = parent.build;
+        this.buildChanges = repositoryChanges;
+        this.config = parent.config;
+        this.repositories = null;
+        this.parent = parent;
     }
 
     @Override
@@ -38,6 +95,140 @@ public class LastChangesBuildAction extends LastChangesBaseAction implements Run
         return config;
     }
 
+    /**
+     * @return changes of each repository published by the build, a single element unless several repositories
+     *         were published
+     */
+    public List<LastChanges> getRepositories() {
+        if (parent != null) {
+            return parent.getRepositories();
+        }
+        return repositories != null ? Collections.unmodifiableList(repositories) : Collections.singletonList(buildChanges);
+    }
+
+    /**
+     * @param index position of the repository, see {@link #getRepositories()}
+     * @return view of the changes of the repository, bound to <code>repository/index</code>
+     */
+    public LastChangesBuildAction getRepository(String index) {
+        if (parent != null) {
+            return parent.getRepository(index);
+        }
+        List<LastChanges> repositories = getRepositories();
+        int position;
+        try {
+            position = Integer.parseInt(index);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (position < 0 || position >= repositories.size()) {
+            return null;
+        }
+        if (position == 0) {
+            return this;
+        }
+        LastChangesBuildAction[] views = repositoryViews;
+        if (views == null) {
+            views = new LastChangesBuildAction[repositories.size()];
+            repositoryViews = views;
+        }
+        if (views[position] == null) {
+            views[position] = new LastChangesBuildAction(this, repositories.get(position));
+        }
+        return views[position];
+    }
+
+    /**
+     * @param repository path of the repository relative to the workspace, see {@link LastChanges#getRepository()}
+     * @return changes of the repository published by the build, when a single repository was published (with no
+     *         recorded path) its changes, <code>null</code> when the build did not publish the repository
+     */
+    public LastChanges getRepositoryChanges(String repository) {
+        for (LastChanges changes : getRepositories()) {
+            if (changes != null && Objects.equals(changes.getRepository(), repository)) {
+                return changes;
+            }
+        }
+        if (repositories == null && buildChanges != null && buildChanges.getRepository() == null) {
+            return buildChanges;
+        }
+        return null;
+    }
+
+    /**
+     * @return files changed between current and previous revisions
+     */
+    public List<FileDiff> changedFiles() {
+        return buildChanges.getFiles();
+    }
+
+    /**
+     * Serves the changed files (path, change type and added/removed lines) as JSON, <code>start</code> and <code>limit</code> parameters paginate the files.
+     */
+    @GET
+    public void doFiles(StaplerRequest2 request, StaplerResponse2 response) throws IOException {
+        List<FileDiff> files = changedFiles();
+        int start = Math.max(0, intParameter(request, "start", 0));
+        int end = Math.min(files.size(), start + Math.max(0, intParameter(request, "limit", files.size())));
+        JSONArray filesJson = new JSONArray();
+        for (FileDiff file : files.subList(Math.min(start, end), end)) {
+            filesJson.add(new JSONObject()
+                    .element("index", file.getIndex())
+                    .element("path", file.getPath())
+                    .element("oldPath", file.getOldPath())
+                    .element("changeType", file.getChangeType().name())
+                    .element("binary", file.isBinary())
+                    .element("added", file.getAdded())
+                    .element("removed", file.getRemoved())
+                    .element("hunks", file.getHunks())
+                    .element("length", file.getLength()));
+        }
+        response.setContentType("application/json;charset=UTF-8");
+        response.getWriter().print(new JSONObject().element("total", files.size()).element("files", filesJson).toString());
+    }
+
+    /**
+     * Serves the diff of <code>count</code> files starting at file <code>start</code>.
+     */
+    @GET
+    public void doFileDiffs(StaplerRequest2 request, StaplerResponse2 response) throws IOException {
+        List<FileDiff> files = changedFiles();
+        int start = intParameter(request, "start", 0);
+        int count = Math.min(MAX_FILES_PER_REQUEST, intParameter(request, "count", 1));
+        if (start < 0 || start >= files.size() || count < 1) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        FileDiff first = files.get(start);
+        FileDiff last = files.get(Math.min(files.size(), start + count) - 1);
+        response.setContentType("text/plain;charset=UTF-8");
+        long length = last.getOffset() + last.getLength() - first.getOffset();
+        if (DiffRenderCache.isCacheable(buildChanges.getDiffSize())) {
+            //batches are requested one after the other (while scrolling), the diff is decompressed once
+            byte[] diff = buildChanges.getDiffBytes();
+            if (first.getOffset() + length > diff.length) {
+                throw new EOFException("Diff ended before file " + last.getPath());
+            }
+            response.getOutputStream().write(diff, (int) first.getOffset(), (int) length);
+            return;
+        }
+        try (InputStream diff = buildChanges.openDiff()) {
+            DiffFiles.copy(diff, first, last, response.getOutputStream());
+        }
+    }
+
+    private static int intParameter(StaplerRequest2 request, String name, int defaultValue) {
+        String value = request.getParameter(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
     public CommitRenderer getCommit(String commitId) {
         CommitChanges commit = null;
         for (CommitChanges commitChanges : buildChanges.getCommits()) {
@@ -65,5 +256,64 @@ public class LastChangesBuildAction extends LastChangesBaseAction implements Run
     @Override
     public void onLoad(Run<?, ?> run) {
         onAttached(run);
+        if (buildChanges == null) {
+            return;
+        }
+        boolean inlineDiffs = false;
+        List<LastChanges> repositories = getRepositories();
+        for (int i = 0; i < repositories.size(); i++) {
+            LastChanges changes = repositories.get(i);
+            changes.attachDiffs(getDiffsDir(run, i));
+            inlineDiffs |= changes.hasInlineDiffs();
+        }
+        if (inlineDiffs) {
+            //build published by a previous version of the plugin, its diffs are moved out of build.xml in the background
+            LastChangesDiffsMigration.schedule(run);
+        }
+    }
+
+    /**
+     * Stores the diffs still held in the build record (builds published by previous versions of the plugin).
+     *
+     * @return <code>true</code> if diffs were stored, the build must then be saved
+     */
+    synchronized boolean storeInlineDiffs() throws IOException {
+        boolean stored = false;
+        List<LastChanges> repositories = getRepositories();
+        for (int i = 0; i < repositories.size(); i++) {
+            LastChanges changes = repositories.get(i);
+            if (changes.hasInlineDiffs()) {
+                changes.storeDiffs(getDiffsDir(build, i));
+                stored = true;
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * @param run the build
+     * @return directory where the diffs of the build are stored
+     */
+    public static File getDiffsDir(Run<?, ?> run) {
+        return new File(run.getRootDir(), DIFFS_DIR);
+    }
+
+    /**
+     * @param run the build
+     * @param repository position of the repository, see {@link #getRepositories()}
+     * @return directory where the diffs of the repository are stored, the diffs directory of the build for the first one
+     */
+    public static File getDiffsDir(Run<?, ?> run, int repository) {
+        File diffsDir = getDiffsDir(run);
+        return repository == 0 ? diffsDir : new File(new File(diffsDir, REPOSITORIES_DIR), String.valueOf(repository));
+    }
+
+    /**
+     * @param diffsDir diffs directory of a build
+     * @return diffs directories of the repositories (other than the first one) of the build
+     */
+    static List<File> repositoriesDiffsDirs(File diffsDir) {
+        File[] dirs = new File(diffsDir, REPOSITORIES_DIR).listFiles(File::isDirectory);
+        return dirs != null ? Arrays.asList(dirs) : Collections.emptyList();
     }
 }
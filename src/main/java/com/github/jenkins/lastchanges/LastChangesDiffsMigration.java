@@ -0,0 +1,83 @@
+package com.github.jenkins.lastchanges;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Moves out of <code>build.xml</code> the diffs of builds published by older plugin versions (see
+ * {@link LastChangesBuildAction#onLoad(Run)}). Builds are queued (by id, so queued builds can still be garbage collected)
+ * when loaded and migrated in the background, each one is saved once, so loading builds (e.g. to render a job page)
+ * never writes them.
+ */
+@Extension
+public class LastChangesDiffsMigration extends AsyncPeriodicWork {
+
+    private static final Logger LOG = Logger.getLogger(LastChangesDiffsMigration.class.getName());
+
+    private static final Set<String> PENDING = new LinkedHashSet<>();//externalizable ids of the builds
+
+    public LastChangesDiffsMigration() {
+        super("Last changes diffs migration");
+    }
+
+    /**
+     * @param run loaded build which diffs are still held in its build record
+     */
+    static void schedule(Run<?, ?> run) {
+        synchronized (PENDING) {
+            PENDING.add(run.getExternalizableId());
+        }
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return MIN;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        List<String> ids;
+        synchronized (PENDING) {
+            ids = new ArrayList<>(PENDING);
+            PENDING.clear();
+        }
+        for (String id : ids) {
+            Run<?, ?> run;
+            try {
+                run = Run.fromExternalizableId(id);
+            } catch (IllegalArgumentException e) {
+                LOG.log(Level.FINE, "Could not find build %s to move its last changes diffs.".formatted(id), e);
+                continue;
+            }
+            //deleted (or renamed job) since it was queued
+            if (run != null) {
+                migrate(run);
+            }
+        }
+    }
+
+    static void migrate(Run<?, ?> run) {
+        LastChangesBuildAction action = run.getAction(LastChangesBuildAction.class);
+        if (action == null) {
+            return;
+        }
+        try {
+            if (action.storeInlineDiffs()) {
+                run.save();
+                LOG.log(Level.FINE, "Moved last changes diffs of build %s out of its build record.".formatted(run.getFullDisplayName()));
+            }
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Could not move last changes diffs of build %s out of its build record.".formatted(run.getFullDisplayName()), e);
+        }
+    }
+}
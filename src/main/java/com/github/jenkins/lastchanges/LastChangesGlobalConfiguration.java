@@ -0,0 +1,77 @@
+package com.github.jenkins.lastchanges;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.util.ListBoxModel;
+import jenkins.model.GlobalConfiguration;
+import org.jenkinsci.Symbol;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.DataBoundSetter;
+
+/**
+ * Global (<i>Manage Jenkins &gt; System</i>) settings of the plugin: codec and compression level of the diffs
+ * published from now on. Already published diffs record their codec and are read whatever these settings.
+ */
+@Extension
+@Symbol("lastChanges")
+public class LastChangesGlobalConfiguration extends GlobalConfiguration {
+
+    private String diffCodec = DiffCodecs.GZIP;
+    private Integer compressionLevel;
+
+    public LastChangesGlobalConfiguration() {
+        load();
+        apply();
+    }
+
+    /**
+     * @return the global configuration of the plugin
+     */
+    public static LastChangesGlobalConfiguration get() {
+        return ExtensionList.lookupSingleton(LastChangesGlobalConfiguration.class);
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Last Changes";
+    }
+
+    public String getDiffCodec() {
+        return diffCodec;
+    }
+
+    @DataBoundSetter
+    public void setDiffCodec(String diffCodec) {
+        this.diffCodec = diffCodec == null || diffCodec.isEmpty() ? DiffCodecs.GZIP : diffCodec;
+        apply();
+        save();
+    }
+
+    public Integer getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    @DataBoundSetter
+    public void setCompressionLevel(Integer compressionLevel) {
+        this.compressionLevel = compressionLevel != null && compressionLevel > 0 ? compressionLevel : null;
+        apply();
+        save();
+    }
+
+    @Restricted(NoExternalUse.class) // Only for UI calls
+    public ListBoxModel doFillDiffCodecItems() {
+        ListBoxModel items = new ListBoxModel();
+        for (String codec : DiffCodecs.names()) {
+            items.add(codec, codec);
+        }
+        return items;
+    }
+
+    /**
+     * Makes the configured codec the default one of the controller, it is sent to the nodes with the diff options.
+     */
+    private void apply() {
+        DiffCodecs.setDefault(diffCodec, compressionLevel != null ? compressionLevel : 0);
+    }
+}
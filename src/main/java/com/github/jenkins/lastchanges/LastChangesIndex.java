@@ -0,0 +1,229 @@
+package com.github.jenkins.lastchanges;
+
+import com.github.jenkins.lastchanges.model.CommitInfo;
+import com.github.jenkins.lastchanges.model.LastChanges;
+import com.github.jenkins.lastchanges.model.LastChangesBuild;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Index of the builds of a job which published last changes (newest first). It is kept in the job directory
+ * and maintained by a {@link RunListener} so the last changes history is rendered without loading any build.
+ */
+public class LastChangesIndex {
+
+    private static final Logger LOG = Logger.getLogger(LastChangesIndex.class.getName());
+
+    static final String INDEX_FILE = "last-changes-builds.xml";
+
+    private static final Map<Job<?, ?>, LastChangesIndex> INDEXES = new WeakHashMap<>();
+
+    private static final Map<Job<?, ?>, Object> LOADING = new WeakHashMap<>();//lock of the jobs which index is being loaded
+
+    private List<LastChangesBuild> builds;
+
+    private LastChangesIndex(List<LastChangesBuild> builds) {
+        this.builds = builds;
+    }
+
+    /**
+     * @param job the job
+     * @return index of the job, on first access it is read from the job directory or, when not present, created from the job builds
+     */
+    public static LastChangesIndex of(Job<?, ?> job) {
+        Object lock;
+        synchronized (INDEXES) {
+            LastChangesIndex index = INDEXES.get(job);
+            if (index != null) {
+                return index;
+            }
+            lock = LOADING.computeIfAbsent(job, loadingJob -> new Object());
+        }
+        //the index is loaded (possibly scanning the job builds) under a lock of the job only, other jobs are not blocked
+        synchronized (lock) {
+            synchronized (INDEXES) {
+                LastChangesIndex index = INDEXES.get(job);
+                if (index != null) {
+                    return index;
+                }
+            }
+            LastChangesIndex index = load(job);
+            synchronized (INDEXES) {
+                INDEXES.put(job, index);
+                LOADING.remove(job);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * @return builds which published last changes, newest first
+     */
+    public synchronized List<LastChangesBuild> getBuilds() {
+        return Collections.unmodifiableList(new ArrayList<>(builds));
+    }
+
+    public synchronized boolean isEmpty() {
+        return builds.isEmpty();
+    }
+
+    /**
+     * @return the most recent indexed build or <code>null</code> if no build published last changes
+     */
+    public synchronized LastChangesBuild getLastBuild() {
+        return builds.isEmpty() ? null : builds.get(0);
+    }
+
+    /**
+     * Lists the commit changes stored by the most recent indexed builds, newest build wins when several builds
+     * stored the changes of the same commit.
+     *
+     * @param job the job
+     * @param maxBuilds maximum number of builds to look into
+     * @param excludedBuild number of a build to skip (e.g. the build being published)
+     * @param diffOptions key of the diff options of the build being published, changes computed with other options
+     *                    (e.g. other size limits) are not listed
+     * @return stored changes by commit id
+     */
+    public Map<String, File> storedCommitChanges(Job<?, ?> job, int maxBuilds, int excludedBuild, String diffOptions) {
+        Map<String, File> storedChanges = new HashMap<>();
+        int visited = 0;
+        for (LastChangesBuild build : getBuilds()) {
+            if (visited >= maxBuilds) {
+                break;
+            }
+            if (build.getNumber() == excludedBuild || !Objects.toString(build.getDiffOptions(), "").equals(Objects.toString(diffOptions, ""))) {
+                continue;
+            }
+            visited++;
+            File diffsDir = new File(new File(job.getBuildDir(), String.valueOf(build.getNumber())), LastChangesBuildAction.DIFFS_DIR);
+            LastChanges.storedCommitChanges(diffsDir).forEach(storedChanges::putIfAbsent);
+            for (File repositoryDiffsDir : LastChangesBuildAction.repositoriesDiffsDirs(diffsDir)) {
+                LastChanges.storedCommitChanges(repositoryDiffsDir).forEach(storedChanges::putIfAbsent);
+            }
+        }
+        return storedChanges;
+    }
+
+    synchronized void add(Job<?, ?> job, LastChangesBuild build) {
+        remove(build.getNumber());
+        int position = 0;
+        while (position < builds.size() && builds.get(position).getNumber() > build.getNumber()) {
+            position++;
+        }
+        builds.add(position, build);
+        save(job);
+    }
+
+    synchronized void remove(Job<?, ?> job, int buildNumber) {
+        if (remove(buildNumber)) {
+            save(job);
+        }
+    }
+
+    private boolean remove(int buildNumber) {
+        return builds.removeIf(build -> build.getNumber() == buildNumber);
+    }
+
+    private void save(Job<?, ?> job) {
+        try {
+            indexFile(job).write(this);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Could not save last changes index of job %s.".formatted(job.getFullName()), e);
+        }
+    }
+
+    private static LastChangesIndex load(Job<?, ?> job) {
+        XmlFile indexFile = indexFile(job);
+        if (indexFile.exists()) {
+            try {
+                LastChangesIndex index = (LastChangesIndex) indexFile.read();
+                if (index != null && index.builds != null) {
+                    return index;
+                }
+            } catch (IOException | ClassCastException e) {
+                LOG.log(Level.WARNING, "Could not read last changes index of job %s, it will be recreated.".formatted(job.getFullName()), e);
+            }
+        }
+        //first access after upgrade (or corrupted index), the builds are scanned only once
+        List<LastChangesBuild> builds = new ArrayList<>();
+        if (job.getBuilds() != null) {
+            for (Run<?, ?> build : job.getBuilds()) {
+                LastChangesBuildAction action = build.getAction(LastChangesBuildAction.class);
+                if (action != null) {
+                    builds.add(toLastChangesBuild(build, action));
+                }
+            }
+        }
+        LastChangesIndex index = new LastChangesIndex(builds);
+        //saved even when empty, so jobs which never published last changes are not scanned again after a restart
+        index.save(job);
+        return index;
+    }
+
+    private static XmlFile indexFile(Job<?, ?> job) {
+        return new XmlFile(new File(job.getRootDir(), INDEX_FILE));
+    }
+
+    private static LastChangesBuild toLastChangesBuild(Run<?, ?> build, LastChangesBuildAction action) {
+        LastChanges buildChanges = action.getBuildChanges();
+        CommitInfo currentRevision = buildChanges != null ? buildChanges.getCurrentRevision() : null;
+        CommitInfo previousRevision = buildChanges != null ? buildChanges.getPreviousRevision() : null;
+        return new LastChangesBuild(build.getNumber(), build.getTime(),
+                currentRevision != null ? currentRevision.getCommitId() : null,
+                previousRevision != null ? previousRevision.getCommitId() : null,
+                buildChanges != null ? buildChanges.getDiffOptions() : null);
+    }
+
+    private Object readResolve() {
+        if (builds == null) {
+            builds = new ArrayList<>();
+        }
+        return this;
+    }
+
+    @Extension
+    public static class LastChangesIndexListener extends RunListener<Run<?, ?>> {
+
+        @Override
+        public void onCompleted(Run<?, ?> run, TaskListener listener) {
+            LastChangesBuildAction action = run.getAction(LastChangesBuildAction.class);
+            if (action != null) {
+                Job<?, ?> job = run.getParent();
+                of(job).add(job, toLastChangesBuild(run, action));
+            }
+        }
+
+        @Override
+        public void onDeleted(Run<?, ?> run) {
+            Job<?, ?> job = run.getParent();
+            LastChangesIndex index;
+            synchronized (INDEXES) {
+                index = INDEXES.get(job);
+            }
+            //avoids creating the index of jobs which never published last changes
+            if (index == null && indexFile(job).exists()) {
+                index = of(job);
+            }
+            if (index != null) {
+                index.remove(job, run.getNumber());
+            }
+        }
+    }
+}
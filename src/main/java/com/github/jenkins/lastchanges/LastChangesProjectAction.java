@@ -5,11 +5,9 @@ import hudson.Extension;
 import hudson.model.Action;
 import hudson.model.Job;
 import hudson.model.ProminentProjectAction;
-import hudson.model.Run;
 import jenkins.branch.MultiBranchProject;
 import jenkins.model.TransientActionFactory;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -54,16 +52,8 @@ public class LastChangesProjectAction extends LastChangesBaseAction implements P
             if (isMultiBranch(j)) {
                 return Collections.emptyList();
             }
-            List<LastChangesBuild> lastChangesBuilds = new ArrayList<>();
-
-            //collects the list of builds that published last changes to show on the last changes history 
-            if (j.getBuilds() != null && !j.getBuilds().isEmpty()) {
-                for (Run<?, ?> build : j.getBuilds()) {
-                    if (build.getAction(LastChangesBuildAction.class) != null) {
-                        lastChangesBuilds.add(new LastChangesBuild(build.getNumber(), build.getTime()));
-                    }
-                }
-            }
+            //builds that published last changes (to show on the last changes history) are read from the job index so no build is loaded
+            List<LastChangesBuild> lastChangesBuilds = LastChangesIndex.of(j).getBuilds();
             if(lastChangesBuilds.isEmpty()) {
                 return Collections.emptyList();
             }
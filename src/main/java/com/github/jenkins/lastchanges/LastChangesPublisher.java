@@ -23,10 +23,14 @@
  */
 package com.github.jenkins.lastchanges;
 
-import com.github.jenkins.lastchanges.exception.CommitInfoException;
 import com.github.jenkins.lastchanges.exception.LastChangesException;
 import com.github.jenkins.lastchanges.exception.RepositoryNotFoundException;
+import com.github.jenkins.lastchanges.impl.DiffCache;
+import com.github.jenkins.lastchanges.impl.GitChangesSession;
+import com.github.jenkins.lastchanges.impl.GitCommitChangesEngine;
 import com.github.jenkins.lastchanges.impl.GitLastChanges;
+import com.github.jenkins.lastchanges.impl.SvnChangesSession;
+import com.github.jenkins.lastchanges.impl.SvnCommitChangesEngine;
 import com.github.jenkins.lastchanges.impl.SvnLastChanges;
 import com.github.jenkins.lastchanges.model.*;
 import hudson.EnvVars;
@@ -34,6 +38,9 @@ import hudson.Extension;
 import hudson.FilePath;
 import hudson.Launcher;
 import hudson.model.*;
+import hudson.remoting.FastPipedInputStream;
+import hudson.remoting.FastPipedOutputStream;
+import hudson.remoting.RemoteOutputStream;
 import hudson.remoting.VirtualChannel;
 import hudson.scm.SCM;
 import hudson.scm.SubversionSCM;
@@ -60,16 +67,23 @@ import org.kohsuke.stapler.QueryParameter;
 import org.tmatesoft.svn.core.auth.ISVNAuthenticationProvider;
 import org.tmatesoft.svn.core.wc.SVNRevision;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
-import java.text.DateFormat;
-import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
-import static com.github.jenkins.lastchanges.impl.GitLastChanges.repository;
 import java.io.Serializable;
 
 /**
@@ -85,6 +99,43 @@ public class LastChangesPublisher extends Recorder implements SimpleBuildStep, S
 
     private static final short RECURSION_DEPTH = 50;
 
+    /**
+     * Maximum number of workspace directories visited when searching the VCS directories
+     */
+    private static final int VCS_SEARCH_MAX_DIRS = Integer.getInteger("lastchanges.vcs-search.max-dirs", 20000);
+
+    /**
+     * Directories never searched for VCS directories (dependencies and build output)
+     */
+    private static final Set<String> VCS_SEARCH_PRUNED_DIRS = Set.of("node_modules", "bower_components", "target", "build", "dist", "out",
+            ".gradle", ".m2", ".idea", ".vscode", ".hg", "__pycache__", ".venv", "venv", ".tox");
+
+    /**
+     * VCS directories found in workspaces (by node and workspace path), relative to the searched directory, only the
+     * searches for a single repository are cached
+     */
+    private static final Map<String, List<String>> VCS_DIRS_CACHE = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<String>> eldest) {
+            return size() > 512;
+        }
+    });
+
+    /**
+     * Number of previous builds looked up for already published commit changes, 0 disables the reuse
+     */
+    private static final int REUSED_CHANGES_BUILDS = Integer.getInteger("lastchanges.reused-changes.builds", 10);
+
+    /**
+     * Maximum number of repositories whose changes are computed concurrently on the node
+     */
+    private static final int REPOSITORY_WORKERS = Integer.getInteger("lastchanges.repository-workers", 8);
+
+    /**
+     * Maximum size (in MB) of the diff cache of each node, 0 disables the cache
+     */
+    private static final long DIFF_CACHE_MAX_SIZE = Long.parseLong(System.getProperty("lastchanges.diff-cache.max-size", "512")) * 1024 * 1024;
+
     private String specificRevision; //revision id to crete the diff
 
     private String specificBuild; // create the diff with the revision of an specific build
@@ -105,6 +156,30 @@ public class LastChangesPublisher extends Recorder implements SimpleBuildStep, S
 
     private String matchingMaxComparisons;
 
+    private Integer diffWorkers;//number of commits diffed concurrently
+
+    private Boolean reachableTagsOnly;//when since last tag, only consider tags reachable (first parent) from current revision
+
+    private Long maxDiffBytes;//diffs bigger than this size have their next files summarized
+
+    private Long maxFileDiffBytes;//diffs of a file bigger than this size are summarized
+
+    private Integer maxDiffFiles;//files of a diff after this number are omitted
+
+    private Integer maxCommits;//commits older than this number of commits are not listed
+
+    private String includePaths;//glob patterns (comma separated) of the paths to get changes from, all paths when empty
+
+    private String excludePaths;//glob patterns (comma separated) of the paths to ignore
+
+    private Boolean detectRenames;//git only, renamed files are shown as renames instead of deletes and adds
+
+    private Integer renameScore;//minimum similarity (percentage) of a rename
+
+    private Integer renameLimit;//over this number of added or deleted files only exact renames are detected
+
+    private Boolean allRepositories;//publish the changes of every repository found (in vcsDir) instead of the first one
+
     private boolean isGit = false;
 
     private boolean isSvn = false;
@@ -113,6 +188,8 @@ public class LastChangesPublisher extends Recorder implements SimpleBuildStep, S
 
     private transient FilePath vcsDirFound = null; //location of vcs directory (.git or .svn) in job workspace (is here for caching purposes)
 
+    private transient List<LastChanges> repositoriesChanges = null;
+
     @DataBoundConstructor
     public LastChangesPublisher(SinceType since, FormatType format, MatchingType matching, Boolean showFiles, Boolean synchronisedScroll, String matchWordsThreshold,
             String matchingMaxComparisons, String specificRevision, String vcsDir, String specificBuild) {
@@ -133,55 +210,52 @@ public class LastChangesPublisher extends Recorder implements SimpleBuildStep, S
 
         ISVNAuthenticationProvider svnAuthProvider = null;
 
-        FilePath vcsDirParam = null; //folder to be used as param on vcs directory search
-
-        if (this.vcsDir != null && !"".equals(vcsDir.trim())) {
-            vcsDirParam = new FilePath(workspace, this.vcsDir);
-        } else {
-            vcsDirParam = workspace;
+        List<FilePath> vcsDirParams = new ArrayList<>(); //folders to be used as param on vcs directory search
+        for (String dir : vcsSearchDirs()) {
+            vcsDirParams.add(new FilePath(workspace, dir));
+        }
+        if (vcsDirParams.isEmpty()) {
+            vcsDirParams.add(workspace);
         }
 
-        if (findVCSDir(vcsDirParam, GIT_DIR)) {
-            isGit = true;
-
-        } else if (findVCSDir(vcsDirParam, SVN_DIR)) {
-            isSvn = true;
-
-            SubversionSCM scm = null;
-            try {
-                Collection<? extends SCM> scMs = SCMTriggerItem.SCMTriggerItems.asSCMTriggerItem(build.getParent()).getSCMs();
-                scm = (SubversionSCM) scMs.iterator().next();
-                svnAuthProvider = scm.createAuthenticationProvider(build.getParent(), scm.getLocations()[0]);
-            } catch (NoSuchMethodError e) {
-                if (scm != null) {
-                    svnAuthProvider = scm.getDescriptor().createAuthenticationProvider();
+        List<FilePath> repositories = new ArrayList<>(); //vcs directories (.git or .svn) of the repositories to publish
+        for (FilePath vcsDirParam : vcsDirParams) {
+            List<String> vcsDirs = findVCSDirs(vcsDirParam, Boolean.TRUE.equals(allRepositories));
+            if (Boolean.TRUE.equals(allRepositories)) {
+                for (String dir : vcsDirs) {
+                    addRepository(repositories, vcsDirParam.child(dir));
                 }
-
-            } catch (Exception ex) {
-                LOG.log(Level.WARNING,"Problem creating svn auth provider",ex);
+            } else if (findVCSDir(vcsDirParam, vcsDirs, GIT_DIR) || findVCSDir(vcsDirParam, vcsDirs, SVN_DIR)) {
+                addRepository(repositories, vcsDirFound);
             }
         }
 
-        if (!isGit && !isSvn) {
-            throw new RuntimeException("Git or Svn directories not found in workspace %s.".formatted(vcsDirParam.toURI().toString()));
+        if (repositories.isEmpty()) {
+            FilePath searched = vcsDirParams.size() == 1 ? vcsDirParams.get(0) : workspace;
+            throw new RuntimeException("Git or Svn directories not found in workspace %s.".formatted(searched.toURI().toString()));
         }
 
-        boolean hasTargetRevision = false;
-        String targetRevision = null;
-        String targetBuild = null;
+        vcsDirFound = repositories.get(0);
+        isGit = GIT_DIR.equals(vcsDirFound.getName());
+        isSvn = !isGit;
+        for (FilePath repository : repositories) {
+            if (SVN_DIR.equals(repository.getName())) {
+                svnAuthProvider = createSvnAuthProvider(build);
+                break;
+            }
+        }
 
         final EnvVars env = build.getEnvironment(listener);
-        if (specificRevision != null && !"".equals(specificRevision)) {
-            targetRevision = env.expand(specificRevision);
+        if (repositories.size() > 1) {
+            publishRepositories(build, workspace, repositories, svnAuthProvider, env, listener);
+            // always success (only warn when no diff was generated)
+            build.setResult(Result.SUCCESS);
+            return;
         }
 
+        String repository = relativePath(workspace, vcsDirFound.getParent());
+        String targetRevision = specificRevisionOf(build, env, repository);
         boolean hasSpecificRevision = targetRevision != null && !"".equals(targetRevision.trim());
-        //only look into builds revision if no specific revision is provided (specificRevision has higher priority over build revision)
-        if (!hasSpecificRevision && (specificBuild != null && !"".equals(specificBuild))) {
-            targetBuild = env.expand(specificBuild);
-            targetRevision = findBuildRevision(targetBuild, build.getParent().getBuilds());
-            hasSpecificRevision = targetRevision != null && !"".equals(targetRevision.trim());
-        }
 
         listener.getLogger().println("Publishing build last changes...");
 
@@ -191,15 +265,7 @@ public class LastChangesPublisher extends Recorder implements SimpleBuildStep, S
             switch (since) {
 
                 case LAST_SUCCESSFUL_BUILD: {
-                    boolean hasSuccessfulBuild = build.getParent().getLastSuccessfulBuild() != null;
-                    if (hasSuccessfulBuild) {
-                        LastChangesBuildAction action = build.getParent().getLastSuccessfulBuild().getAction(LastChangesBuildAction.class);
-                        if (action != null && action.getBuildChanges().getCurrentRevision() != null) {
-                            targetRevision = action.getBuildChanges().getCurrentRevision().getCommitId();
-                        }
-                    } else {
-                        listener.error("No successful build found, last changes will use previous revision.");
-                    }
+                    targetRevision = lastSuccessfulBuildRevisionOf(build, repository, listener);
                     break;
                 }
 
@@ -208,12 +274,12 @@ public class LastChangesPublisher extends Recorder implements SimpleBuildStep, S
                     try {
                         //The callable will obtain the target revision selected by the user in the corresponding node (master or slave)
                         if (isGit) {
-                            String lastTagRevision = vcsDirFound.act(new GetGitLastTagRevisionCallable(listener));
+                            String lastTagRevision = vcsDirFound.act(new GetGitLastTagRevisionCallable(listener, Boolean.TRUE.equals(reachableTagsOnly)));
                             if (lastTagRevision != null) {
                                 targetRevision = lastTagRevision;
                             }
                         } else if (isSvn) {
-                            String lastTagRevision = vcsDirParam.act(new GetSvnLastTagRevisionCallable(listener, svnAuthProvider));
+                            String lastTagRevision = vcsDirFound.getParent().act(new GetSvnLastTagRevisionCallable(listener, svnAuthProvider));
                             if (lastTagRevision != null) {
                                 targetRevision = lastTagRevision;
                             }
@@ -227,21 +293,35 @@ public class LastChangesPublisher extends Recorder implements SimpleBuildStep, S
             }
         }
 
-        hasTargetRevision = targetRevision != null && !"".equals(targetRevision);
+        boolean hasTargetRevision = targetRevision != null && !"".equals(targetRevision);
 
         try {
             //The callable will obtain the last changes between revisions in the corresponding node (master or slave)
+            String diffCacheDir = diffCacheDir(workspace);
+            //a remote output stream also works on the built-in node, where the callable is not serialized
+            FastPipedInputStream in = new FastPipedInputStream();
+            RemoteOutputStream out = new RemoteOutputStream(new FastPipedOutputStream(in));
+            DiffOptions diffOptions = diffOptions();
+            //changes of commits already published by previous builds (with the same diff options) are not computed again
+            Map<String, File> storedChanges = isGit && hasTargetRevision && REUSED_CHANGES_BUILDS > 0
+                    ? LastChangesIndex.of(build.getParent()).storedCommitChanges(build.getParent(), REUSED_CHANGES_BUILDS, build.getNumber(), diffOptions.key())
+                    : Collections.emptyMap();
             if (isGit) {
-                lastChanges = vcsDirFound.act(new GetGITLastChangesCallable(hasTargetRevision, targetRevision, listener));
+                lastChanges = receiveLastChanges(vcsDirFound, in, new GetGITLastChangesCallable(hasTargetRevision, targetRevision, listener, diffWorkers, diffCacheDir, DIFF_CACHE_MAX_SIZE,
+                        new HashSet<>(storedChanges.keySet()), diffOptions, out));
             } else if (isSvn) {
-                lastChanges = vcsDirParam.act(new GetSVNLastChangesCallable(hasTargetRevision, targetRevision, listener, svnAuthProvider));
+                lastChanges = receiveLastChanges(vcsDirFound.getParent(), in, new GetSVNLastChangesCallable(hasTargetRevision, targetRevision, listener, svnAuthProvider, diffCacheDir, DIFF_CACHE_MAX_SIZE,
+                        diffOptions, out));
             }
+            lastChanges.setDiffOptions(diffOptions.key());
+            lastChanges.setRepository(repository);
+            repositoriesChanges = Collections.singletonList(lastChanges);
 
             String resultMessage = "Last changes from revision %s (current) to %s (previous) published successfully!".formatted(truncate(lastChanges.getCurrentRevision().getCommitId(), 8), truncate(lastChanges.getPreviousRevision().getCommitId(), 8));
             listener.hyperlink("../" + build.getNumber() + "/" + LastChangesBaseAction.BASE_URL, resultMessage);
             listener.getLogger().println("");
-            build.addAction(new LastChangesBuildAction(build, lastChanges,
-                    new LastChangesConfig(since, specificRevision, format, matching, showFiles, synchronisedScroll, matchWordsThreshold, matchingMaxComparisons)));
+            storeDiffs(build, lastChanges, LastChangesBuildAction.getDiffsDir(build), storedChanges, listener);
+            build.addAction(new LastChangesBuildAction(build, lastChanges, lastChangesConfig()));
         } catch (Exception e) {
             listener.error("Last Changes NOT published due to the following error: " + (e.getMessage() == null ? e.toString() : e.getMessage()) + (e.getCause() != null ? " - " + e.getCause() : ""));
             LOG.log(Level.SEVERE, "Could not publish LastChanges.", e);
@@ -258,75 +338,310 @@ public class LastChangesPublisher extends Recorder implements SimpleBuildStep, S
         return lastChanges;
     }
 
-    private static List<CommitChanges> obtainCommitChangesFromGit(final Repository gitRepository, final List<CommitInfo> commitInfoList) {
-        if (commitInfoList == null || commitInfoList.isEmpty()) {
-            return null;
+    /**
+     * @return the LastChanges of each repository published by the current publisher, the first one is {@link #getLastChanges()}
+     */
+    public List<LastChanges> getRepositoriesChanges() {
+        return repositoriesChanges != null ? repositoriesChanges : Collections.emptyList();
+    }
+
+    /**
+     * Publishes the changes of several repositories of the workspace, computed concurrently on the node by a single
+     * callable, as sections of the same build action.
+     *
+     * @param vcsDirs VCS directories (.git or .svn) of the repositories
+     */
+    private void publishRepositories(Run<?, ?> build, FilePath workspace, List<FilePath> vcsDirs, ISVNAuthenticationProvider svnAuthProvider,
+                                     EnvVars env, TaskListener listener) {
+        List<RepositoryRequest> requests = new ArrayList<>();
+        for (FilePath vcsDir : vcsDirs) {
+            String repository = relativePath(workspace, vcsDir.getParent());
+            String targetRevision = specificRevisionOf(build, env, repository);
+            boolean hasSpecificRevision = targetRevision != null && !"".equals(targetRevision.trim());
+            if (!hasSpecificRevision && since == SinceType.LAST_SUCCESSFUL_BUILD) {
+                targetRevision = lastSuccessfulBuildRevisionOf(build, repository, listener);
+            }
+            requests.add(new RepositoryRequest(repository, vcsDir.getRemote(), GIT_DIR.equals(vcsDir.getName()), targetRevision,
+                    !hasSpecificRevision && since == SinceType.LAST_TAG));
         }
-        List<CommitChanges> commitChanges = new ArrayList<>();
 
+        listener.getLogger().println("Publishing build last changes of %d repositories...".formatted(requests.size()));
+        try {
+            String diffCacheDir = diffCacheDir(workspace);
+            FastPipedInputStream in = new FastPipedInputStream();
+            RemoteOutputStream out = new RemoteOutputStream(new FastPipedOutputStream(in));
+            DiffOptions diffOptions = diffOptions();
+            Map<String, File> storedChanges = REUSED_CHANGES_BUILDS > 0
+                    ? LastChangesIndex.of(build.getParent()).storedCommitChanges(build.getParent(), REUSED_CHANGES_BUILDS, build.getNumber(), diffOptions.key())
+                    : Collections.emptyMap();
+            List<LastChanges> received = receiveRepositoriesLastChanges(workspace, in, requests.size(), new GetRepositoriesLastChangesCallable(requests, listener,
+                    diffWorkers, diffCacheDir, DIFF_CACHE_MAX_SIZE, new HashSet<>(storedChanges.keySet()), diffOptions, svnAuthProvider,
+                    Boolean.TRUE.equals(reachableTagsOnly), out));
+
+            List<LastChanges> published = new ArrayList<>();
+            for (int i = 0; i < requests.size(); i++) {
+                LastChanges changes = received.get(i);
+                if (changes == null) {
+                    listener.error("Last changes of repository %s NOT published, see the errors above.".formatted(requests.get(i).displayName()));
+                    continue;
+                }
+                changes.setDiffOptions(diffOptions.key());
+                changes.setRepository(requests.get(i).repository);
+                String resultMessage = "Last changes of repository %s from revision %s (current) to %s (previous) published successfully!".formatted(requests.get(i).displayName(),
+                        truncate(changes.getCurrentRevision().getCommitId(), 8), truncate(changes.getPreviousRevision().getCommitId(), 8));
+                listener.hyperlink("../" + build.getNumber() + "/" + LastChangesBaseAction.BASE_URL + "/repository/" + published.size(), resultMessage);
+                listener.getLogger().println("");
+                storeDiffs(build, changes, LastChangesBuildAction.getDiffsDir(build, published.size()), storedChanges, listener);
+                published.add(changes);
+            }
+            if (published.isEmpty()) {
+                throw new LastChangesException("Last changes of none of the %d repositories were obtained.".formatted(requests.size()));
+            }
+            lastChanges = published.get(0);
+            repositoriesChanges = published;
+            build.addAction(new LastChangesBuildAction(build, published, lastChangesConfig()));
+        } catch (Exception e) {
+            listener.error("Last Changes NOT published due to the following error: " + (e.getMessage() == null ? e.toString() : e.getMessage()) + (e.getCause() != null ? " - " + e.getCause() : ""));
+            LOG.log(Level.SEVERE, "Could not publish LastChanges.", e);
+        }
+    }
+
+    private static void storeDiffs(Run<?, ?> build, LastChanges changes, File diffsDir, Map<String, File> storedChanges, TaskListener listener) {
         try {
-            Collections.sort(commitInfoList, new CommitsByDateComparator());
+            changes.storeDiffs(diffsDir);
+            int reusedChanges = changes.reuseCommitChanges(storedChanges, diffsDir);
+            if (reusedChanges > 0) {
+                listener.getLogger().println("Last Changes Plugin: reused changes of %d commit(s) published by previous builds.".formatted(reusedChanges));
+            }
+            List<CommitInfo> commitsWithoutChanges = changes.getCommitsWithoutChanges();
+            if (!commitsWithoutChanges.isEmpty()) {
+                String commitIds = commitsWithoutChanges.stream().map(CommitInfo::getCommitId).collect(Collectors.joining(", "));
+                listener.getLogger().println("Last Changes Plugin: changes of %d commit(s) published by previous builds could not be reused, they are published without changes: %s"
+                        .formatted(commitsWithoutChanges.size(), commitIds));
+                LOG.log(Level.WARNING, "Stored changes of commits %s could not be reused by build %s, they are published without changes.".formatted(commitIds, build.getFullDisplayName()));
+            }
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Could not store last changes diffs of build %s, they will be kept in the build record.".formatted(build.getFullDisplayName()), e);
+        }
+    }
 
-            for (int i = commitInfoList.size() - 1; i >= 0; i--) {
-                ObjectId previousRevision = gitRepository.resolve(commitInfoList.get(i).getCommitId() + "^1");
-                ObjectId currentRevision = gitRepository.resolve(commitInfoList.get(i).getCommitId());
-                LastChanges lastChanges = GitLastChanges.getInstance().changesOf(gitRepository, currentRevision, previousRevision);
+    private LastChangesConfig lastChangesConfig() {
+        return new LastChangesConfig(since, specificRevision, format, matching, showFiles, synchronisedScroll, matchWordsThreshold, matchingMaxComparisons);
+    }
 
-                String diff;
-                if (lastChanges != null) {
-                    diff = lastChanges.getDiff();
-                } else {
-                    diff = "";
+    /**
+     * @param repository path of the repository relative to the workspace
+     * @return the specific revision or, when not provided, the revision of the repository published by the specific build
+     */
+    private String specificRevisionOf(Run<?, ?> build, EnvVars env, String repository) {
+        String targetRevision = null;
+        if (specificRevision != null && !"".equals(specificRevision)) {
+            targetRevision = env.expand(specificRevision);
+        }
+        boolean hasSpecificRevision = targetRevision != null && !"".equals(targetRevision.trim());
+        //only look into builds revision if no specific revision is provided (specificRevision has higher priority over build revision)
+        if (!hasSpecificRevision && (specificBuild != null && !"".equals(specificBuild))) {
+            targetRevision = findBuildRevision(env.expand(specificBuild), build.getParent().getBuilds(), repository);
+        }
+        return targetRevision;
+    }
+
+    /**
+     * @param repository path of the repository relative to the workspace
+     * @return current revision of the repository published by the last successful build, <code>null</code> if none
+     */
+    private static String lastSuccessfulBuildRevisionOf(Run<?, ?> build, String repository, TaskListener listener) {
+        Run<?, ?> lastSuccessfulBuild = build.getParent().getLastSuccessfulBuild();
+        if (lastSuccessfulBuild == null) {
+            listener.error("No successful build found, last changes will use previous revision.");
+            return null;
+        }
+        LastChangesBuildAction action = lastSuccessfulBuild.getAction(LastChangesBuildAction.class);
+        LastChanges changes = action != null ? action.getRepositoryChanges(repository) : null;
+        if (changes != null && changes.getCurrentRevision() != null) {
+            return changes.getCurrentRevision().getCommitId();
+        }
+        return null;
+    }
+
+    /**
+     * @return directories (relative to the workspace) to search for VCS directories, separated by commas or new lines in vcsDir
+     */
+    private List<String> vcsSearchDirs() {
+        List<String> dirs = new ArrayList<>();
+        if (vcsDir != null) {
+            for (String dir : vcsDir.split("[,\\n]")) {
+                if (!dir.trim().isEmpty()) {
+                    dirs.add(dir.trim());
                 }
-                commitChanges.add(new CommitChanges(commitInfoList.get(i), diff));
             }
-        } catch (Exception e) {
-            LOG.log(Level.SEVERE, "Could not get commit changes from Git.", e);
         }
+        return dirs;
+    }
 
-        return commitChanges;
+    private static void addRepository(List<FilePath> repositories, FilePath vcsDir) {
+        for (FilePath repository : repositories) {
+            if (repository.getRemote().equals(vcsDir.getRemote())) {
+                return;
+            }
+        }
+        repositories.add(vcsDir);
     }
 
-    private static List<CommitChanges> obtainCommitChangesFromSvn(final File svnRepository, final List<CommitInfo> commitInfoList, final String oldestCommit, final ISVNAuthenticationProvider svnAuthProvider) {
+    /**
+     * @return path of dir relative to the workspace (separated by <code>/</code>), empty for the workspace itself,
+     *         the absolute path when dir is not inside the workspace
+     */
+    static String relativePath(FilePath workspace, FilePath dir) {
+        String root = workspace.getRemote().replace('\\', '/');
+        String path = dir.getRemote().replace('\\', '/');
+        while (root.endsWith("/") && root.length() > 1) {
+            root = root.substring(0, root.length() - 1);
+        }
+        if (path.equals(root)) {
+            return "";
+        }
+        return path.startsWith(root + "/") ? path.substring(root.length() + 1) : path;
+    }
+
+    private static ISVNAuthenticationProvider createSvnAuthProvider(Run<?, ?> build) {
+        ISVNAuthenticationProvider svnAuthProvider = null;
+        SubversionSCM scm = null;
+        try {
+            Collection<? extends SCM> scMs = SCMTriggerItem.SCMTriggerItems.asSCMTriggerItem(build.getParent()).getSCMs();
+            scm = (SubversionSCM) scMs.iterator().next();
+            svnAuthProvider = scm.createAuthenticationProvider(build.getParent(), scm.getLocations()[0]);
+        } catch (NoSuchMethodError e) {
+            if (scm != null) {
+                svnAuthProvider = scm.getDescriptor().createAuthenticationProvider();
+            }
+
+        } catch (Exception ex) {
+            LOG.log(Level.WARNING,"Problem creating svn auth provider",ex);
+        }
+        return svnAuthProvider;
+    }
+
+    /**
+     * Runs the callable in the node of the directory and reads the last changes it streams back through the remote
+     * output stream of the pipe, see {@link LastChangesWireFormat}.
+     */
+    private static LastChanges receiveLastChanges(FilePath dir, FastPipedInputStream pipe, FilePath.FileCallable<Void> callable) throws IOException, InterruptedException {
+        Future<Void> sent = dir.actAsync(callable);
+        LastChanges received;
+        try (pipe) {
+            received = LastChangesWireFormat.read(pipe);
+        } catch (IOException e) {
+            //the callable failure, if any, explains why the stream ended
+            waitFor(sent);
+            throw e;
+        }
+        waitFor(sent);
+        return received;
+    }
+
+    /**
+     * Runs the callable in the node of the directory and reads the entries of the repositories it streams back
+     * through the remote output stream of the pipe, see {@link LastChangesWireFormat#readEntry(BufferedInputStream)}.
+     *
+     * @return the changes of each repository, <code>null</code> for the repositories which changes were not obtained
+     */
+    private static List<LastChanges> receiveRepositoriesLastChanges(FilePath dir, FastPipedInputStream pipe, int repositories, FilePath.FileCallable<Void> callable) throws IOException, InterruptedException {
+        Future<Void> sent = dir.actAsync(callable);
+        List<LastChanges> received = new ArrayList<>(repositories);
+        try (BufferedInputStream in = new BufferedInputStream(pipe)) {
+            for (int i = 0; i < repositories; i++) {
+                received.add(LastChangesWireFormat.readEntry(in));
+            }
+        } catch (IOException e) {
+            //the callable failure, if any, explains why the stream ended
+            waitFor(sent);
+            throw e;
+        }
+        waitFor(sent);
+        return received;
+    }
+
+    private static void waitFor(Future<Void> sent) throws IOException, InterruptedException {
+        try {
+            sent.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static List<CommitChanges> obtainCommitChangesFromGit(final Repository gitRepository, final List<CommitInfo> commitInfoList, final Integer diffWorkers, final DiffCache diffCache,
+                                                                  final Set<String> publishedCommits, final DiffOptions diffOptions) {
         if (commitInfoList == null || commitInfoList.isEmpty()) {
             return null;
         }
         List<CommitChanges> commitChanges = new ArrayList<>();
 
         try {
-            Collections.sort(commitInfoList, new CommitsByDateComparator());
-
-            for (int i = commitInfoList.size() - 1; i >= 0; i--) {
-                LastChanges lastChanges;
-                SVNRevision previousRevision;
-                SVNRevision currentRevision;
+            //commits keep the order of the walk (newest first), the newest ones are kept when commits are limited
+            List<CommitInfo> newestFirst = commitInfoList;
+            if (diffOptions.getMaxCommits() > 0 && newestFirst.size() > diffOptions.getMaxCommits()) {
+                newestFirst = newestFirst.subList(0, diffOptions.getMaxCommits());
+            }
+            commitChanges.addAll(new GitCommitChangesEngine(gitRepository, diffWorkers, diffCache).setSkippedCommits(publishedCommits).setDiffOptions(diffOptions).changesOf(newestFirst));
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Could not get commit changes from Git.", e);
+        }
 
-                if (i == 0) { //here we can't compare with (i -1) so we compare with first commit of oldest commit (retrieved in main diff)
-                    //here we have the older commit from current tree (see LastChanges.java) which diff must be compared with oldestCommit which is currentRevision from previous tree
-                    previousRevision = SVNRevision.parse(oldestCommit);
-                } else {
-                    //get changes comparing current commit (i) with previous one (i -1)
-                    previousRevision = SVNRevision.parse(commitInfoList.get(i - 1).getCommitId());
-                }
-                currentRevision = SVNRevision.parse(commitInfoList.get(i).getCommitId());
-                lastChanges = SvnLastChanges.getInstance(svnAuthProvider).changesOf(svnRepository, currentRevision, previousRevision);
+        return commitChanges;
+    }
 
-                String diff;
-                if (lastChanges != null) {
-                    diff = lastChanges.getDiff();
-                } else {
-                    diff = "";
-                }
-                commitChanges.add(new CommitChanges(commitInfoList.get(i), diff));
-            }
+    private static List<CommitChanges> obtainCommitChangesFromSvn(final SvnChangesSession session, final File svnRepository, final SVNRevision currentRevision,
+                                                                  final SVNRevision previousRevision, final SVNRevision oldestCommit, final TaskListener listener) {
+        try {
+            SvnCommitChangesEngine engine = new SvnCommitChangesEngine(session, svnRepository);
+            List<CommitChanges> commitChanges = engine.changesOf(currentRevision, previousRevision, oldestCommit);
+            logOmittedCommits(commitChanges.size() + engine.getOmittedCommits(), session.getDiffOptions(), listener);
+            return commitChanges.isEmpty() ? null : commitChanges;
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Could not get commit changes from SVN.", e);
+            return new ArrayList<>();
         }
+    }
 
-        return commitChanges;
+    private DiffOptions diffOptions() {
+        LastChangesGlobalConfiguration configuration = LastChangesGlobalConfiguration.get();
+        return new DiffOptions()
+                .setMaxDiffBytes(maxDiffBytes != null ? maxDiffBytes : 0)
+                .setMaxFileBytes(maxFileDiffBytes != null ? maxFileDiffBytes : 0)
+                .setMaxFiles(maxDiffFiles != null ? maxDiffFiles : 0)
+                .setMaxCommits(maxCommits != null ? maxCommits : 0)
+                .setIncludes(DiffOptions.parsePatterns(includePaths))
+                .setExcludes(DiffOptions.parsePatterns(excludePaths))
+                .setDetectRenames(Boolean.TRUE.equals(detectRenames))
+                .setRenameScore(renameScore != null ? renameScore : 0)
+                .setRenameLimit(renameLimit != null ? renameLimit : 0)
+                .setDiffCodec(configuration.getDiffCodec())
+                .setCompressionLevel(configuration.getCompressionLevel() != null ? configuration.getCompressionLevel() : 0);
+    }
+
+    private static void logOmittedCommits(int commits, DiffOptions diffOptions, TaskListener listener) {
+        if (diffOptions.getMaxCommits() > 0 && commits > diffOptions.getMaxCommits()) {
+            listener.getLogger().println("Last Changes Plugin: only the %d most recent of %d commits are listed.".formatted(diffOptions.getMaxCommits(), commits));
+        }
     }
 
     private static String findBuildRevision(String targetBuild, RunList<?> builds) {
+        return findBuildRevision(targetBuild, builds, null);
+    }
+
+    /**
+     * @param repository path of the repository relative to the workspace, <code>null</code> for the first published repository
+     * @return current revision of the repository published by the build, <code>null</code> when the build did not publish the repository
+     */
+    private static String findBuildRevision(String targetBuild, RunList<?> builds, String repository) {
 
         if (builds == null || builds.isEmpty()) {
             return null;
@@ -353,13 +668,44 @@ public class LastChangesPublisher extends Recorder implements SimpleBuildStep, S
             throw new RuntimeException("No build found with number %s. Maybe the build was discarded or not has published LastChanges.".formatted(buildParam));
         }
 
-        return actionFound.getBuildChanges().getCurrentRevision().getCommitId();
+        LastChanges changes = repository != null ? actionFound.getRepositoryChanges(repository) : actionFound.getBuildChanges();
+        return changes != null ? changes.getCurrentRevision().getCommitId() : null;
     }
 
     private boolean isSlave() {
         return Computer.currentComputer() instanceof SlaveComputer;
     }
 
+    /**
+     * @param workspace build workspace
+     * @return diff cache directory of the node running the build (under its caches directory), <code>null</code> when the cache is disabled
+     */
+    private static String diffCacheDir(FilePath workspace) {
+        if (DIFF_CACHE_MAX_SIZE <= 0) {
+            return null;
+        }
+        Computer computer = workspace.toComputer();
+        Node node = computer != null ? computer.getNode() : null;
+        FilePath rootPath = node != null ? node.getRootPath() : null;
+        return rootPath != null ? rootPath.child("caches").child("last-changes").getRemote() : null;
+    }
+
+    private static DiffCache openDiffCache(String diffCacheDir, long diffCacheMaxSize, TaskListener listener) {
+        if (diffCacheDir == null) {
+            return null;
+        }
+        DiffCache diffCache = DiffCache.of(new File(diffCacheDir), diffCacheMaxSize);
+        listener.getLogger().println("Using last changes diff cache %s.".formatted(diffCacheDir));
+        return diffCache;
+    }
+
+    private static void logDiffCacheUsage(DiffCache diffCache, TaskListener listener) {
+        if (diffCache != null) {
+            //the cache is opened for this build, its hits and misses are the ones of this build
+            listener.getLogger().println("Last changes diff cache: %d hits, %d misses.".formatted(diffCache.getHits(), diffCache.getMisses()));
+        }
+    }
+
     private static SvnLastChanges getSvnLastChanges(ISVNAuthenticationProvider svnAuthProvider) {
         return svnAuthProvider != null ? SvnLastChanges.getInstance(svnAuthProvider) : SvnLastChanges.getInstance();
     }
@@ -375,40 +721,47 @@ public class LastChangesPublisher extends Recorder implements SimpleBuildStep, S
     /**
      * .git directory can be on a workspace sub dir, see JENKINS-36971
      *
+     * @param vcsDirs VCS directories found in the workspace, see {@link #findVCSDirs(FilePath, boolean)}
      * @return boolean indicating weather the vcs directory was found or not
      */
-    private boolean findVCSDir(FilePath workspace, String dir) throws IOException, InterruptedException {
-        FilePath vcsDir = null;
-        if (workspace.child(dir).exists()) {
-            vcsDirFound = workspace.child(dir);
-            return true;
-        }
-        int recursionDepth = RECURSION_DEPTH;
-        while ((vcsDir = findVCSDirInSubDirectories(workspace, dir)) == null && recursionDepth > 0) {
-            recursionDepth--;
-        }
-        if (vcsDir == null) {
-            return false;
-        } else {
-            vcsDirFound = vcsDir; //vcs directory  gitDir;
-            return true;
+    private boolean findVCSDir(FilePath workspace, List<String> vcsDirs, String dir) {
+        for (String vcsDir : vcsDirs) {
+            if (vcsDir.equals(dir) || vcsDir.endsWith("/" + dir)) {
+                vcsDirFound = workspace.child(vcsDir);
+                return true;
+            }
         }
+        return false;
     }
 
-    private FilePath findVCSDirInSubDirectories(FilePath sourceDir, String dir) throws IOException, InterruptedException {
-        List<FilePath> filePaths = sourceDir.listDirectories();
-        if (filePaths == null || filePaths.isEmpty()) {
-            return null;
+    /**
+     * Searches the VCS directories (.git and .svn) of the workspace with a single call to the node.
+     *
+     * When a single repository is published the result is cached per node and workspace, next builds only check (in
+     * a single call) that all the directories still exist. When all repositories are published the workspace is
+     * searched on each build, so repositories added to the workspace are found.
+     *
+     * @param allRepositories <code>true</code> to also search the repositories nested in a repository (e.g. clones
+     *                        in sub directories of a checkout)
+     * @return the VCS directories relative to the workspace, shallowest first
+     */
+    static List<String> findVCSDirs(FilePath workspace, boolean allRepositories) throws IOException, InterruptedException {
+        if (allRepositories) {
+            return workspace.act(new FindVCSDirsCallable(RECURSION_DEPTH, VCS_SEARCH_MAX_DIRS, true));
         }
-
-        for (FilePath filePath : sourceDir.listDirectories()) {
-            if (filePath.getName().equalsIgnoreCase(dir)) {
-                return filePath;
-            } else {
-                return findVCSDirInSubDirectories(filePath, dir);
-            }
+        Computer computer = workspace.toComputer();
+        String cacheKey = (computer != null ? computer.getName() : "") + ":" + workspace.getRemote();
+        List<String> vcsDirs = VCS_DIRS_CACHE.get(cacheKey);
+        if (vcsDirs != null && !vcsDirs.isEmpty() && workspace.act(new DirectoriesExistCallable(vcsDirs))) {
+            return vcsDirs;
         }
-        return null;
+        vcsDirs = workspace.act(new FindVCSDirsCallable(RECURSION_DEPTH, VCS_SEARCH_MAX_DIRS, false));
+        if (vcsDirs.isEmpty()) {
+            VCS_DIRS_CACHE.remove(cacheKey);
+        } else {
+            VCS_DIRS_CACHE.put(cacheKey, vcsDirs);
+        }
+        return vcsDirs;
     }
 
     /**
@@ -543,6 +896,54 @@ public class LastChangesPublisher extends Recorder implements SimpleBuildStep, S
         return specificBuild;
     }
 
+    public Integer getDiffWorkers() {
+        return diffWorkers;
+    }
+
+    public Boolean getReachableTagsOnly() {
+        return reachableTagsOnly;
+    }
+
+    public Long getMaxDiffBytes() {
+        return maxDiffBytes;
+    }
+
+    public Long getMaxFileDiffBytes() {
+        return maxFileDiffBytes;
+    }
+
+    public Integer getMaxDiffFiles() {
+        return maxDiffFiles;
+    }
+
+    public Integer getMaxCommits() {
+        return maxCommits;
+    }
+
+    public String getIncludePaths() {
+        return includePaths;
+    }
+
+    public String getExcludePaths() {
+        return excludePaths;
+    }
+
+    public Boolean getDetectRenames() {
+        return detectRenames;
+    }
+
+    public Integer getRenameScore() {
+        return renameScore;
+    }
+
+    public Integer getRenameLimit() {
+        return renameLimit;
+    }
+
+    public Boolean getAllRepositories() {
+        return allRepositories;
+    }
+
     @DataBoundSetter
     public void setSince(SinceType since) {
         this.since = since;
@@ -593,24 +994,171 @@ public class LastChangesPublisher extends Recorder implements SimpleBuildStep, S
         this.specificBuild = buildNumber;
     }
 
+    @DataBoundSetter
+    public void setDiffWorkers(Integer diffWorkers) {
+        this.diffWorkers = diffWorkers;
+    }
+
+    @DataBoundSetter
+    public void setReachableTagsOnly(Boolean reachableTagsOnly) {
+        this.reachableTagsOnly = reachableTagsOnly;
+    }
+
+    @DataBoundSetter
+    public void setMaxDiffBytes(Long maxDiffBytes) {
+        this.maxDiffBytes = maxDiffBytes;
+    }
+
+    @DataBoundSetter
+    public void setMaxFileDiffBytes(Long maxFileDiffBytes) {
+        this.maxFileDiffBytes = maxFileDiffBytes;
+    }
+
+    @DataBoundSetter
+    public void setMaxDiffFiles(Integer maxDiffFiles) {
+        this.maxDiffFiles = maxDiffFiles;
+    }
+
+    @DataBoundSetter
+    public void setMaxCommits(Integer maxCommits) {
+        this.maxCommits = maxCommits;
+    }
+
+    @DataBoundSetter
+    public void setIncludePaths(String includePaths) {
+        this.includePaths = includePaths;
+    }
+
+    @DataBoundSetter
+    public void setExcludePaths(String excludePaths) {
+        this.excludePaths = excludePaths;
+    }
+
+    @DataBoundSetter
+    public void setDetectRenames(Boolean detectRenames) {
+        this.detectRenames = detectRenames;
+    }
+
+    @DataBoundSetter
+    public void setRenameScore(Integer renameScore) {
+        this.renameScore = renameScore;
+    }
+
+    @DataBoundSetter
+    public void setRenameLimit(Integer renameLimit) {
+        this.renameLimit = renameLimit;
+    }
+
+    @DataBoundSetter
+    public void setAllRepositories(Boolean allRepositories) {
+        this.allRepositories = allRepositories;
+    }
+
+    /**
+     * Breadth first search of the VCS directories of a workspace on the node. Dependency and build output
+     * directories are pruned and working trees are not entered, once a directory holding a VCS directory is found
+     * only its siblings are searched.
+     */
+    private static final class FindVCSDirsCallable extends MasterToSlaveFileCallable<List<String>> {
+
+        private final int maxDepth;
+
+        private final int maxDirs;
+
+        private final boolean nested;//search the repositories nested in a working tree
+
+        public FindVCSDirsCallable(int maxDepth, int maxDirs, boolean nested) {
+            this.maxDepth = maxDepth;
+            this.maxDirs = maxDirs;
+            this.nested = nested;
+        }
+
+        @Override
+        public List<String> invoke(File workspace, VirtualChannel virtualChannel) throws IOException {
+            List<String> vcsDirs = new ArrayList<>();
+            Path root = workspace.toPath();
+            if (!Files.isDirectory(root)) {
+                return vcsDirs;
+            }
+            Deque<Path> level = new ArrayDeque<>();
+            level.add(root);
+            int visited = 0;
+            for (int depth = 0; depth <= maxDepth && !level.isEmpty() && visited < maxDirs; depth++) {
+                Deque<Path> next = new ArrayDeque<>();
+                while (!level.isEmpty() && visited < maxDirs) {
+                    Path dir = level.poll();
+                    visited++;
+                    List<Path> subDirs = new ArrayList<>();
+                    boolean workingTree = false;
+                    try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+                        for (Path child : children) {
+                            if (!Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                                continue;
+                            }
+                            String name = child.getFileName().toString();
+                            if (GIT_DIR.equals(name) || SVN_DIR.equals(name)) {
+                                vcsDirs.add(root.relativize(child).toString().replace(File.separatorChar, '/'));
+                                workingTree = true;
+                            } else if (!VCS_SEARCH_PRUNED_DIRS.contains(name)) {
+                                subDirs.add(child);
+                            }
+                        }
+                    } catch (IOException | SecurityException e) {
+                        //unreadable directory, search the others
+                        LOG.log(Level.FINE, "Could not list directory %s.".formatted(dir), e);
+                    }
+                    if (nested || !workingTree) {
+                        subDirs.sort(Comparator.naturalOrder());
+                        next.addAll(subDirs);
+                    }
+                }
+                level = next;
+            }
+            return vcsDirs;
+        }
+    }
+
+    private static final class DirectoriesExistCallable extends MasterToSlaveFileCallable<Boolean> {
+
+        private final List<String> dirs;
+
+        public DirectoriesExistCallable(List<String> dirs) {
+            this.dirs = new ArrayList<>(dirs);
+        }
+
+        @Override
+        public Boolean invoke(File workspace, VirtualChannel virtualChannel) {
+            for (String dir : dirs) {
+                if (!new File(workspace, dir).isDirectory()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
     private static final class GetGitLastTagRevisionCallable extends MasterToSlaveFileCallable <String> {
 
         private final TaskListener listener;
 
-        public GetGitLastTagRevisionCallable(final TaskListener listener) {
+        private final boolean reachableTagsOnly;
+
+        public GetGitLastTagRevisionCallable(final TaskListener listener, final boolean reachableTagsOnly) {
             this.listener = listener;
+            this.reachableTagsOnly = reachableTagsOnly;
         }
 
         @Override
         public String invoke(File workspace, VirtualChannel virtualChannel) throws RepositoryNotFoundException {
 
             if (workspace.exists() && workspace.isDirectory()) {
-                Repository gitRepository = repository(workspace.getAbsolutePath());
-                ObjectId lastTagRevision = GitLastChanges.getInstance().getLastTagRevision(gitRepository);
-                if (lastTagRevision != null) {
-                    return lastTagRevision.name();
-                } else {
-                    return null;
+                try (GitChangesSession session = GitChangesSession.open(workspace.getAbsolutePath())) {
+                    ObjectId lastTagRevision = GitLastChanges.getInstance().getLastTagRevision(session, reachableTagsOnly);
+                    if (lastTagRevision != null) {
+                        return lastTagRevision.name();
+                    } else {
+                        return null;
+                    }
                 }
             } else {
                 String lastTagRevisionErrorMsg = "Last Changes Plugin: Could not find the workspace directory for GIT in order to obtain the last changes of the revisions: " + workspace.getAbsolutePath();
@@ -635,7 +1183,11 @@ public class LastChangesPublisher extends Recorder implements SimpleBuildStep, S
         public String invoke(File workspace, VirtualChannel virtualChannel) throws RepositoryNotFoundException {
             if (workspace.exists() && workspace.isDirectory()) {
                 File svnRepository = new File(workspace.getAbsolutePath());
-                SVNRevision lastTagRevision = getSvnLastChanges(svnAuthProvider).getLastTagRevision(svnRepository);
+                SVNRevision lastTagRevision;
+                SvnLastChanges svnLastChanges = getSvnLastChanges(svnAuthProvider);
+                try (SvnChangesSession session = svnLastChanges.openSession()) {
+                    lastTagRevision = svnLastChanges.getLastTagRevision(session, svnRepository);
+                }
                 if (lastTagRevision != null) {
                     return lastTagRevision.toString();
                 } else {
@@ -649,7 +1201,7 @@ public class LastChangesPublisher extends Recorder implements SimpleBuildStep, S
         }
     }
 
-    private static final class GetGITLastChangesCallable extends MasterToSlaveFileCallable <LastChanges> {
+    private static final class GetGITLastChangesCallable extends MasterToSlaveFileCallable <Void> {
 
         private final boolean hasTargetRevision;
 
@@ -657,41 +1209,66 @@ public class LastChangesPublisher extends Recorder implements SimpleBuildStep, S
 
         private final TaskListener listener;
 
-        public GetGITLastChangesCallable(final boolean hasTargetRevision, final String targetRevision, final TaskListener listener) {
+        private final Integer diffWorkers;
+
+        private final String diffCacheDir;
+
+        private final long diffCacheMaxSize;
+
+        private final Set<String> publishedCommits;
+
+        private final DiffOptions diffOptions;
+
+        private final RemoteOutputStream out;
+
+        public GetGITLastChangesCallable(final boolean hasTargetRevision, final String targetRevision, final TaskListener listener, final Integer diffWorkers,
+                final String diffCacheDir, final long diffCacheMaxSize, final Set<String> publishedCommits, final DiffOptions diffOptions, final RemoteOutputStream out) {
             this.hasTargetRevision = hasTargetRevision;
             this.targetRevision = targetRevision;
             this.listener = listener;
+            this.diffWorkers = diffWorkers;
+            this.diffCacheDir = diffCacheDir;
+            this.diffCacheMaxSize = diffCacheMaxSize;
+            this.publishedCommits = publishedCommits;
+            this.diffOptions = diffOptions;
+            this.out = out;
         }
 
         @Override
-        public LastChanges invoke(final File workspace, VirtualChannel channel) {
-            if(workspace.exists() && workspace.isDirectory()) {
-                return getGITLastChanges(workspace);
-            } else {
-                String lastChangesWorkDirErrorMsg = "Last Changes Plugin: Could not find the workspace directory in order to obtain the last changes of the revisions: " + workspace.getAbsolutePath();
-                listener.error(lastChangesWorkDirErrorMsg);
-                throw new RepositoryNotFoundException(lastChangesWorkDirErrorMsg);
+        public Void invoke(final File workspace, VirtualChannel channel) throws IOException {
+            //closing the stream (also on failure) ends the stream read by the controller
+            try (out) {
+                if (workspace.exists() && workspace.isDirectory()) {
+                    LastChangesWireFormat.write(getGITLastChanges(workspace), out);
+                    return null;
+                } else {
+                    String lastChangesWorkDirErrorMsg = "Last Changes Plugin: Could not find the workspace directory in order to obtain the last changes of the revisions: " + workspace.getAbsolutePath();
+                    listener.error(lastChangesWorkDirErrorMsg);
+                    throw new RepositoryNotFoundException(lastChangesWorkDirErrorMsg);
+                }
             }
         }
 
         private LastChanges getGITLastChanges(final File workspace) {
             LastChanges lastChanges;
-            try {
-                Repository gitRepository = repository(workspace.getAbsolutePath());
+            DiffCache diffCache = openDiffCache(diffCacheDir, diffCacheMaxSize, listener);
+            try (GitChangesSession session = GitChangesSession.open(workspace.getAbsolutePath()).setDiffCache(diffCache).setDiffOptions(diffOptions)) {
+                GitLastChanges gitLastChanges = GitLastChanges.getInstance();
                 if (hasTargetRevision) {
                     //compares current repository revision with provided revision
-                    ObjectId previousRevision = gitRepository.resolve(targetRevision);
-                    ObjectId currentRevision = GitLastChanges.getInstance().resolveCurrentRevision(gitRepository);
-                    lastChanges = GitLastChanges.getInstance().changesOf(gitRepository, currentRevision, previousRevision);
+                    ObjectId previousRevision = session.resolve(targetRevision);
+                    ObjectId currentRevision = gitLastChanges.resolveCurrentRevision(session);
+                    lastChanges = gitLastChanges.changesOf(session, currentRevision, previousRevision);
 
-                    currentRevision = gitRepository.resolve(lastChanges.getCurrentRevision().getCommitId());
-                    List<CommitInfo> commitInfoList = GitLastChanges.getInstance().getCommitsBetweenRevisions(gitRepository, currentRevision, previousRevision);
-                    lastChanges.addCommits(LastChangesPublisher.obtainCommitChangesFromGit(gitRepository, commitInfoList));
+                    List<CommitInfo> commitInfoList = gitLastChanges.getCommitsBetweenRevisions(session, currentRevision, previousRevision);
+                    logOmittedCommits(commitInfoList.size(), diffOptions, listener);
+                    lastChanges.addCommits(LastChangesPublisher.obtainCommitChangesFromGit(session.getRepository(), commitInfoList, diffWorkers, diffCache, publishedCommits, diffOptions));
                 } else {
                     //compares current repository revision with previous one
-                    lastChanges = GitLastChanges.getInstance().changesOf(gitRepository);
-                    lastChanges.addCommit(new CommitChanges(lastChanges.getCurrentRevision(), lastChanges.getDiff()));
+                    lastChanges = gitLastChanges.changesOf(session);
+                    lastChanges.addCommit(CommitChanges.of(lastChanges.getCurrentRevision(), lastChanges));
                 }
+                logDiffCacheUsage(diffCache, listener);
                 return lastChanges;
             } catch (IOException e) {
                 String lastChangesErrorMsg = "Last Changes Plugin: Last changes between revisions from GIT workspace were not obtained";
@@ -701,7 +1278,7 @@ public class LastChangesPublisher extends Recorder implements SimpleBuildStep, S
         }
     }
 
-    private static final class GetSVNLastChangesCallable extends MasterToSlaveFileCallable <LastChanges> {
+    private static final class GetSVNLastChangesCallable extends MasterToSlaveFileCallable <Void> {
 
         private final boolean hasTargetRevision;
 
@@ -711,46 +1288,66 @@ public class LastChangesPublisher extends Recorder implements SimpleBuildStep, S
 
         private final ISVNAuthenticationProvider svnAuthProvider;
 
-        public GetSVNLastChangesCallable(final boolean hasTargetRevision, final String targetRevision, final TaskListener listener, final ISVNAuthenticationProvider svnAuthProvider) {
+        private final String diffCacheDir;
+
+        private final long diffCacheMaxSize;
+
+        private final DiffOptions diffOptions;
+
+        private final RemoteOutputStream out;
+
+        public GetSVNLastChangesCallable(final boolean hasTargetRevision, final String targetRevision, final TaskListener listener, final ISVNAuthenticationProvider svnAuthProvider,
+                final String diffCacheDir, final long diffCacheMaxSize, final DiffOptions diffOptions, final RemoteOutputStream out) {
             this.hasTargetRevision = hasTargetRevision;
             this.targetRevision = targetRevision;
             this.listener = listener;
             this.svnAuthProvider = svnAuthProvider;
+            this.diffCacheDir = diffCacheDir;
+            this.diffCacheMaxSize = diffCacheMaxSize;
+            this.diffOptions = diffOptions;
+            this.out = out;
         }
 
         @Override
-        public LastChanges invoke(final File workspace, VirtualChannel channel) {
-            if(workspace.exists() && workspace.isDirectory()) {
-                    return getSVNLastChanges(workspace);
-            } else {
-                String lastChangesWorkDirErrorMsg = "Last Changes Plugin: Could not find the SVN workspace directory in order to obtain the last changes of the revisions: " + workspace.getAbsolutePath();
-                listener.error(lastChangesWorkDirErrorMsg);
-                throw new RepositoryNotFoundException(lastChangesWorkDirErrorMsg);
+        public Void invoke(final File workspace, VirtualChannel channel) throws IOException {
+            //closing the stream (also on failure) ends the stream read by the controller
+            try (out) {
+                if (workspace.exists() && workspace.isDirectory()) {
+                    LastChangesWireFormat.write(getSVNLastChanges(workspace), out);
+                    return null;
+                } else {
+                    String lastChangesWorkDirErrorMsg = "Last Changes Plugin: Could not find the SVN workspace directory in order to obtain the last changes of the revisions: " + workspace.getAbsolutePath();
+                    listener.error(lastChangesWorkDirErrorMsg);
+                    throw new RepositoryNotFoundException(lastChangesWorkDirErrorMsg);
+                }
             }
         }
 
         private LastChanges getSVNLastChanges(final File workspace) {
             LastChanges lastChanges;
-            try {
-                SvnLastChanges svnLastChanges = getSvnLastChanges(svnAuthProvider);
+            DiffCache diffCache = openDiffCache(diffCacheDir, diffCacheMaxSize, listener);
+            SvnLastChanges svnLastChanges = getSvnLastChanges(svnAuthProvider);
+            //one session (and authenticated connection) for all the svn operations of this publish
+            try (SvnChangesSession session = svnLastChanges.openSession().setDiffCache(diffCache).setDiffOptions(diffOptions)) {
                 File svnRepository = new File(workspace.getAbsolutePath());
                 if(hasTargetRevision) {
                     //compares current repository revision with provided revision
                     final Long svnRevision = Long.parseLong(targetRevision);
                     SVNRevision previousRevision = SVNRevision.create(svnRevision);
                     SVNRevision currentRevision = SVNRevision.HEAD;
-                    lastChanges = svnLastChanges.changesOf(svnRepository, currentRevision, previousRevision);
+                    lastChanges = svnLastChanges.changesOf(session, svnRepository, currentRevision, previousRevision);
 
                     currentRevision = SVNRevision.create(Long.parseLong(lastChanges.getCurrentRevision().getCommitId()));
-                    List<CommitInfo> commitInfoList = SvnLastChanges.getInstance(svnAuthProvider).getCommitsBetweenRevisions(svnRepository, currentRevision, previousRevision);
-                    String oldestCommit = lastChanges.getPreviousRevision().getCommitId();
-                    lastChanges.addCommits(obtainCommitChangesFromSvn(svnRepository, commitInfoList, oldestCommit, svnAuthProvider));
+                    //the oldest commit is compared with the current revision of the previous tree (see LastChanges.java)
+                    SVNRevision oldestCommit = SVNRevision.parse(lastChanges.getPreviousRevision().getCommitId());
+                    lastChanges.addCommits(obtainCommitChangesFromSvn(session, svnRepository, currentRevision, previousRevision, oldestCommit, listener));
                 } else {
                     //compares current repository revision with previous one
-                    lastChanges = svnLastChanges.changesOf(svnRepository);
+                    lastChanges = svnLastChanges.changesOf(session, svnRepository);
                     //in this case there will be only one commit
-                    lastChanges.addCommit(new CommitChanges(lastChanges.getCurrentRevision(), lastChanges.getDiff()));
+                    lastChanges.addCommit(CommitChanges.of(lastChanges.getCurrentRevision(), lastChanges));
                 }
+                logDiffCacheUsage(diffCache, listener);
                 return lastChanges;
             } catch (LastChangesException e) {
                 String lastChangesErrorMsg = "Last Changes Plugin: Last changes between revisions from SVN workspace were not obtained";
@@ -760,17 +1357,134 @@ public class LastChangesPublisher extends Recorder implements SimpleBuildStep, S
         }
     }
 
-    private static final class CommitsByDateComparator implements Comparator<CommitInfo> {
+    /**
+     * Repository of a workspace whose changes are computed by {@link GetRepositoriesLastChangesCallable}.
+     */
+    private static final class RepositoryRequest implements Serializable {
+
+        private final String repository;//path relative to the workspace
+
+        private final String vcsDir;//absolute path of the .git or .svn directory on the node
+
+        private final boolean git;
+
+        private final String targetRevision;
+
+        private final boolean sinceLastTag;//target revision is resolved on the node
+
+        RepositoryRequest(String repository, String vcsDir, boolean git, String targetRevision, boolean sinceLastTag) {
+            this.repository = repository;
+            this.vcsDir = vcsDir;
+            this.git = git;
+            this.targetRevision = targetRevision;
+            this.sinceLastTag = sinceLastTag;
+        }
+
+        String displayName() {
+            return repository.isEmpty() ? "." : repository;
+        }
+    }
+
+    /**
+     * Computes the last changes of several repositories concurrently and streams them back, in the order of the
+     * requests, as soon as each one is available.
+     */
+    private static final class GetRepositoriesLastChangesCallable extends MasterToSlaveFileCallable <Void> {
+
+        private final List<RepositoryRequest> requests;
+
+        private final TaskListener listener;
+
+        private final Integer diffWorkers;
+
+        private final String diffCacheDir;
+
+        private final long diffCacheMaxSize;
+
+        private final Set<String> publishedCommits;
+
+        private final DiffOptions diffOptions;
+
+        private final ISVNAuthenticationProvider svnAuthProvider;
+
+        private final boolean reachableTagsOnly;
+
+        private final RemoteOutputStream out;
+
+        public GetRepositoriesLastChangesCallable(final List<RepositoryRequest> requests, final TaskListener listener, final Integer diffWorkers, final String diffCacheDir,
+                final long diffCacheMaxSize, final Set<String> publishedCommits, final DiffOptions diffOptions, final ISVNAuthenticationProvider svnAuthProvider,
+                final boolean reachableTagsOnly, final RemoteOutputStream out) {
+            this.requests = requests;
+            this.listener = listener;
+            this.diffWorkers = diffWorkers;
+            this.diffCacheDir = diffCacheDir;
+            this.diffCacheMaxSize = diffCacheMaxSize;
+            this.publishedCommits = publishedCommits;
+            this.diffOptions = diffOptions;
+            this.svnAuthProvider = svnAuthProvider;
+            this.reachableTagsOnly = reachableTagsOnly;
+            this.out = out;
+        }
+
         @Override
-        public int compare(CommitInfo c1, CommitInfo c2) {
-            try {
-                DateFormat format = DateFormat.getDateTimeInstance(DateFormat.DEFAULT, DateFormat.DEFAULT);
-                return format.parse(c1.getCommitDate()).compareTo(format.parse(c2.getCommitDate()));
-            } catch (ParseException e) {
-                String couldNotParseCommitDatesErrorMsg = "Could not parse commit dates %s and %s ".formatted(c1.getCommitDate(), c2.getCommitDate());
-                LOG.severe(couldNotParseCommitDatesErrorMsg);
-                throw new CommitInfoException(couldNotParseCommitDatesErrorMsg, e);
+        public Void invoke(final File workspace, final VirtualChannel channel) throws IOException, InterruptedException {
+            final AtomicInteger threadCounter = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(requests.size(), REPOSITORY_WORKERS)), runnable -> {
+                Thread thread = new Thread(runnable, "last-changes-repository-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            //closing the stream (also on failure) ends the stream read by the controller
+            try (out) {
+                List<Future<LastChanges>> futures = new ArrayList<>(requests.size());
+                for (final RepositoryRequest request : requests) {
+                    futures.add(executor.submit(() -> lastChangesOf(request, channel)));
+                }
+                for (int i = 0; i < futures.size(); i++) {
+                    LastChanges lastChanges = null;
+                    try {
+                        lastChanges = futures.get(i).get();
+                    } catch (ExecutionException e) {
+                        String repository = requests.get(i).displayName();
+                        listener.error("Last Changes Plugin: Last changes of repository %s were not obtained: %s".formatted(repository, e.getCause()));
+                        LOG.log(Level.WARNING, "Could not get last changes of repository %s.".formatted(repository), e.getCause());
+                    }
+                    LastChangesWireFormat.writeEntry(lastChanges, out);
+                }
+                return null;
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        private LastChanges lastChangesOf(RepositoryRequest request, VirtualChannel channel) throws IOException {
+            File vcsDir = new File(request.vcsDir);
+            //the working copy holds the .svn directory
+            File repository = request.git ? vcsDir : vcsDir.getParentFile();
+            if (!repository.isDirectory()) {
+                throw new RepositoryNotFoundException("Could not find the repository directory " + repository.getAbsolutePath());
+            }
+            String targetRevision = request.targetRevision;
+            if (request.sinceLastTag) {
+                try {
+                    String lastTagRevision = request.git
+                            ? new GetGitLastTagRevisionCallable(listener, reachableTagsOnly).invoke(repository, channel)
+                            : new GetSvnLastTagRevisionCallable(listener, svnAuthProvider).invoke(repository, channel);
+                    if (lastTagRevision != null) {
+                        targetRevision = lastTagRevision;
+                    }
+                } catch (Exception e) {
+                    LOG.log(Level.WARNING, "Could not resolve last tag revision of repository %s, last changes will use previous revision.".formatted(request.displayName()), e);
+                    listener.error("Could not resolve last tag revision of repository %s, last changes will use previous revision.".formatted(request.displayName()));
+                }
+            }
+            boolean hasTargetRevision = targetRevision != null && !"".equals(targetRevision);
+            if (request.git) {
+                return new GetGITLastChangesCallable(hasTargetRevision, targetRevision, listener, diffWorkers, diffCacheDir, diffCacheMaxSize, publishedCommits,
+                        diffOptions, null).getGITLastChanges(repository);
             }
+            return new GetSVNLastChangesCallable(hasTargetRevision, targetRevision, listener, svnAuthProvider, diffCacheDir, diffCacheMaxSize, diffOptions, null)
+                    .getSVNLastChanges(repository);
         }
     }
 }
@@ -1,23 +1,24 @@
 package com.github.jenkins.lastchanges;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.commons.io.IOUtils;
 
 import com.github.jenkins.lastchanges.model.LastChanges;
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Serializable;
 import static java.nio.charset.StandardCharsets.UTF_8;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 public class LastChangesUtil implements Serializable {
 
@@ -25,28 +26,30 @@ public class LastChangesUtil implements Serializable {
 
     private static final int DIFF_COMPRESS_THRESHOLD = Integer.parseInt(System.getProperty("lastchanges.diff.compress-threshold", "250"));
 
+    /**
+     * Diffs with at least this number of bytes are compressed
+     */
+    static final long DIFF_COMPRESS_THRESHOLD_BYTES = (DIFF_COMPRESS_THRESHOLD + 1) * 1024L;
+
     public static String toHtmlDiff(LastChanges buildChanges, String buildName) {
         final StringWriter writer = new StringWriter();
-        try (InputStream is = LastChangesUtil.class.getResourceAsStream("/htmlDiffTemplate")) {
-            IOUtils.copy(is, writer, UTF_8);
+        try {
+            writeHtmlDiff(buildChanges, buildName, writer);
         } catch (IOException e) {
             LOG.log(Level.SEVERE, "Could not generate html diff", e);
         }
-        String htmlTemplate = writer.toString();
-        boolean hasPreviousRevision = buildChanges.getPreviousRevision() != null;
-        String htmlDiff = htmlTemplate.replace("[TITLE]", "Changes of build " + buildName)
-            .replace("[PREV_REVISION]", hasPreviousRevision ? buildChanges.getPreviousRevision().getCommitId() : "")
-            .replace("[PREV_AUTHOR]", (hasPreviousRevision && buildChanges.getPreviousRevision().getCommitterName() != null) ? buildChanges.getPreviousRevision().getCommitterName() : "")
-            .replace("[PREV_EMAIL]", (hasPreviousRevision && buildChanges.getPreviousRevision().getCommitterEmail() != null) ? buildChanges.getPreviousRevision().getCommitterEmail() : "")
-            .replace("[PREV_DATE]", (hasPreviousRevision && buildChanges.getPreviousRevision().getCommitDate() != null) ? buildChanges.getPreviousRevision().getCommitDate() : "")
-            .replace("[PREV_MESSAGE]", (hasPreviousRevision && buildChanges.getPreviousRevision().getCommitterName() != null) ? buildChanges.getPreviousRevision().getCommitMessage() : "")
-            .replace("[CURRENT_REVISION]", buildChanges.getCurrentRevision().getCommitId())
-            .replace("[CURRENT_AUTHOR]", buildChanges.getCurrentRevision().getCommitterName() != null ? buildChanges.getCurrentRevision().getCommitterName() : "")
-            .replace("[CURRENT_EMAIL]", buildChanges.getCurrentRevision().getCommitterEmail() != null ? buildChanges.getCurrentRevision().getCommitterEmail() : "")
-            .replace("[CURRENT_DATE]", buildChanges.getCurrentRevision().getCommitDate() != null ? buildChanges.getCurrentRevision().getCommitDate() : "")
-            .replace("[CURRENT_MESSAGE]", buildChanges.getCurrentRevision().getCommitMessage() != null ? buildChanges.getCurrentRevision().getCommitMessage() : "")
-            .replace("[DIFF]", buildChanges.getEscapedDiff());
-        return htmlDiff;
+        return writer.toString();
+    }
+
+    /**
+     * Writes the html page of the changes in a single pass, see {@link HtmlDiffTemplate}.
+     *
+     * @param buildChanges changes of the page
+     * @param buildName name of the build, part of the page title
+     * @param writer receives the page, it is flushed but not closed
+     */
+    public static void writeHtmlDiff(LastChanges buildChanges, String buildName, Writer writer) throws IOException {
+        HtmlDiffTemplate.getInstance().write(buildChanges, buildName, writer);
     }
 
     /**
@@ -54,39 +57,76 @@ public class LastChangesUtil implements Serializable {
      * @return <code>true</code> If diff is bigger than DIFF_COMPRESS_THRESHOLD
      */
     public static boolean shouldCompressDiff(String diff) {
-        return diff != null && diff.length() > 0 && ((diff.getBytes(UTF_8).length / 1024) > DIFF_COMPRESS_THRESHOLD);
+        if (diff == null || diff.isEmpty()) {
+            return false;
+        }
+        long thresholdBytes = DIFF_COMPRESS_THRESHOLD_BYTES;
+        //an UTF-8 char takes from one to three bytes (surrogate pairs take four bytes for two chars)
+        if (diff.length() >= thresholdBytes) {
+            return true;
+        }
+        if (diff.length() * 3L < thresholdBytes) {
+            return false;
+        }
+        return utf8Length(diff, thresholdBytes) >= thresholdBytes;
+    }
+
+    /**
+     * Counts UTF-8 bytes of the text without encoding it.
+     *
+     * @param text the text
+     * @param limit counting stops once limit is reached
+     * @return number of UTF-8 bytes of text, at most limit
+     */
+    private static long utf8Length(CharSequence text, long limit) {
+        long length = 0;
+        for (int i = 0; i < text.length() && length < limit; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
     }
 
+    /**
+     * @param uncompressedDiff diff to compress with the default codec (see {@link DiffCodecs})
+     * @return the compressed diff, the plain UTF-8 diff if it cannot be compressed
+     */
     public static byte[] compress(String uncompressedDiff) {
-        GZIPOutputStream gzip = null;
-        try (ByteArrayOutputStream baos =  new ByteArrayOutputStream()) {
-            LOG.log(Level.INFO, "Compressing diff...");
-            gzip = new GZIPOutputStream(baos);
-            gzip.write(uncompressedDiff.getBytes(UTF_8));
-            gzip.flush();
-            gzip.close();
-            LOG.log(Level.INFO, "Diff compressed.");
-            return baos.toByteArray();
+        LOG.log(Level.INFO, "Compressing diff...");
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        //encodes the diff while compressing so the whole diff is never copied to a byte array
+        try (Writer writer = new OutputStreamWriter(DiffCodecs.compress(baos), UTF_8)) {
+            writer.write(uncompressedDiff);
         } catch (Exception e) {
             LOG.log(Level.WARNING, "Could not compress diff.", e);
             return uncompressedDiff.getBytes(UTF_8);
-        } 
+        }
+        LOG.log(Level.INFO, "Diff compressed.");
+        return baos.toByteArray();
     }
 
+    /**
+     * @param compressedDiff diff compressed with any codec
+     * @return the uncompressed diff, byte for byte (line endings are kept)
+     */
     public static String decompress(byte[] compressedDiff) {
         if (compressedDiff == null || compressedDiff.length == 0) {
             return "";
         }
         LOG.log(Level.INFO, "Decompressing diff...");
-        StringBuilder outStr = new StringBuilder();
-        try (final GZIPInputStream gzipInput = new GZIPInputStream(new ByteArrayInputStream(compressedDiff))) {
-            BufferedReader bf = new BufferedReader(new InputStreamReader(gzipInput, "UTF-8"));
-            String line;
-            while ((line = bf.readLine()) != null) {
-                outStr.append(line+"\n");
-            }
+        try (InputStream in = DiffCodecs.decompress(new ByteArrayInputStream(compressedDiff))) {
+            String diff = IOUtils.toString(in, UTF_8);
             LOG.log(Level.INFO, "Diff decompressed.");
-            return outStr.toString();
+            return diff;
         } catch (Exception e) {
             LOG.log(Level.WARNING, "Could not decompress diff.", e);
             return "";
@@ -94,4 +134,78 @@ public class LastChangesUtil implements Serializable {
 
     }
 
+    /**
+     * Writes the diff compressed with the default codec to the given file, an already compressed diff is written as
+     * is (the file name does not tell its codec, which is recorded in the diff).
+     *
+     * @param file target file
+     * @param diff uncompressed diff, used when compressedDiff is <code>null</code>
+     * @param compressedDiff compressed diff
+     */
+    public static void writeDiff(File file, String diff, byte[] compressedDiff) throws IOException {
+        Files.createDirectories(file.getParentFile().toPath());
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            if (compressedDiff != null) {
+                out.write(compressedDiff);
+            } else {
+                try (Writer writer = new OutputStreamWriter(DiffCodecs.compress(out), UTF_8)) {
+                    writer.write(diff != null ? diff : "");
+                }
+            }
+        }
+    }
+
+    /**
+     * @param compressedDiff compressed diff file
+     * @return the uncompressed diff or an empty String if the file cannot be read
+     */
+    public static String decompress(File compressedDiff) {
+        try (InputStream in = DiffCodecs.decompress(Files.newInputStream(compressedDiff.toPath()))) {
+            return IOUtils.toString(in, UTF_8);
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Could not read diff file %s.".formatted(compressedDiff), e);
+            return "";
+        }
+    }
+
+    /**
+     * Computes the size of a diff without decompressing it, the size of a compressed diff is read from its trailer
+     * (modulo 4 GB for gzip).
+     *
+     * @param diffFile compressed diff file, has precedence over the other sources
+     * @param diff uncompressed diff
+     * @param compressedDiff compressed diff
+     * @return size in bytes of the uncompressed diff, 0 when there is no diff or it cannot be read
+     */
+    public static long diffSize(File diffFile, String diff, byte[] compressedDiff) {
+        if (diffFile != null) {
+            try {
+                return Math.max(0, DiffCodecs.uncompressedSize(diffFile));
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Could not read size of diff file %s.".formatted(diffFile), e);
+                return 0;
+            }
+        }
+        if (compressedDiff != null) {
+            return Math.max(0, DiffCodecs.uncompressedSize(compressedDiff));
+        }
+        return diff != null ? utf8Length(diff, Long.MAX_VALUE) : 0;
+    }
+
+    /**
+     * @param diffFile compressed diff file, has precedence over the other sources
+     * @param diff uncompressed diff
+     * @param compressedDiff compressed diff
+     * @return stream of the uncompressed diff
+     */
+    public static InputStream openDiff(File diffFile, String diff, byte[] compressedDiff) throws IOException {
+        if (diffFile != null) {
+            return DiffCodecs.decompress(Files.newInputStream(diffFile.toPath()));
+        }
+        if (compressedDiff != null) {
+            return DiffCodecs.decompress(new ByteArrayInputStream(compressedDiff));
+        }
+        return new ByteArrayInputStream(diff != null ? diff.getBytes(UTF_8) : new byte[0]);
+    }
+
 }
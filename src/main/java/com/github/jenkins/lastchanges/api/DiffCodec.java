@@ -0,0 +1,39 @@
+package com.github.jenkins.lastchanges.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Compression of diffs (kept in memory, sent by nodes and stored in builds). Compressed diffs record the id of their
+ * codec so they are always read back with the codec which wrote them, whatever the codec configured afterwards.
+ *
+ * Codecs are registered in {@link com.github.jenkins.lastchanges.DiffCodecs}.
+ */
+public interface DiffCodec {
+
+    /**
+     * @return name of the codec in the configuration
+     */
+    String getName();
+
+    /**
+     * @return identifies the codec in the compressed diffs, from 1 to 127 (0 is gzip which diffs are recognized by
+     *         their own header)
+     */
+    int getId();
+
+    /**
+     * @param out receives the compressed diff, it is closed with the returned stream
+     * @param level compression level, zero (or less) for the default level of the codec, levels over the
+     *              maximum of the codec use its maximum
+     * @return stream compressing what is written to it
+     */
+    OutputStream compress(OutputStream out, int level) throws IOException;
+
+    /**
+     * @param in diff compressed by this codec, the stream must not read past the end of the compressed data
+     * @return stream of the uncompressed diff
+     */
+    InputStream decompress(InputStream in) throws IOException;
+}
@@ -0,0 +1,249 @@
+package com.github.jenkins.lastchanges.impl;
+
+import com.github.jenkins.lastchanges.CompressingDiffOutputStream;
+import com.github.jenkins.lastchanges.DiffCodecs;
+import com.github.jenkins.lastchanges.model.LastChangesWireFormat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Content addressed cache of diffs kept in a local directory. Diffs are stored in the form they were produced (plain
+ * or compressed, the file extension predates codecs, see {@link DiffCodecs}) along with their file index, so a hit
+ * returns the same diff as a miss. The least recently used ones are evicted when the cache exceeds its maximum size.
+ *
+ * The cached diffs of a directory are shared by all the caches of the directory, hits and misses are counted by each
+ * cache (e.g. by build).
+ *
+ * The key of a diff must identify its content, e.g. the two (content addressed) git trees being compared.
+ */
+public class DiffCache {
+
+    private static final Logger LOG = Logger.getLogger(DiffCache.class.getName());
+
+    private static final String DIFF_EXTENSION = ".diff.gz";
+    private static final String FILES_EXTENSION = ".files";
+
+    private static final Map<File, Store> STORES = new ConcurrentHashMap<>();
+
+    private final Store store;
+    private final File dir;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private DiffCache(Store store) {
+        this.store = store;
+        this.dir = store.dir;
+    }
+
+    /**
+     * @param dir cache directory
+     * @param maxSize maximum size in bytes of the cached diffs
+     * @return a cache of the directory, its diffs are shared by all builds using the same directory but its hits and
+     *         misses are its own
+     */
+    public static DiffCache of(File dir, long maxSize) {
+        Store store = STORES.computeIfAbsent(dir.getAbsoluteFile(), Store::new);
+        store.maxSize = maxSize;
+        return new DiffCache(store);
+    }
+
+    /**
+     * @param parts values identifying the diff
+     * @return cache key of the diff
+     */
+    public static String key(String... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : parts) {
+                digest.update(String.valueOf(part).getBytes(UTF_8));
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available.", e);
+        }
+    }
+
+    /**
+     * @param key cache key of the diff
+     * @return the cached diff, in the form it was cached (compressed with the codec it was cached with when it was
+     *         compressed), or <code>null</code> when the diff is not in cache
+     */
+    public CompressingDiffOutputStream get(String key) {
+        File file = diffFile(key);
+        File filesFile = filesFile(key);
+        //diffs cached by older plugin versions have no file index, they are cached again
+        if (file.isFile() && filesFile.isFile()) {
+            try (InputStream in = Files.newInputStream(filesFile.toPath())) {
+                LastChangesWireFormat.FileIndex index = LastChangesWireFormat.readFiles(in);
+                byte[] cachedDiff = Files.readAllBytes(file.toPath());
+                CompressingDiffOutputStream diff = CompressingDiffOutputStream.of(cachedDiff, DiffCodecs.isCompressed(cachedDiff), index.diffSize(), index.files());
+                file.setLastModified(System.currentTimeMillis());
+                hits.incrementAndGet();
+                return diff;
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Could not read cached diff %s, it will be discarded.".formatted(file), e);
+                delete(filesFile.toPath());
+                if (delete(file.toPath())) {
+                    store.size.set(-1);
+                }
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * @param key cache key of the diff
+     * @param diff the diff, must be closed
+     */
+    public void put(String key, CompressingDiffOutputStream diff) {
+        File file = diffFile(key);
+        try {
+            //stored as produced, plain diffs are under the compression threshold
+            byte[] cachedDiff = diff.toByteArray();
+            ByteArrayOutputStream files = new ByteArrayOutputStream();
+            LastChangesWireFormat.writeFiles(diff.size(), diff.getFiles(), files);
+            Files.createDirectories(file.getParentFile().toPath());
+            //the index is written first, a diff file is only read along with its index
+            write(filesFile(key), files.toByteArray());
+            long replacedLength = file.length();
+            write(file, cachedDiff);
+            if (currentSize() - replacedLength + cachedDiff.length > store.maxSize) {
+                evict();
+            } else {
+                store.size.addAndGet(cachedDiff.length - replacedLength);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            LOG.log(Level.WARNING, "Could not cache diff in %s.".formatted(file), e);
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return size in bytes of the cached diffs
+     */
+    public long getSize() {
+        return currentSize();
+    }
+
+    private File diffFile(String key) {
+        return new File(new File(dir, key.substring(0, 2)), key + DIFF_EXTENSION);
+    }
+
+    private File filesFile(String key) {
+        return new File(new File(dir, key.substring(0, 2)), key + FILES_EXTENSION);
+    }
+
+    private static void write(File file, byte[] content) throws IOException {
+        Path tmp = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+        try {
+            Files.write(tmp, content);
+            Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private long currentSize() {
+        long currentSize = store.size.get();
+        if (currentSize < 0) {
+            synchronized (store) {
+                currentSize = store.size.get();
+                if (currentSize < 0) {
+                    currentSize = cachedFiles().stream().mapToLong(file -> file.toFile().length()).sum();
+                    store.size.set(currentSize);
+                }
+            }
+        }
+        return currentSize;
+    }
+
+    /**
+     * Removes least recently used diffs until the cache is 10% under its maximum size.
+     */
+    private void evict() {
+        synchronized (store) {
+            List<Path> files = cachedFiles();
+            files.sort(Comparator.comparingLong(file -> file.toFile().lastModified()));
+            long currentSize = files.stream().mapToLong(file -> file.toFile().length()).sum();
+            long maxSize = store.maxSize;
+            long targetSize = maxSize - maxSize / 10;
+            for (Path file : files) {
+                if (currentSize <= targetSize) {
+                    break;
+                }
+                long length = file.toFile().length();
+                if (delete(file)) {
+                    currentSize -= length;
+                    String name = file.getFileName().toString();
+                    delete(file.resolveSibling(name.substring(0, name.length() - DIFF_EXTENSION.length()) + FILES_EXTENSION));
+                }
+            }
+            store.size.set(currentSize);
+        }
+    }
+
+    private List<Path> cachedFiles() {
+        if (!dir.isDirectory()) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.walk(dir.toPath(), 2)) {
+            return new ArrayList<>(files.filter(file -> file.getFileName().toString().endsWith(DIFF_EXTENSION)).toList());
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Could not list cached diffs of %s.".formatted(dir), e);
+            return new ArrayList<>();
+        }
+    }
+
+    private static boolean delete(Path file) {
+        try {
+            return Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "Could not delete cached diff " + file, e);
+            return false;
+        }
+    }
+
+    /**
+     * Cached diffs of a directory and their size, shared by all the caches of the directory.
+     */
+    private static final class Store {
+
+        private final File dir;
+        private volatile long maxSize;
+        private final AtomicLong size = new AtomicLong(-1);
+
+        Store(File dir) {
+            this.dir = dir;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.github.jenkins.lastchanges.impl;
+
+import com.github.jenkins.lastchanges.model.DiffOptions;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.github.jenkins.lastchanges.impl.GitLastChanges.repository;
+
+/**
+ * Holds the git resources used while publishing last changes: one repository handle, one {@link ObjectReader}
+ * and one {@link RevWalk}. Every {@link GitLastChanges} operation executed through the same session reuses
+ * the already parsed commits and trees as well as the pack windows of the reader.
+ *
+ * The session owns the repository, closing the session closes the repository.
+ */
+public class GitChangesSession implements AutoCloseable {
+
+    private final Repository repository;
+    private final ObjectReader reader;
+    private final RevWalk revWalk;
+    private DiffCache diffCache;
+    private DiffOptions diffOptions = new DiffOptions();
+
+    /**
+     * Maximum number of tree to commit entries kept by a session
+     */
+    static final int TREE_INDEX_SIZE = 10_000;
+
+    //tree to (most recent) commit, filled by treeIndexWalk which is resumed on each lookup
+    private final Map<ObjectId, ObjectId> treeIndex = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ObjectId, ObjectId> eldest) {
+            if (size() > TREE_INDEX_SIZE) {
+                treeIndexEvicted = true;
+                return true;
+            }
+            return false;
+        }
+    };
+    private RevWalk treeIndexWalk;
+    private boolean treeIndexEvicted;//a tree walked by treeIndexWalk may be missing from the index
+    private long treeIndexWalkedCommits;
+
+    public GitChangesSession(Repository repository) {
+        this.repository = repository;
+        this.reader = repository.newObjectReader();
+        this.revWalk = new RevWalk(reader);
+    }
+
+    /**
+     * @param path local git repository path
+     * @return a session on the git repository located at path
+     */
+    public static GitChangesSession open(String path) {
+        return new GitChangesSession(repository(path));
+    }
+
+    public Repository getRepository() {
+        return repository;
+    }
+
+    public ObjectReader getReader() {
+        return reader;
+    }
+
+    /**
+     * @return the session walk, cleared from previous traversals (parsed objects are kept)
+     */
+    public RevWalk walk() {
+        revWalk.reset();
+        revWalk.sort(RevSort.NONE);
+        revWalk.setRevFilter(RevFilter.ALL);
+        revWalk.setTreeFilter(TreeFilter.ALL);
+        return revWalk;
+    }
+
+    /**
+     * @return cache of diffs between trees, <code>null</code> when diffs are not cached
+     */
+    public DiffCache getDiffCache() {
+        return diffCache;
+    }
+
+    public GitChangesSession setDiffCache(DiffCache diffCache) {
+        this.diffCache = diffCache;
+        return this;
+    }
+
+    /**
+     * @return options (e.g. size limits) of the diffs computed through the session
+     */
+    public DiffOptions getDiffOptions() {
+        return diffOptions;
+    }
+
+    /**
+     * @param diffOptions options of the diffs, <code>null</code> means default options
+     */
+    public GitChangesSession setDiffOptions(DiffOptions diffOptions) {
+        this.diffOptions = diffOptions != null ? diffOptions : new DiffOptions();
+        return this;
+    }
+
+    /**
+     * Finds the most recent commit (reachable from HEAD) having the given tree. Commits are indexed by tree while
+     * history is walked so each commit is visited at most once per session (unless its entry was evicted).
+     *
+     * @param tree tree id
+     * @return commit having the tree or <code>null</code> if no commit reachable from HEAD has the tree
+     */
+    public RevCommit commitOfTree(ObjectId tree) throws IOException {
+        ObjectId commitId = treeIndex.get(tree);
+        if (commitId == null) {
+            commitId = walkUntilTree(tree, false);
+        }
+        if (commitId == null && treeIndexEvicted) {
+            //entry may have been evicted after being walked, restart from HEAD
+            commitId = walkUntilTree(tree, true);
+        }
+        return commitId != null ? revWalk.parseCommit(commitId) : null;
+    }
+
+    /**
+     * @return number of commits walked to index their tree, each commit is walked once per session unless entries of
+     *         the index are evicted
+     */
+    public long getTreeIndexWalkedCommits() {
+        return treeIndexWalkedCommits;
+    }
+
+    private ObjectId walkUntilTree(ObjectId tree, boolean restart) throws IOException {
+        if (treeIndexWalk == null || restart) {
+            if (treeIndexWalk != null) {
+                treeIndexWalk.close();
+            }
+            ObjectId head = repository.resolve(Constants.HEAD);
+            if (head == null) {
+                return null;
+            }
+            treeIndexWalk = new RevWalk(reader);
+            treeIndexWalk.sort(RevSort.COMMIT_TIME_DESC);
+            treeIndexWalk.markStart(treeIndexWalk.parseCommit(head));
+            treeIndexEvicted = false;
+        }
+        RevCommit commit;
+        while ((commit = treeIndexWalk.next()) != null) {
+            treeIndexWalkedCommits++;
+            ObjectId commitTree = commit.getTree().getId();
+            treeIndex.putIfAbsent(commitTree, commit.getId());
+            if (commitTree.equals(tree)) {
+                return treeIndex.get(tree);
+            }
+        }
+        return null;
+    }
+
+    public ObjectId resolve(String revision) throws IOException {
+        return repository.resolve(revision);
+    }
+
+    public String getLocation() {
+        return repository.getDirectory().getAbsolutePath();
+    }
+
+    @Override
+    public void close() {
+        if (treeIndexWalk != null) {
+            treeIndexWalk.close();
+        }
+        revWalk.close();
+        reader.close();
+        repository.close();
+    }
+}
@@ -0,0 +1,180 @@
+package com.github.jenkins.lastchanges.impl;
+
+import com.github.jenkins.lastchanges.CompressingDiffOutputStream;
+import com.github.jenkins.lastchanges.model.CommitChanges;
+import com.github.jenkins.lastchanges.model.CommitInfo;
+import com.github.jenkins.lastchanges.model.DiffOptions;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Computes the changes of each commit (compared to its first parent) using a bounded pool of workers.
+ *
+ * Each worker thread reads the repository through its own {@link ObjectReader} and the resulting list
+ * keeps the order of the given commits.
+ */
+public class GitCommitChangesEngine {
+
+    private static final Logger LOG = Logger.getLogger(GitCommitChangesEngine.class.getName());
+
+    public static final int DEFAULT_WORKERS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+
+    private final Repository repository;
+
+    private final int workers;
+
+    private final DiffCache diffCache;
+
+    private Set<String> skippedCommits = Collections.emptySet();
+
+    private DiffOptions diffOptions;
+
+    /**
+     * @param repository git repository of the commits
+     * @param workers maximum number of commits diffed concurrently, <code>null</code> or less than one uses {@link #DEFAULT_WORKERS}
+     */
+    public GitCommitChangesEngine(Repository repository, Integer workers) {
+        this(repository, workers, null);
+    }
+
+    /**
+     * @param repository git repository of the commits
+     * @param workers maximum number of commits diffed concurrently, <code>null</code> or less than one uses {@link #DEFAULT_WORKERS}
+     * @param diffCache cache of commit diffs, <code>null</code> disables caching
+     */
+    public GitCommitChangesEngine(Repository repository, Integer workers, DiffCache diffCache) {
+        this.repository = repository;
+        this.workers = workers == null || workers < 1 ? DEFAULT_WORKERS : workers;
+        this.diffCache = diffCache;
+    }
+
+    /**
+     * @param skippedCommits ids of the commits which changes are not computed (e.g. already published by a previous
+     *                       build), their {@link CommitChanges} hold no changes
+     */
+    public GitCommitChangesEngine setSkippedCommits(Set<String> skippedCommits) {
+        this.skippedCommits = skippedCommits != null ? skippedCommits : Collections.emptySet();
+        return this;
+    }
+
+    /**
+     * @param diffOptions options (e.g. size limits) of the commit diffs, <code>null</code> means default options
+     */
+    public GitCommitChangesEngine setDiffOptions(DiffOptions diffOptions) {
+        this.diffOptions = diffOptions;
+        return this;
+    }
+
+    /**
+     * @param commits commits to diff
+     * @return the changes of each commit in the same order as <code>commits</code>
+     */
+    public List<CommitChanges> changesOf(List<CommitInfo> commits) {
+        if (commits == null || commits.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int poolSize = Math.min(workers, commits.size());
+        if (poolSize == 1) {
+            List<CommitChanges> commitChanges = new ArrayList<>(commits.size());
+            try (ObjectReader reader = repository.newObjectReader()) {
+                for (CommitInfo commitInfo : commits) {
+                    try {
+                        commitChanges.add(changesOf(reader, commitInfo));
+                    } catch (Exception e) {
+                        LOG.log(Level.WARNING, "Could not get changes of commit %s.".formatted(commitInfo.getCommitId()), e);
+                        commitChanges.add(new CommitChanges(commitInfo, ""));
+                    }
+                }
+            }
+            return commitChanges;
+        }
+
+        final List<ObjectReader> readers = Collections.synchronizedList(new ArrayList<>());
+        final ThreadLocal<ObjectReader> threadReader = ThreadLocal.withInitial(() -> {
+            ObjectReader reader = repository.newObjectReader();
+            readers.add(reader);
+            return reader;
+        });
+        final String poolName = "last-changes-diff-" + POOL_COUNTER.incrementAndGet() + "-";
+        final AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, poolName + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<CommitChanges>> futures = new ArrayList<>(commits.size());
+            for (final CommitInfo commitInfo : commits) {
+                futures.add(executor.submit(() -> changesOf(threadReader.get(), commitInfo)));
+            }
+            List<CommitChanges> commitChanges = new ArrayList<>(commits.size());
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    commitChanges.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    LOG.log(Level.WARNING, "Could not get changes of commit %s.".formatted(commits.get(i).getCommitId()), e.getCause());
+                    commitChanges.add(new CommitChanges(commits.get(i), ""));
+                }
+            }
+            return commitChanges;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while getting commit changes.", e);
+        } finally {
+            executor.shutdownNow();
+            synchronized (readers) {
+                for (ObjectReader reader : readers) {
+                    reader.close();
+                }
+            }
+        }
+    }
+
+    private CommitChanges changesOf(ObjectReader reader, CommitInfo commitInfo) throws IOException {
+        if (skippedCommits.contains(commitInfo.getCommitId())) {
+            return new CommitChanges(commitInfo, null);
+        }
+        ObjectId currentTree;
+        ObjectId previousTree = null;
+        try (RevWalk revWalk = new RevWalk(reader)) {
+            RevCommit commit = revWalk.parseCommit(ObjectId.fromString(commitInfo.getCommitId()));
+            currentTree = commit.getTree().getId();
+            if (commit.getParentCount() > 0) {
+                previousTree = revWalk.parseCommit(commit.getParent(0)).getTree().getId();
+            }
+        }
+        String cacheKey = diffCache != null ? GitLastChanges.diffCacheKey(repository, previousTree, currentTree, diffOptions) : null;
+        if (cacheKey != null) {
+            CompressingDiffOutputStream cachedDiff = diffCache.get(cacheKey);
+            if (cachedDiff != null) {
+                return CommitChanges.of(commitInfo, cachedDiff);
+            }
+        }
+        CompressingDiffOutputStream diffStream = new CompressingDiffOutputStream(diffOptions);
+        try (diffStream) {
+            GitLastChanges.getInstance().diffOf(repository, reader, currentTree, previousTree, diffStream, diffOptions);
+        }
+        if (cacheKey != null) {
+            diffCache.put(cacheKey, diffStream);
+        }
+        return CommitChanges.of(commitInfo, diffStream);
+    }
+}
@@ -3,30 +3,38 @@
  */
 package com.github.jenkins.lastchanges.impl;
 
+import com.github.jenkins.lastchanges.CompressingDiffOutputStream;
+import com.github.jenkins.lastchanges.DiffLimitingOutputStream;
 import com.github.jenkins.lastchanges.api.VCSChanges;
 import com.github.jenkins.lastchanges.exception.GitDiffException;
 import com.github.jenkins.lastchanges.exception.GitTreeNotFoundException;
 import com.github.jenkins.lastchanges.exception.GitTreeParseException;
 import com.github.jenkins.lastchanges.exception.RepositoryNotFoundException;
 import com.github.jenkins.lastchanges.model.CommitInfo;
+import com.github.jenkins.lastchanges.model.DiffOptions;
 import com.github.jenkins.lastchanges.model.LastChanges;
-import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.LogCommand;
+import org.eclipse.jgit.diff.DiffConfig;
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RenameDetector;
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.internal.storage.file.FileRepository;
 import org.eclipse.jgit.lib.*;
 import org.eclipse.jgit.revwalk.RevCommit;
-import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevObject;
 import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.AbstractTreeIterator;
 import org.eclipse.jgit.treewalk.CanonicalTreeParser;
-import static java.nio.charset.StandardCharsets.UTF_8;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.io.OutputStream;
 import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -35,6 +43,11 @@ import java.util.logging.Logger;
 public class GitLastChanges implements VCSChanges<Repository, ObjectId> {
 
 
+    /**
+     * Default size from which {@link DiffFormatter} formats a file as binary
+     */
+    private static final int BINARY_FILE_THRESHOLD = 50 * 1024 * 1024;
+
     private static GitLastChanges instance;
 
 
@@ -83,43 +96,55 @@ public class GitLastChanges implements VCSChanges<Repository, ObjectId> {
     /**
      * Creates last changes from repository last two revisions
      *
-     * @param repository git repository to get last changes
+     * @param repository git repository to get last changes, it is closed after the changes are created
      * @return LastChanges commit info and git diff
      */
     @Override
     public LastChanges changesOf(Repository repository) {
-        Git git = new Git(repository);
-        try {
-            String repositoryLocation = repository.getDirectory().getAbsolutePath();
-            ObjectId head = resolveCurrentRevision(repository);
-            ObjectId previousHead = null;
-            try {
-                previousHead = repository.resolve("HEAD~^{tree}");
-                if (previousHead == null) {
-                    throw new GitTreeNotFoundException("Could not find previous head of repository located at %s. Its your first commit?".formatted(repositoryLocation));
-                }
-            } catch (IOException e) {
-                throw new GitTreeNotFoundException("Could not resolve previous head of repository located at " + repositoryLocation, e);
-            }
+        try (GitChangesSession session = new GitChangesSession(repository)) {
+            return changesOf(session);
+        }
+    }
 
-            return changesOf(repository, head, previousHead);
-        } finally {
-            if (git != null) {
-                git.close();
-            }
-            if (repository != null) {
-                repository.close();
+    /**
+     * Creates last changes from repository last two revisions
+     *
+     * @param session git session to get last changes
+     * @return LastChanges commit info and git diff
+     */
+    public LastChanges changesOf(GitChangesSession session) {
+        String repositoryLocation = session.getLocation();
+        ObjectId head = resolveCurrentRevision(session);
+        ObjectId previousHead = null;
+        try {
+            //commits (instead of their trees) are used so commit info is resolved without walking history
+            previousHead = session.resolve("HEAD~");
+            if (previousHead == null) {
+                throw new GitTreeNotFoundException("Could not find previous head of repository located at %s. Its your first commit?".formatted(repositoryLocation));
             }
+        } catch (IOException e) {
+            throw new GitTreeNotFoundException("Could not resolve previous head of repository located at " + repositoryLocation, e);
         }
 
+        return changesOf(session, head, previousHead);
     }
 
     public ObjectId resolveCurrentRevision(Repository repository) {
-        String repositoryLocation = repository.getDirectory().getAbsolutePath();
+        repository.incrementOpen();
+        try (GitChangesSession session = new GitChangesSession(repository)) {
+            return resolveCurrentRevision(session);
+        }
+    }
+
+    /**
+     * @param session git session
+     * @return HEAD commit
+     */
+    public ObjectId resolveCurrentRevision(GitChangesSession session) {
         try {
-            return repository.resolve("HEAD^{tree}");
+            return session.resolve(Constants.HEAD);
         } catch (IOException e) {
-            throw new GitTreeNotFoundException("Could not resolve head of repository located at " + repositoryLocation, e);
+            throw new GitTreeNotFoundException("Could not resolve head of repository located at " + session.getLocation(), e);
         }
 
     }
@@ -127,177 +152,429 @@ public class GitLastChanges implements VCSChanges<Repository, ObjectId> {
     /**
      * Creates last changes by "diffing" two revisions
      *
-     * @param repository git repository to get last changes
+     * @param repository git repository to get last changes, it is closed after the changes are created
      * @return LastChanges commit info and git diff between revisions
      */
     @Override
     public LastChanges changesOf(Repository repository, ObjectId currentRevision, ObjectId previousRevision) {
-        Git git = new Git(repository);
+        try (GitChangesSession session = new GitChangesSession(repository)) {
+            return changesOf(session, currentRevision, previousRevision);
+        }
+    }
+
+    /**
+     * Creates last changes by "diffing" two revisions
+     *
+     * @param session git session to get last changes
+     * @return LastChanges commit info and git diff between revisions
+     */
+    public LastChanges changesOf(GitChangesSession session, ObjectId currentRevision, ObjectId previousRevision) {
+        String repositoryLocation = session.getLocation();
+        ObjectReader reader = session.getReader();
+
+        CommitInfo lastCommitInfo = commitInfo(session, currentRevision);
+        CommitInfo oldCommitInfo = commitInfo(session, previousRevision);
+
+        ObjectId oldTree;
         try {
-            ByteArrayOutputStream diffStream = new ByteArrayOutputStream();
-            CommitInfo lastCommitInfo;
-            CommitInfo oldCommitInfo;
-            String repositoryLocation = repository.getDirectory().getAbsolutePath();
-            DiffFormatter formatter = new DiffFormatter(diffStream);
-            formatter.setRepository(repository);
-            ObjectReader reader = repository.newObjectReader();
-
-            lastCommitInfo = commitInfo(repository, currentRevision);
-            oldCommitInfo = commitInfo(repository, previousRevision);
-
-            // Create the tree iterator for each commit
-            CanonicalTreeParser oldTreeIter = new CanonicalTreeParser();
+            oldTree = treeId(session.walk(), previousRevision);
+        } catch (Exception e) {
+            throw new GitTreeParseException("Could not parse previous commit tree.", e);
+        }
+        ObjectId newTree;
+        try {
+            newTree = treeId(session.walk(), currentRevision);
+        } catch (Exception e) {
+            throw new GitTreeParseException("Could not parse current commit tree.", e);
+        }
+
+        DiffCache diffCache = session.getDiffCache();
+        DiffOptions diffOptions = session.getDiffOptions();
+        String cacheKey = diffCache != null ? diffCacheKey(session.getRepository(), oldTree, newTree, diffOptions) : null;
+        CompressingDiffOutputStream diffStream = cacheKey != null ? diffCache.get(cacheKey) : null;
+        if (diffStream == null) {
+            diffStream = new CompressingDiffOutputStream(diffOptions);
+            OutputStream out = diffOptions.hasLimits() ? new DiffLimitingOutputStream(diffStream, diffOptions) : diffStream;
+            try (DiffFormatter formatter = new DiffFormatter(out)) {
+                formatter.setReader(reader, session.getRepository().getConfig());
+                formatter.setPathFilter(PathPatternsTreeFilter.of(diffOptions));
+                detectRenames(formatter, diffOptions);
+                formatDiff(formatter, reader, new CanonicalTreeParser(null, reader, oldTree), new CanonicalTreeParser(null, reader, newTree), out);
+                out.close();
+            } catch (Exception e) {
+                throw new GitDiffException("Could not get last changes from repository located at " + repositoryLocation, e);
+            }
+            if (cacheKey != null) {
+                diffCache.put(cacheKey, diffStream);
+            }
+        }
+
+        return new LastChanges(lastCommitInfo, oldCommitInfo, diffStream);
+    }
+
+    /**
+     * Git trees are content addressed so the diff between two trees only depends on the trees and on the diff
+     * configuration of the repository.
+     *
+     * @param repository git repository of the trees
+     * @param oldTree tree of the old revision, <code>null</code> means an empty tree
+     * @param newTree tree of the new revision
+     * @return key of the diff in {@link DiffCache}
+     */
+    public static String diffCacheKey(Repository repository, ObjectId oldTree, ObjectId newTree) {
+        return diffCacheKey(repository, oldTree, newTree, null);
+    }
+
+    /**
+     * @param repository git repository of the trees
+     * @param oldTree tree of the old revision, <code>null</code> means an empty tree
+     * @param newTree tree of the new revision
+     * @param options options of the diff, <code>null</code> means default options
+     * @return key of the diff in {@link DiffCache}
+     */
+    public static String diffCacheKey(Repository repository, ObjectId oldTree, ObjectId newTree, DiffOptions options) {
+        DiffConfig diffConfig = repository.getConfig().get(DiffConfig.KEY);
+        String diffOptions = "noPrefix=" + diffConfig.isNoPrefix()
+                + ",renames=" + diffConfig.getRenameDetectionType()
+                + ",renameLimit=" + diffConfig.getRenameLimit()
+                + ",algorithm=" + repository.getConfig().getString(ConfigConstants.CONFIG_DIFF_SECTION, null, ConfigConstants.CONFIG_KEY_ALGORITHM);
+        if (options != null && !options.key().isEmpty()) {
+            return DiffCache.key("git", oldTree != null ? oldTree.name() : "empty", newTree.name(), diffOptions, options.key());
+        }
+        return DiffCache.key("git", oldTree != null ? oldTree.name() : "empty", newTree.name(), diffOptions);
+    }
+
+
+    /**
+     * Creates the diff between two revisions reading objects through the given reader.
+     * As {@link ObjectReader} is not thread safe each thread must provide its own reader.
+     *
+     * @param repository git repository to get the diff
+     * @param reader object reader owned by the calling thread
+     * @param currentRevision commit or tree of the new revision
+     * @param previousRevision commit or tree of the old revision, <code>null</code> means an empty tree (root commit)
+     * @param diffStream receives the git diff between revisions
+     */
+    public void diffOf(Repository repository, ObjectReader reader, ObjectId currentRevision, ObjectId previousRevision, OutputStream diffStream) {
+        diffOf(repository, reader, currentRevision, previousRevision, diffStream, null);
+    }
+
+    /**
+     * Creates the diff between two revisions reading objects through the given reader.
+     * As {@link ObjectReader} is not thread safe each thread must provide its own reader.
+     *
+     * @param repository git repository to get the diff
+     * @param reader object reader owned by the calling thread
+     * @param currentRevision commit or tree of the new revision
+     * @param previousRevision commit or tree of the old revision, <code>null</code> means an empty tree (root commit)
+     * @param diffStream receives the git diff between revisions
+     * @param options options (e.g. size limits) of the diff, <code>null</code> means default options
+     */
+    public void diffOf(Repository repository, ObjectReader reader, ObjectId currentRevision, ObjectId previousRevision, OutputStream diffStream, DiffOptions options) {
+        try (RevWalk revWalk = new RevWalk(reader)) {
+            AbstractTreeIterator oldTreeIter;
             try {
-                RevWalk revWalk = new RevWalk(repository);
-                if (revWalk.parseAny(previousRevision) instanceof RevCommit) {
-                    RevCommit revCommit = revWalk.parseCommit(previousRevision);
-                    oldTreeIter.reset(reader, revCommit.getTree().getId());
-                } else {
-                    oldTreeIter.reset(reader, previousRevision);
-                }
+                oldTreeIter = previousRevision == null ? new EmptyTreeIterator() : treeParser(revWalk, reader, previousRevision);
             } catch (Exception e) {
                 throw new GitTreeParseException("Could not parse previous commit tree.", e);
             }
-            CanonicalTreeParser newTreeIter = new CanonicalTreeParser();
+            AbstractTreeIterator newTreeIter;
             try {
-                RevWalk revWalk = new RevWalk(repository);
-                if (revWalk.parseAny(currentRevision) instanceof RevCommit) {
-                    RevCommit revCommit = revWalk.parseCommit(currentRevision);
-                    newTreeIter.reset(reader, revCommit.getTree().getId());
-                } else {
-                    newTreeIter.reset(reader, currentRevision);
+                newTreeIter = treeParser(revWalk, reader, currentRevision);
+            } catch (Exception e) {
+                throw new GitTreeParseException("Could not parse current commit tree.", e);
+            }
+            DiffLimitingOutputStream limitedStream = options != null && options.hasLimits() ? new DiffLimitingOutputStream(diffStream, options) : null;
+            OutputStream out = limitedStream != null ? limitedStream : diffStream;
+            try (DiffFormatter formatter = new DiffFormatter(out)) {
+                formatter.setReader(reader, repository.getConfig());
+                formatter.setPathFilter(PathPatternsTreeFilter.of(options));
+                detectRenames(formatter, options);
+                formatDiff(formatter, reader, oldTreeIter, newTreeIter, out);
+                if (limitedStream != null) {
+                    limitedStream.finish();
                 }
+            } catch (Exception e) {
+                throw new GitDiffException("Could not get diff of revision %s from repository located at %s".formatted(currentRevision.name(), repository.getDirectory().getAbsolutePath()), e);
+            }
+        }
+    }
 
-            } catch (IOException e) {
-                throw new GitTreeParseException("Could not parse current commit tree.", e);
+    /**
+     * Enables rename detection of the formatter when requested by the options, otherwise the diff configuration of
+     * the repository (diff.renames) applies.
+     */
+    private static void detectRenames(DiffFormatter formatter, DiffOptions options) {
+        if (options == null || !options.isDetectRenames()) {
+            return;
+        }
+        formatter.setDetectRenames(true);
+        RenameDetector renameDetector = formatter.getRenameDetector();
+        if (options.getRenameScore() > 0) {
+            renameDetector.setRenameScore(options.getRenameScore());
+        }
+        if (options.getRenameLimit() > 0) {
+            //over the limit jgit only pairs files with the exact same content
+            renameDetector.setRenameLimit(options.getRenameLimit());
+        }
+        renameDetector.setSkipContentRenamesForBinaryFiles(true);
+    }
+
+    /**
+     * @param reader reader of the formatter
+     * @param out stream of the formatter, when it limits the diff the files exceeding the limits are summarized
+     *            from their edits (or their lines for added and deleted files) instead of being formatted
+     */
+    private void formatDiff(DiffFormatter formatter, ObjectReader reader, AbstractTreeIterator oldTreeIter, AbstractTreeIterator newTreeIter, OutputStream out) throws IOException {
+        DiffLimitingOutputStream limitedStream = out instanceof DiffLimitingOutputStream limited ? limited : null;
+        List<DiffEntry> changes = formatter.scan(oldTreeIter, newTreeIter);
+        if (formatter.isDetectRenames() && formatter.getRenameDetector().isOverRenameLimit()) {
+            Logger.getLogger(GitLastChanges.class.getName()).fine("Rename limit exceeded, only exact renames were detected.");
+        }
+        for (DiffEntry change : changes) {
+            if (limitedStream == null) {
+                formatter.format(change);
+                continue;
             }
-            try {
-                for (DiffEntry change : git.diff().setOldTree(oldTreeIter).setNewTree(newTreeIter).call()) {
+            String oldPath = change.getChangeType() == DiffEntry.ChangeType.ADD ? change.getNewPath() : change.getOldPath();
+            String newPath = change.getChangeType() == DiffEntry.ChangeType.DELETE ? change.getOldPath() : change.getNewPath();
+            String fileHeader = "diff --git " + formatter.getOldPrefix() + oldPath + " " + formatter.getNewPrefix() + newPath;
+            if (!(limitedStream.isTotalExceeded() || limitedStream.isFilesExceeded())) {
+                int lines = linesOfOversizeFile(reader, change, limitedStream);
+                if (lines < 0) {
                     formatter.format(change);
+                    continue;
                 }
-            } catch (Exception e) {
-                throw new GitDiffException("Could not get last changes from repository located at " + repositoryLocation, e);
+                formatter.flush();
+                boolean added = change.getChangeType() == DiffEntry.ChangeType.ADD;
+                limitedStream.writeFileOmitted(fileHeader, newPath, added ? lines : 0, added ? 0 : lines);
+                continue;
             }
+            formatter.flush();
+            int added = 0;
+            int removed = 0;
+            if (!limitedStream.isFilesExceeded()) {
+                //no need to format the file, its edits are enough to summarize it
+                for (Edit edit : formatter.toFileHeader(change).toEditList()) {
+                    added += edit.getLengthB();
+                    removed += edit.getLengthA();
+                }
+            }
+            limitedStream.writeOmitted(fileHeader, newPath, added, removed);
+        }
+        formatter.flush();
+    }
 
-            return new LastChanges(lastCommitInfo, oldCommitInfo, new String(diffStream.toByteArray(), UTF_8));
-        } finally {
-            if (git != null) {
-                git.close();
+    /**
+     * The diff of an added or deleted text file has a line per line of the file, so when the blob of such a file
+     * exceeds the per file limit its diff does too: its lines are counted from the blob, which is streamed, instead
+     * of loading, diffing and formatting the file. Binary files and files over {@link #BINARY_FILE_THRESHOLD}
+     * are formatted as binary by {@link DiffFormatter} and are left to it.
+     *
+     * @param reader reader of the blob
+     * @param change change of the file
+     * @param limitedStream limits of the diff
+     * @return number of lines of the added or deleted file when its diff exceeds the per file limit, otherwise
+     *         <code>-1</code> and the file has to be formatted
+     */
+    private static int linesOfOversizeFile(ObjectReader reader, DiffEntry change, DiffLimitingOutputStream limitedStream) throws IOException {
+        DiffEntry.Side side = switch (change.getChangeType()) {
+            case ADD -> DiffEntry.Side.NEW;
+            case DELETE -> DiffEntry.Side.OLD;
+            default -> null;
+        };
+        if (side == null || change.getMode(side).getObjectType() != Constants.OBJ_BLOB || !change.getId(side).isComplete()) {
+            return -1;
+        }
+        ObjectId blobId = change.getId(side).toObjectId();
+        long size = reader.getObjectSize(blobId, Constants.OBJ_BLOB);
+        if (!limitedStream.isFileExceeded(size) || size > BINARY_FILE_THRESHOLD) {
+            return -1;
+        }
+        try (ObjectStream in = reader.open(blobId, Constants.OBJ_BLOB).openStream()) {
+            byte[] buffer = new byte[RawText.getBufferSize()];
+            int read = in.readNBytes(buffer, 0, buffer.length);
+            if (RawText.isBinary(buffer, read, read == size)) {
+                return -1;
             }
-            if (repository != null) {
-                repository.close();
+            int lines = 0;
+            byte last = '\n';
+            while (read > 0) {
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] == '\n') {
+                        lines++;
+                    }
+                }
+                last = buffer[read - 1];
+                read = in.read(buffer);
             }
+            return last == '\n' ? lines : lines + 1;
         }
+    }
+
+    private CanonicalTreeParser treeParser(RevWalk revWalk, ObjectReader reader, ObjectId revision) throws IOException {
+        return new CanonicalTreeParser(null, reader, treeId(revWalk, revision));
+    }
 
+    /**
+     * @param revWalk walk used to parse the revision
+     * @param revision commit or tree
+     * @return tree of the revision
+     */
+    public static ObjectId treeId(RevWalk revWalk, ObjectId revision) throws IOException {
+        RevObject revObject = revWalk.parseAny(revision);
+        return revObject instanceof RevCommit revCommit ? revWalk.parseCommit(revCommit).getTree().getId() : revObject.getId();
     }
 
 
     @Override
     public ObjectId getLastTagRevision(Repository repository) {
-        Git git = new Git(repository);
-        List<Ref> tags = null;
-        try {
-            tags = git.tagList().call();
-
-            final RevWalk walk = new RevWalk(repository);
-            Collections.sort(tags, new Comparator<Ref>() {
-                public int compare(Ref o1, Ref o2) {
-                    java.util.Date d1 = null;
-                    java.util.Date d2 = null;
-                    try {
-                        d1 = walk.parseCommit(o1.getObjectId()).getCommitterIdent().getWhen();
-                        d2 = walk.parseCommit(o2.getObjectId()).getCommitterIdent().getWhen();
-                        return d2.compareTo(d1);
-                    } catch (Exception e) {
-                        System.out.println(e);
-                    }
-                    return 0;
-                }
-            });
-
-            if (tags != null && !tags.isEmpty()) {
-                Ref tag = tags.get(0);
-                Ref peeledRef = repository.getRefDatabase().peel(tag);
-                LogCommand log = git.log();
-                if (peeledRef.getPeeledObjectId() != null) {
-                    log.add(peeledRef.getPeeledObjectId());
-                } else {
-                    log.add(tag.getObjectId());
-                }
-                Iterable<RevCommit> logs = log.call();
-                if (logs != null) {
-                    return logs.iterator().next().getId();
-                }
-            }
+        repository.incrementOpen();
+        try (GitChangesSession session = new GitChangesSession(repository)) {
+            return getLastTagRevision(session);
+        }
+    }
 
-            return null;
+    public ObjectId getLastTagRevision(GitChangesSession session) {
+        return getLastTagRevision(session, false);
+    }
 
+    /**
+     * Finds the commit of the last tag. Each tag is peeled and its commit parsed (without body) at most once.
+     *
+     * @param session git session
+     * @param reachableOnly when <code>true</code> only tags reachable from HEAD are considered and the first tagged
+     *                      commit found following first parents of HEAD is returned, otherwise the tagged commit with
+     *                      most recent commit time is returned
+     * @return commit of the last tag or <code>null</code> if there is no (reachable) tag
+     */
+    public ObjectId getLastTagRevision(GitChangesSession session, boolean reachableOnly) {
+        try (RevWalk walk = new RevWalk(session.getReader())) {
+            walk.setRetainBody(false);
+            Set<ObjectId> taggedCommits = taggedObjects(session.getRepository());
+            if (taggedCommits.isEmpty()) {
+                return null;
+            }
+            return reachableOnly ? lastReachableTag(session, walk, taggedCommits) : newestTag(walk, taggedCommits);
         } catch (Exception e) {
-            throw new GitDiffException("Could not get last tag from repository located at " + repository.getDirectory().getAbsolutePath(), e);
+            throw new GitDiffException("Could not get last tag from repository located at " + session.getLocation(), e);
+        }
+    }
+
+    /**
+     * @return peeled targets of the repository tags (in tag name order), without duplicates
+     */
+    private static Set<ObjectId> taggedObjects(Repository repository) throws IOException {
+        RefDatabase refDatabase = repository.getRefDatabase();
+        Set<ObjectId> taggedObjects = new LinkedHashSet<>();
+        for (Ref tag : refDatabase.getRefsByPrefix(Constants.R_TAGS)) {
+            Ref peeledTag = tag.isPeeled() ? tag : refDatabase.peel(tag);
+            ObjectId target = peeledTag.getPeeledObjectId() != null ? peeledTag.getPeeledObjectId() : peeledTag.getObjectId();
+            if (target != null) {
+                taggedObjects.add(target.copy());
+            }
+        }
+        return taggedObjects;
+    }
+
+    private static ObjectId newestTag(RevWalk walk, Set<ObjectId> taggedObjects) throws IOException {
+        RevCommit newest = null;
+        for (ObjectId taggedObject : taggedObjects) {
+            RevCommit commit;
+            try {
+                commit = walk.parseCommit(taggedObject);
+            } catch (IncorrectObjectTypeException e) {
+                //tag of a tree or blob
+                continue;
+            }
+            //on equal commit time the first tag (by name) wins
+            if (newest == null || commit.getCommitTime() > newest.getCommitTime()) {
+                newest = commit;
+            }
+        }
+        return newest != null ? newest.getId() : null;
+    }
 
+    private static ObjectId lastReachableTag(GitChangesSession session, RevWalk walk, Set<ObjectId> taggedObjects) throws IOException {
+        ObjectId head = session.resolve(Constants.HEAD);
+        if (head == null) {
+            return null;
         }
+        walk.setFirstParent(true);
+        walk.markStart(walk.parseCommit(head));
+        for (RevCommit commit : walk) {
+            if (taggedObjects.contains(commit)) {
+                return commit.getId();
+            }
+        }
+        return null;
     }
 
     @Override
     public CommitInfo commitInfo(Repository repository, ObjectId commitId) {
-        RevWalk revWalk = new RevWalk(repository);
+        repository.incrementOpen();
+        try (GitChangesSession session = new GitChangesSession(repository)) {
+            return commitInfo(session, commitId);
+        }
+    }
+
+    public CommitInfo commitInfo(GitChangesSession session, ObjectId commitId) {
+        RevWalk revWalk = session.walk();
         CommitInfo commitInfo = new CommitInfo();
         PersonIdent committerIdent = null;
         RevCommit commit = null;
         try {
-            if (revWalk.parseAny(commitId) instanceof RevCommit) {
+            RevObject revObject = revWalk.parseAny(commitId);
+            if (revObject instanceof RevCommit) {
                 commit = revWalk.parseCommit(commitId);
                 committerIdent = commit.getCommitterIdent();
-            } else if (revWalk.parseAny(commitId) instanceof RevTree) {
-
-                RevCommit rootCommit = revWalk.parseCommit(repository.resolve(Constants.HEAD));
-                revWalk.sort(RevSort.COMMIT_TIME_DESC);
-                revWalk.markStart(rootCommit);
+            } else if (revObject instanceof RevTree) {
                 //resolve commit from tree
-                RevTree tree = revWalk.parseTree(commitId);
-                for (RevCommit revCommit : revWalk) {
-                    if (revCommit.getTree().getId().equals(tree.getId())) {
-                        commit = revCommit;
-                        committerIdent = commit.getCommitterIdent();
-                        break;
-                    }
-                }
-
+                commit = session.commitOfTree(revObject.getId());
+                committerIdent = commit.getCommitterIdent();
             }
 
-            Date commitDate = committerIdent.getWhen();
             commitInfo.setCommitId(commit.getName())
                     .setCommitMessage(commit.getFullMessage())
                     .setCommitterName(committerIdent.getName())
-                    .setCommitterEmail(committerIdent.getEmailAddress());
-            TimeZone tz = committerIdent.getTimeZone() != null ? committerIdent.getTimeZone() : TimeZone.getDefault();
-            commitInfo.setCommitDate(commitInfo.format(commitDate, tz) + " " + tz.getDisplayName());
+                    .setCommitterEmail(committerIdent.getEmailAddress())
+                    .setCommitTime(committerIdent.getWhenAsInstant().toEpochMilli(), committerIdent.getZoneOffset().getTotalSeconds() / 60);
         } catch (Exception e) {
             Logger.getLogger(GitLastChanges.class.getName()).warning(String.format("Could not get commit info from revision %s due to following error " + e.getMessage() + (e.getCause() != null ? " - " + e.getCause() : ""), commitId));
-        } finally {
-            revWalk.dispose();
         }
         return commitInfo;
     }
 
     @Override
     public List<CommitInfo> getCommitsBetweenRevisions(Repository gitRepository, ObjectId currentRevision, ObjectId previousRevision) {
+        gitRepository.incrementOpen();
+        try (GitChangesSession session = new GitChangesSession(gitRepository)) {
+            return getCommitsBetweenRevisions(session, currentRevision, previousRevision);
+        }
+    }
+
+    public List<CommitInfo> getCommitsBetweenRevisions(GitChangesSession session, ObjectId currentRevision, ObjectId previousRevision) {
 
         List<CommitInfo> commits = new ArrayList<>();
         try {
-            Iterable<RevCommit> revCommits = new Git(gitRepository).log().addRange(previousRevision, currentRevision).call();
+            RevWalk revWalk = session.walk();
+            TreeFilter pathFilter = PathPatternsTreeFilter.of(session.getDiffOptions());
+            if (pathFilter != TreeFilter.ALL) {
+                //only the commits changing the filtered paths
+                revWalk.setTreeFilter(AndTreeFilter.create(pathFilter, TreeFilter.ANY_DIFF));
+            }
+            revWalk.markStart(revWalk.parseCommit(currentRevision));
+            revWalk.markUninteresting(revWalk.parseCommit(previousRevision));
 
-            for (RevCommit commit : revCommits) {
+            for (RevCommit commit : revWalk) {
                 if (commit != null) {
                     PersonIdent committerIdent = commit.getCommitterIdent();
                     CommitInfo commitInfo = new CommitInfo();
-                    Date commitDate = committerIdent.getWhen();
                     commitInfo.setCommitId(commit.getName())
                             .setCommitMessage(commit.getFullMessage())
                             .setCommitterName(committerIdent.getName())
-                            .setCommitterEmail(committerIdent.getEmailAddress());
-                    TimeZone tz = committerIdent.getTimeZone() != null ? committerIdent.getTimeZone() : TimeZone.getDefault();
-                    commitInfo.setCommitDate(commitInfo.format(commitDate, tz) + " " + tz.getDisplayName());
+                            .setCommitterEmail(committerIdent.getEmailAddress())
+                            .setCommitTime(committerIdent.getWhenAsInstant().toEpochMilli(), committerIdent.getZoneOffset().getTotalSeconds() / 60);
                     commits.add(commitInfo);
                 }
             }
@@ -0,0 +1,168 @@
+package com.github.jenkins.lastchanges.impl;
+
+import com.github.jenkins.lastchanges.model.DiffOptions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Include and exclude path patterns of {@link DiffOptions} compiled once, see {@link DiffOptions} for the syntax.
+ *
+ * Besides matching files, the patterns tell which directories may contain matching files and which literal
+ * directories (the leading directories of the include patterns without wildcards) hold all the included files, so
+ * the VCS only walks those.
+ */
+public class PathPatterns {
+
+    private final List<Pattern> includes = new ArrayList<>();
+    private final List<Pattern> excludes = new ArrayList<>();
+    private final List<String> roots = new ArrayList<>();
+
+    private PathPatterns(List<String> includePatterns, List<String> excludePatterns) {
+        boolean restricted = true;
+        for (String pattern : includePatterns) {
+            String normalized = normalize(pattern);
+            if (normalized.isEmpty()) {
+                continue;
+            }
+            includes.add(compile(normalized));
+            String root = root(normalized);
+            if (root.isEmpty()) {
+                restricted = false;
+            } else if (!roots.contains(root)) {
+                roots.add(root);
+            }
+        }
+        if (!restricted || includes.isEmpty()) {
+            roots.clear();
+        }
+        for (String pattern : excludePatterns) {
+            String normalized = normalize(pattern);
+            if (!normalized.isEmpty()) {
+                excludes.add(compile(normalized));
+            }
+        }
+    }
+
+    /**
+     * @param options diff options
+     * @return the path patterns of the options
+     */
+    public static PathPatterns of(DiffOptions options) {
+        return new PathPatterns(options.getIncludes(), options.getExcludes());
+    }
+
+    /**
+     * @return <code>true</code> when all paths match
+     */
+    public boolean isAll() {
+        return includes.isEmpty() && excludes.isEmpty();
+    }
+
+    /**
+     * @param path file path relative to the repository root, separated by <code>/</code>
+     * @return <code>true</code> if the file is included and not excluded
+     */
+    public boolean matches(String path) {
+        return !matchesAny(excludes, path) && (includes.isEmpty() || matchesAny(includes, path));
+    }
+
+    /**
+     * @param dir directory path relative to the repository root, separated by <code>/</code>
+     * @return <code>false</code> when no file of the directory can match
+     */
+    public boolean mayContain(String dir) {
+        if (matchesAny(excludes, dir)) {
+            return false;
+        }
+        if (includes.isEmpty() || roots.isEmpty() || matchesAny(includes, dir)) {
+            return true;
+        }
+        for (String root : roots) {
+            if (root.equals(dir) || root.startsWith(dir + "/") || dir.startsWith(root + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the paths (relative to the repository root) holding all the included files, empty when any path may
+     *         be included
+     */
+    public List<String> roots() {
+        return Collections.unmodifiableList(roots);
+    }
+
+    /**
+     * A pattern matches a path when it matches the path itself or one of its parent directories.
+     */
+    private static boolean matchesAny(List<Pattern> patterns, String path) {
+        for (Pattern pattern : patterns) {
+            for (int end = path.indexOf('/'); end >= 0; end = path.indexOf('/', end + 1)) {
+                if (pattern.matcher(path.substring(0, end)).matches()) {
+                    return true;
+                }
+            }
+            if (pattern.matcher(path).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String normalize(String pattern) {
+        String normalized = pattern.trim().replace('\\', '/');
+        while (normalized.startsWith("/") || normalized.startsWith("./")) {
+            normalized = normalized.substring(normalized.startsWith("/") ? 1 : 2);
+        }
+        while (normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+
+    /**
+     * @return leading directories of the pattern without wildcards (the whole pattern when it has no wildcard)
+     */
+    private static String root(String pattern) {
+        int wildcard = -1;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '*' || c == '?') {
+                wildcard = i;
+                break;
+            }
+        }
+        if (wildcard < 0) {
+            return pattern;
+        }
+        int separator = pattern.lastIndexOf('/', wildcard);
+        return separator > 0 ? pattern.substring(0, separator) : "";
+    }
+
+    private static Pattern compile(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                if (i + 2 < glob.length() && glob.charAt(i + 2) == '/') {
+                    regex.append("(?:.*/)?");
+                    i += 2;
+                } else {
+                    regex.append(".*");
+                    i++;
+                }
+            } else if (c == '*') {
+                regex.append("[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.jenkins.lastchanges.impl;
+
+import com.github.jenkins.lastchanges.model.DiffOptions;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+/**
+ * Applies {@link PathPatterns} to a git tree walk. Subtrees which cannot contain matching files are not entered,
+ * so unchanged or filtered out parts of the repository are never read.
+ */
+public class PathPatternsTreeFilter extends TreeFilter {
+
+    private final PathPatterns patterns;
+
+    private PathPatternsTreeFilter(PathPatterns patterns) {
+        this.patterns = patterns;
+    }
+
+    /**
+     * @param options diff options
+     * @return filter of the paths of the options, {@link TreeFilter#ALL} when they have no path filters
+     */
+    public static TreeFilter of(DiffOptions options) {
+        if (options == null || !options.hasPathFilters()) {
+            return TreeFilter.ALL;
+        }
+        PathPatterns patterns = PathPatterns.of(options);
+        if (patterns.isAll()) {
+            return TreeFilter.ALL;
+        }
+        TreeFilter filter = new PathPatternsTreeFilter(patterns);
+        if (patterns.roots().isEmpty()) {
+            return filter;
+        }
+        //literal roots let jgit skip whole subtrees (and stop the walk) before matching the patterns
+        return AndTreeFilter.create(PathFilterGroup.createFromStrings(patterns.roots()), filter);
+    }
+
+    @Override
+    public boolean include(TreeWalk walker) {
+        String path = walker.getPathString();
+        return walker.isSubtree() ? patterns.mayContain(path) : patterns.matches(path);
+    }
+
+    @Override
+    public boolean shouldBeRecursive() {
+        return true;
+    }
+
+    @Override
+    public TreeFilter clone() {
+        //stateless
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "PATH_PATTERNS";
+    }
+}
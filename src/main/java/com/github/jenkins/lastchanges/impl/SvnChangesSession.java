@@ -0,0 +1,119 @@
+package com.github.jenkins.lastchanges.impl;
+
+import com.github.jenkins.lastchanges.model.DiffOptions;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
+import org.tmatesoft.svn.core.auth.ISVNAuthenticationProvider;
+import org.tmatesoft.svn.core.wc.DefaultSVNRepositoryPool;
+import org.tmatesoft.svn.core.wc.SVNWCUtil;
+import org.tmatesoft.svn.core.wc2.SvnGetInfo;
+import org.tmatesoft.svn.core.wc2.SvnInfo;
+import org.tmatesoft.svn.core.wc2.SvnOperationFactory;
+import org.tmatesoft.svn.core.wc2.SvnTarget;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds the svn resources used while publishing last changes: one {@link SvnOperationFactory} configured with the
+ * authentication manager (and its credentials) and one repository pool. Every {@link SvnLastChanges} operation
+ * executed through the same session reuses the authenticated repository connections instead of opening (and
+ * authenticating) a new one per operation.
+ *
+ * Closing the session disposes the operation factory and closes the pooled connections.
+ */
+public class SvnChangesSession implements AutoCloseable {
+
+    private final SvnOperationFactory operationFactory;
+    private final DefaultSVNRepositoryPool repositoryPool;
+    private DiffCache diffCache;
+    private DiffOptions diffOptions = new DiffOptions();
+    private final Map<File, SvnInfo> infos = new HashMap<>();
+
+    /**
+     * @param authManager authentication manager, when <code>null</code> the default one is used
+     * @param authProvider credentials provider, may be <code>null</code>
+     */
+    public SvnChangesSession(ISVNAuthenticationManager authManager, ISVNAuthenticationProvider authProvider) {
+        ISVNAuthenticationManager sessionAuthManager = authManager != null ? authManager : SVNWCUtil.createDefaultAuthenticationManager();
+        if (authProvider != null) {
+            sessionAuthManager.setAuthenticationProvider(authProvider);
+        }
+        operationFactory = new SvnOperationFactory();
+        operationFactory.setAuthenticationManager(sessionAuthManager);
+        //keeps connections open between operations, the pool is disposed by the session (not after each operation)
+        repositoryPool = new DefaultSVNRepositoryPool(sessionAuthManager, null);
+        operationFactory.setRepositoryPool(repositoryPool);
+    }
+
+    public SvnOperationFactory operations() {
+        return operationFactory;
+    }
+
+    /**
+     * @param workingCopy svn working copy
+     * @return repository url of the working copy, retrieved once per session
+     */
+    public String urlOf(File workingCopy) throws SVNException {
+        return infoOf(workingCopy).getUrl().toString();
+    }
+
+    /**
+     * @param workingCopy svn working copy
+     * @return path of the working copy in its repository (e.g. <code>/trunk</code>), retrieved once per session
+     */
+    public String pathOf(File workingCopy) throws SVNException {
+        SvnInfo info = infoOf(workingCopy);
+        String root = info.getRepositoryRootUrl().getPath();
+        String path = info.getUrl().getPath();
+        return path.startsWith(root) ? path.substring(root.length()) : path;
+    }
+
+    private SvnInfo infoOf(File workingCopy) throws SVNException {
+        SvnInfo info = infos.get(workingCopy);
+        if (info == null) {
+            SvnGetInfo getInfo = operationFactory.createGetInfo();
+            getInfo.setSingleTarget(SvnTarget.fromFile(workingCopy));
+            info = getInfo.run();
+            infos.put(workingCopy, info);
+        }
+        return info;
+    }
+
+    public DiffCache getDiffCache() {
+        return diffCache;
+    }
+
+    /**
+     * @param diffCache cache of diffs between revisions, <code>null</code> disables caching
+     */
+    public SvnChangesSession setDiffCache(DiffCache diffCache) {
+        this.diffCache = diffCache;
+        return this;
+    }
+
+    /**
+     * @return options (e.g. size limits) of the diffs computed through the session
+     */
+    public DiffOptions getDiffOptions() {
+        return diffOptions;
+    }
+
+    /**
+     * @param diffOptions options of the diffs, <code>null</code> means default options
+     */
+    public SvnChangesSession setDiffOptions(DiffOptions diffOptions) {
+        this.diffOptions = diffOptions != null ? diffOptions : new DiffOptions();
+        return this;
+    }
+
+    @Override
+    public void close() {
+        try {
+            operationFactory.dispose();
+        } finally {
+            repositoryPool.dispose();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.jenkins.lastchanges.impl;
+
+import com.github.jenkins.lastchanges.CompressingDiffOutputStream;
+import com.github.jenkins.lastchanges.model.CommitChanges;
+import com.github.jenkins.lastchanges.model.CommitInfo;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Computes the changes of each revision between two revisions of a svn working copy (compared to the previous
+ * revision of the range).
+ *
+ * The commits of the whole range, along with their changed paths, are read with a single log request and each
+ * revision is diffed through the connections of the same {@link SvnChangesSession}, so no extra info or log
+ * request is made per revision.
+ */
+public class SvnCommitChangesEngine {
+
+    private static final Logger LOG = Logger.getLogger(SvnCommitChangesEngine.class.getName());
+
+    private final SvnChangesSession session;
+
+    private final File repository;
+
+    private int omittedCommits;
+
+    /**
+     * @param session svn session used for all the requests
+     * @param repository svn working copy
+     */
+    public SvnCommitChangesEngine(SvnChangesSession session, File repository) {
+        this.session = session;
+        this.repository = repository;
+    }
+
+    /**
+     * @param currentRevision newest revision of the range
+     * @param previousRevision oldest revision of the range, its commit is not included
+     * @param baseRevision revision the oldest commit of the range is compared to
+     * @return changes of the commits between the revisions, newest first, at most the maximum number of commits
+     *         of the session diff options
+     */
+    public List<CommitChanges> changesOf(SVNRevision currentRevision, SVNRevision previousRevision, SVNRevision baseRevision) throws SVNException {
+        List<SVNLogEntry> logEntries = new ArrayList<>(SvnLastChanges.logOf(session, repository, currentRevision, previousRevision, true));
+        logEntries.sort(Comparator.comparingLong(SVNLogEntry::getRevision));
+
+        int maxCommits = session.getDiffOptions().getMaxCommits();
+        int oldest = maxCommits > 0 ? Math.max(0, logEntries.size() - maxCommits) : 0;
+        omittedCommits = oldest;
+        List<CommitChanges> commitChanges = new ArrayList<>(logEntries.size() - oldest);
+        for (int i = logEntries.size() - 1; i >= oldest; i--) {
+            SVNLogEntry logEntry = logEntries.get(i);
+            CommitInfo commitInfo = SvnLastChanges.commitInfo(logEntry);
+            if (logEntry.getChangedPaths() != null && logEntry.getChangedPaths().isEmpty()) {
+                //nothing changed in the repository (e.g. revision properties only), no need to ask for the diff
+                commitChanges.add(new CommitChanges(commitInfo, ""));
+                continue;
+            }
+            SVNRevision revision = SVNRevision.create(logEntry.getRevision());
+            SVNRevision previous = i == 0 ? baseRevision : SVNRevision.create(logEntries.get(i - 1).getRevision());
+            try (CompressingDiffOutputStream diffStream = SvnLastChanges.diffOf(session, repository, revision, previous)) {
+                commitChanges.add(CommitChanges.of(commitInfo, diffStream));
+            } catch (SVNException | IOException e) {
+                LOG.log(Level.WARNING, "Could not get changes of revision %s.".formatted(logEntry.getRevision()), e);
+                commitChanges.add(new CommitChanges(commitInfo, ""));
+            }
+        }
+        return commitChanges;
+    }
+
+    /**
+     * @return number of commits of the last range which changes were not computed (over the maximum number of commits)
+     */
+    public int getOmittedCommits() {
+        return omittedCommits;
+    }
+}
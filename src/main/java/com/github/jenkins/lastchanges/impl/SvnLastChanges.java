@@ -3,8 +3,11 @@
  */
 package com.github.jenkins.lastchanges.impl;
 
+import com.github.jenkins.lastchanges.CompressingDiffOutputStream;
+import com.github.jenkins.lastchanges.DiffLimitingOutputStream;
 import com.github.jenkins.lastchanges.api.VCSChanges;
 import com.github.jenkins.lastchanges.model.CommitInfo;
+import com.github.jenkins.lastchanges.model.DiffOptions;
 import com.github.jenkins.lastchanges.model.LastChanges;
 import org.tmatesoft.svn.core.SVNDepth;
 import org.tmatesoft.svn.core.SVNDirEntry;
@@ -18,11 +21,13 @@ import org.tmatesoft.svn.core.wc.SVNWCUtil;
 import org.tmatesoft.svn.core.wc2.*;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -55,8 +60,14 @@ public class SvnLastChanges implements VCSChanges<File, SVNRevision> {
      */
     @Override
     public LastChanges changesOf(File repository) {
+        try (SvnChangesSession session = openSession()) {
+            return changesOf(session, repository);
+        }
+    }
+
+    public LastChanges changesOf(SvnChangesSession session, File repository) {
         try {
-            return changesOf(repository, SVNRevision.COMMITTED, SVNRevision.PREVIOUS);
+            return changesOf(session, repository, SVNRevision.COMMITTED, SVNRevision.PREVIOUS);
         } catch (Exception e) {
             throw new RuntimeException("Could not retrieve last changes of svn repository located at " + repository + " due to following error: " + (e.getMessage() == null ? e.toString() : e.getMessage()) + (e.getCause() != null ? " - " + e.getCause() : ""), e);
         }
@@ -70,46 +81,134 @@ public class SvnLastChanges implements VCSChanges<File, SVNRevision> {
      */
     @Override
     public LastChanges changesOf(File repository, SVNRevision currentRevision, SVNRevision previousRevision) {
-        ByteArrayOutputStream diffStream = null;
-        try {
-            SvnOperationFactory operationFactory = new SvnOperationFactory();
-            if (svnAuthProvider != null) {
-            	operationFactory.setAuthenticationManager(svnAuthManager);
-                svnAuthManager.setAuthenticationProvider(svnAuthProvider);
-            }
-            SvnDiff diff = operationFactory.createDiff();
-            diff.setSingleTarget(
-                    SvnTarget.fromFile(repository)
-            );
-
-            final SvnDiffGenerator diffGenerator = new SvnDiffGenerator();
-            diffGenerator.setBasePath(new File(""));
-            diffStream = new ByteArrayOutputStream();
-
-            diff.setSources(SvnTarget.fromFile(repository, previousRevision),
-                    SvnTarget.fromFile(repository, currentRevision));
-            diff.setDiffGenerator(diffGenerator);
-            diff.setOutput(diffStream);
-            diff.run();
-
-            CommitInfo lastCommitInfo = commitInfo(repository, currentRevision);
-            CommitInfo oldCommitInfo = commitInfo(repository, previousRevision);
+        try (SvnChangesSession session = openSession()) {
+            return changesOf(session, repository, currentRevision, previousRevision);
+        }
+    }
 
+    public LastChanges changesOf(SvnChangesSession session, File repository, SVNRevision currentRevision, SVNRevision previousRevision) {
+        try (CompressingDiffOutputStream diffStream = diffOf(session, repository, currentRevision, previousRevision)) {
+            CommitInfo lastCommitInfo = commitInfo(session, repository, currentRevision);
+            CommitInfo oldCommitInfo = commitInfo(session, repository, previousRevision);
 
-            return new LastChanges(lastCommitInfo, oldCommitInfo, new String(diffStream.toByteArray(), UTF_8));
+            return new LastChanges(lastCommitInfo, oldCommitInfo, diffStream);
         } catch (Exception e) {
             throw new RuntimeException("Could not retrieve last changes of svn repository located at " + repository + " due to following error: " + (e.getMessage() == null ? e.toString() : e.getMessage()) + (e.getCause() != null ? " - " + e.getCause() : ""), e);
+        }
+    }
+
+    /**
+     * @return the (closed) diff between the revisions of the working copy, read from the session diff cache when possible
+     */
+    public static CompressingDiffOutputStream diffOf(SvnChangesSession session, File repository, SVNRevision currentRevision, SVNRevision previousRevision) throws SVNException, IOException {
+        DiffCache diffCache = session.getDiffCache();
+        //only diffs between revision numbers are cached, keywords (HEAD, PREVIOUS...) point to different revisions over time
+        String cacheKey = null;
+        if (diffCache != null && currentRevision.getNumber() >= 0 && previousRevision.getNumber() >= 0) {
+            String diffOptions = session.getDiffOptions().key();
+            cacheKey = diffOptions.isEmpty()
+                    ? DiffCache.key("svn", session.urlOf(repository), String.valueOf(previousRevision.getNumber()), String.valueOf(currentRevision.getNumber()))
+                    : DiffCache.key("svn", session.urlOf(repository), String.valueOf(previousRevision.getNumber()), String.valueOf(currentRevision.getNumber()), diffOptions);
+            CompressingDiffOutputStream cachedDiff = diffCache.get(cacheKey);
+            if (cachedDiff != null) {
+                return cachedDiff;
+            }
+        }
+
+        PathPatterns paths = PathPatterns.of(session.getDiffOptions());
+        List<File> roots = rootsOf(repository, paths);
+        CompressingDiffOutputStream diffStream;
+        try {
+            diffStream = diffOf(session, repository, roots, currentRevision, previousRevision, paths);
+        } catch (SVNException e) {
+            if (roots.isEmpty()) {
+                throw e;
+            }
+            //a filtered directory may not exist in one of the revisions (e.g. added in between)
+            LOG.log(Level.FINE, "Could not diff filtered directories of %s, diffing the whole working copy.".formatted(repository), e);
+            diffStream = diffOf(session, repository, Collections.emptyList(), currentRevision, previousRevision, paths);
+        }
+        if (cacheKey != null) {
+            diffCache.put(cacheKey, diffStream);
+        }
+        return diffStream;
+    }
 
+    private static CompressingDiffOutputStream diffOf(SvnChangesSession session, File repository, List<File> targets, SVNRevision currentRevision, SVNRevision previousRevision,
+                                                      PathPatterns paths) throws SVNException, IOException {
+        DiffOptions diffOptions = session.getDiffOptions();
+        CompressingDiffOutputStream diffStream = new CompressingDiffOutputStream(diffOptions);
+        //files exceeding the limits are summarized (and filtered out files dropped) while svn writes the diff, they are never held in memory
+        OutputStream out = diffOptions.hasLimits() || !paths.isAll()
+                ? new DiffLimitingOutputStream(diffStream, diffOptions, paths.isAll() ? null : workingCopyFilter(repository, paths))
+                : diffStream;
+        try {
+            for (File target : targets.isEmpty() ? Collections.singletonList(repository) : targets) {
+                SvnDiff diff = session.operations().createDiff();
+                diff.setSingleTarget(
+                        SvnTarget.fromFile(target)
+                );
+
+                final SvnDiffGenerator diffGenerator = new SvnDiffGenerator();
+                diffGenerator.setBasePath(new File(""));
+
+                diff.setSources(SvnTarget.fromFile(target, previousRevision),
+                        SvnTarget.fromFile(target, currentRevision));
+                diff.setDiffGenerator(diffGenerator);
+                diff.setOutput(out);
+                diff.run();
+            }
         } finally {
-            if (diffStream != null) {
-                try {
-                    diffStream.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+            out.close();
+        }
+        return diffStream;
+    }
+
+    /**
+     * @return the directories of the working copy holding all the files matching the path patterns, empty when the
+     *         whole working copy must be read
+     */
+    private static List<File> rootsOf(File repository, PathPatterns paths) {
+        List<File> roots = new ArrayList<>();
+        for (String root : paths.roots()) {
+            File file = new File(repository, root);
+            if (!file.exists()) {
+                //may exist in previous revision (e.g. deleted), only the whole working copy has its changes
+                return Collections.emptyList();
             }
+            roots.add(file);
+        }
+        return roots;
+    }
 
+    /**
+     * @return tells if a path of the diff (relative to the current directory, see {@link SvnDiffGenerator#setBasePath(File)})
+     *         matches the patterns
+     */
+    private static Predicate<String> workingCopyFilter(File repository, PathPatterns paths) {
+        Path workingCopy = repository.getAbsoluteFile().toPath().normalize();
+        Path basePath = new File("").getAbsoluteFile().toPath();
+        return diffPath -> {
+            Path file = basePath.resolve(diffPath).normalize();
+            String path = file.startsWith(workingCopy) ? workingCopy.relativize(file).toString().replace(File.separatorChar, '/') : diffPath;
+            return paths.matches(path);
+        };
+    }
+
+    /**
+     * @param workingCopyPath path of the working copy in the repository, see {@link SvnChangesSession#pathOf(File)}
+     * @return <code>true</code> if the revision changed a path of the working copy matching the patterns
+     */
+    private static boolean changesPaths(SVNLogEntry logEntry, String workingCopyPath, PathPatterns paths) {
+        if (logEntry.getChangedPaths() == null) {
+            return true;
+        }
+        for (String changedPath : logEntry.getChangedPaths().keySet()) {
+            if (changedPath.startsWith(workingCopyPath + "/") && paths.matches(changedPath.substring(workingCopyPath.length() + 1))) {
+                return true;
+            }
         }
+        return false;
     }
 
     public SvnLastChanges setSvnAuthManager(ISVNAuthenticationManager svnAuthManager) {
@@ -117,14 +216,22 @@ public class SvnLastChanges implements VCSChanges<File, SVNRevision> {
         return this;
     }
 
+    /**
+     * @return a session using the authentication manager and provider of this instance, must be closed by the caller
+     */
+    public SvnChangesSession openSession() {
+        return new SvnChangesSession(svnAuthManager, svnAuthProvider);
+    }
+
     @Override
     public SVNRevision getLastTagRevision(File repository) {
-        SvnOperationFactory operationFactory = new SvnOperationFactory();
-        if (svnAuthProvider != null) {
-        	operationFactory.setAuthenticationManager(svnAuthManager);
-            svnAuthManager.setAuthenticationProvider(svnAuthProvider);
+        try (SvnChangesSession session = openSession()) {
+            return getLastTagRevision(session, repository);
         }
-        SvnList listOperation = operationFactory.createList();
+    }
+
+    public SVNRevision getLastTagRevision(SvnChangesSession session, File repository) {
+        SvnList listOperation = session.operations().createList();
         listOperation.setSingleTarget(SvnTarget.fromFile(repository));
         listOperation.setDepth(SVNDepth.IMMEDIATES);
         listOperation.setEntryFields(SVNDirEntry.DIRENT_ALL);
@@ -139,7 +246,7 @@ public class SvnLastChanges implements VCSChanges<File, SVNRevision> {
                 }
             }
             if (tags != null) {
-                SVNDirEntry latestTag = findLastTag(tags);
+                SVNDirEntry latestTag = findLastTag(session, tags);
                 if (latestTag != null) {
                     return SVNRevision.create(latestTag.getRevision());
                 } else {
@@ -159,12 +266,13 @@ public class SvnLastChanges implements VCSChanges<File, SVNRevision> {
 
     @Override
     public SVNRevision resolveCurrentRevision(File svnRepository) {
-        SvnOperationFactory operationFactory = new SvnOperationFactory();
-        ISVNAuthenticationManager defaultAuthenticationManager = SVNWCUtil.createDefaultAuthenticationManager();
-        if (svnAuthProvider != null) {
-            defaultAuthenticationManager.setAuthenticationProvider(svnAuthProvider);
+        try (SvnChangesSession session = openSession()) {
+            return resolveCurrentRevision(session, svnRepository);
         }
-        SvnGetInfo getInfo = operationFactory.createGetInfo();
+    }
+
+    public SVNRevision resolveCurrentRevision(SvnChangesSession session, File svnRepository) {
+        SvnGetInfo getInfo = session.operations().createGetInfo();
         getInfo.setSingleTarget(SvnTarget.fromFile(svnRepository));
         getInfo.setRevision(SVNRevision.COMMITTED);
         SvnInfo run = null;
@@ -180,14 +288,15 @@ public class SvnLastChanges implements VCSChanges<File, SVNRevision> {
 
     @Override
     public CommitInfo commitInfo(File repository, SVNRevision revision) {
+        try (SvnChangesSession session = openSession()) {
+            return commitInfo(session, repository, revision);
+        }
+    }
+
+    public CommitInfo commitInfo(SvnChangesSession session, File repository, SVNRevision revision) {
         CommitInfo commitInfo = new CommitInfo();
         try {
-            SvnOperationFactory operationFactory = new SvnOperationFactory();
-            if (svnAuthProvider != null) {
-            	operationFactory.setAuthenticationManager(svnAuthManager);
-                svnAuthManager.setAuthenticationProvider(svnAuthProvider);
-            }
-
+            SvnOperationFactory operationFactory = session.operations();
             SvnGetInfo getInfo = operationFactory.createGetInfo();
             getInfo.setSingleTarget(SvnTarget.fromFile(repository));
             getInfo.setRevision(revision);
@@ -207,12 +316,7 @@ public class SvnLastChanges implements VCSChanges<File, SVNRevision> {
             Collection<SVNLogEntry> logEntries = logOperation.run(null);
             Iterator<SVNLogEntry> iterator = logEntries.iterator();
             if (iterator.hasNext()) {
-                SVNLogEntry logEntry = iterator.next();
-                TimeZone tz = TimeZone.getDefault();
-                commitInfo.setCommitDate(commitInfo.format(logEntry.getDate(), tz) + " " + tz.getDisplayName())
-                        .setCommitterName(logEntry.getAuthor())
-                        .setCommitId(logEntry.getRevision() + "")
-                        .setCommitMessage(logEntry.getMessage());
+                commitInfo = commitInfo(iterator.next());
             }
         } catch (Exception e) {
             Logger.getLogger(SvnLastChanges.class.getName()).warning(String.format("Could not get commit info from revision %s due to following error " + e.getMessage() + (e.getCause() != null ? " - " + e.getCause() : ""), revision));
@@ -222,40 +326,17 @@ public class SvnLastChanges implements VCSChanges<File, SVNRevision> {
 
     @Override
     public List<CommitInfo> getCommitsBetweenRevisions(File svnRepository, SVNRevision currentRevision, SVNRevision previousRevision) {
+        try (SvnChangesSession session = openSession()) {
+            return getCommitsBetweenRevisions(session, svnRepository, currentRevision, previousRevision);
+        }
+    }
+
+    public List<CommitInfo> getCommitsBetweenRevisions(SvnChangesSession session, File svnRepository, SVNRevision currentRevision, SVNRevision previousRevision) {
         List<CommitInfo> commits = new ArrayList<>();
         try {
-            SvnOperationFactory operationFactory = new SvnOperationFactory();
-            ISVNAuthenticationManager defaultAuthenticationManager = SVNWCUtil.createDefaultAuthenticationManager();
-            if (svnAuthProvider != null) {
-            	operationFactory.setAuthenticationManager(defaultAuthenticationManager);
-                defaultAuthenticationManager.setAuthenticationProvider(svnAuthProvider);
-            }
-            SvnLog logOperation = operationFactory.createLog();
-            logOperation.setSingleTarget(SvnTarget.fromFile(svnRepository));
-            logOperation.setRevisionRanges(Collections.singleton(
-                    SvnRevisionRange.create(
-                            previousRevision,
-                            currentRevision
-                    )
-            ));
-
-            Collection<SVNLogEntry> logEntries = logOperation.run(null);
-            Iterator<SVNLogEntry> iterator = logEntries.iterator();
-
-            TimeZone tz = TimeZone.getDefault();
-            while (iterator.hasNext()) {
-                SVNLogEntry logEntry = iterator.next();
-                if ((logEntry.getRevision() + "").equals(previousRevision.toString())) {//do not include previous revision commit
-                    continue;
-                }
-                CommitInfo commitInfo = new CommitInfo();
-                commitInfo.setCommitDate(commitInfo.format(logEntry.getDate(), tz) + " " + tz.getDisplayName())
-                        .setCommitterName(logEntry.getAuthor())
-                        .setCommitId(logEntry.getRevision() + "")
-                        .setCommitMessage(logEntry.getMessage());
-                commits.add(commitInfo);
+            for (SVNLogEntry logEntry : logOf(session, svnRepository, currentRevision, previousRevision, false)) {
+                commits.add(commitInfo(logEntry));
             }
-
         } catch (Exception e) {
             Logger.getLogger(SvnLastChanges.class.getName()).log(Level.WARNING, "Could not get commits between current revision %s and previous revision %s.".formatted(currentRevision, previousRevision), e);
         }
@@ -264,13 +345,78 @@ public class SvnLastChanges implements VCSChanges<File, SVNRevision> {
 
     }
 
-    private SVNDirEntry findLastTag(SVNDirEntry tagsDir) throws SVNException {
-        SvnOperationFactory operationFactory = new SvnOperationFactory();
-        if (svnAuthProvider != null) {
-        	operationFactory.setAuthenticationManager(svnAuthManager);
-            svnAuthManager.setAuthenticationProvider(svnAuthProvider);
+    /**
+     * Reads the log of the revisions between previous (exclusive) and current revision in a single request.
+     *
+     * @param changedPaths whether the paths changed by each revision are also retrieved
+     * @return log entries in the order returned by the server
+     */
+    public static List<SVNLogEntry> logOf(SvnChangesSession session, File svnRepository, SVNRevision currentRevision, SVNRevision previousRevision, boolean changedPaths) throws SVNException {
+        PathPatterns paths = PathPatterns.of(session.getDiffOptions());
+        List<File> roots = rootsOf(svnRepository, paths);
+        Collection<SVNLogEntry> log;
+        try {
+            log = runLog(session, svnRepository, roots, currentRevision, previousRevision, changedPaths || !paths.isAll());
+        } catch (SVNException e) {
+            if (roots.isEmpty()) {
+                throw e;
+            }
+            LOG.log(Level.FINE, "Could not read the log of filtered directories of %s, reading the log of the whole working copy.".formatted(svnRepository), e);
+            log = runLog(session, svnRepository, Collections.emptyList(), currentRevision, previousRevision, true);
         }
-        SvnList listOperation = operationFactory.createList();
+        String workingCopyPath = paths.isAll() ? null : session.pathOf(svnRepository);
+
+        List<SVNLogEntry> logEntries = new ArrayList<>();
+        for (SVNLogEntry logEntry : log) {
+            if ((logEntry.getRevision() + "").equals(previousRevision.toString())) {//do not include previous revision commit
+                continue;
+            }
+            if (workingCopyPath != null && !changesPaths(logEntry, workingCopyPath, paths)) {
+                continue;
+            }
+            logEntries.add(logEntry);
+        }
+        return logEntries;
+    }
+
+    /**
+     * @param targets directories of the working copy to read the log of, when empty the log of the whole working copy is read
+     */
+    private static Collection<SVNLogEntry> runLog(SvnChangesSession session, File svnRepository, List<File> targets, SVNRevision currentRevision, SVNRevision previousRevision,
+                                                  boolean changedPaths) throws SVNException {
+        SvnLog logOperation = session.operations().createLog();
+        if (targets.isEmpty()) {
+            logOperation.setSingleTarget(SvnTarget.fromFile(svnRepository));
+        } else {
+            for (File target : targets) {
+                logOperation.addTarget(SvnTarget.fromFile(target));
+            }
+        }
+        logOperation.setRevisionRanges(Collections.singleton(
+                SvnRevisionRange.create(
+                        previousRevision,
+                        currentRevision
+                )
+        ));
+        logOperation.setDiscoverChangedPaths(changedPaths);
+        return logOperation.run(null);
+    }
+
+    static CommitInfo commitInfo(SVNLogEntry logEntry) {
+        CommitInfo commitInfo = new CommitInfo();
+        if (logEntry.getDate() != null) {
+            //svn dates are UTC, they are displayed in the time zone of the node
+            long commitTime = logEntry.getDate().getTime();
+            commitInfo.setCommitTime(commitTime, TimeZone.getDefault().getOffset(commitTime) / 60000);
+        }
+        return commitInfo
+                .setCommitterName(logEntry.getAuthor())
+                .setCommitId(logEntry.getRevision() + "")
+                .setCommitMessage(logEntry.getMessage());
+    }
+
+    private SVNDirEntry findLastTag(SvnChangesSession session, SVNDirEntry tagsDir) throws SVNException {
+        SvnList listOperation = session.operations().createList();
         listOperation.setSingleTarget(SvnTarget.fromURL(tagsDir.getURL()));
         Collection<SVNDirEntry> run = listOperation.run(new ArrayList<SVNDirEntry>());
         SVNDirEntry mostRecentTag = null;
@@ -0,0 +1,19 @@
+package com.github.jenkins.lastchanges.model;
+
+/**
+ * How a file changed in a diff.
+ */
+public enum ChangeType {
+
+    ADDED("Added"), DELETED("Deleted"), MODIFIED("Modified"), RENAMED("Renamed"), COPIED("Copied");
+
+    public final String name;
+
+    ChangeType(String value) {
+        this.name = value;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
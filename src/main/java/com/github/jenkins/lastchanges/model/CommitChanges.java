@@ -3,9 +3,16 @@ package com.github.jenkins.lastchanges.model;
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.jenkinsci.plugins.scriptsecurity.sandbox.whitelists.Whitelisted;
 
+import com.github.jenkins.lastchanges.CompressingDiffOutputStream;
+import com.github.jenkins.lastchanges.DiffRenderCache;
 import com.github.jenkins.lastchanges.LastChangesUtil;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.Map;
 
 /**
  *
@@ -13,9 +20,14 @@ import java.io.Serializable;
  */
 public class CommitChanges implements Serializable {
 
+    private static final String CHANGES_FILE_PREFIX = "commit-";
+    private static final String CHANGES_FILE_SUFFIX = ".diff.gz";
+
     private CommitInfo commitInfo;
     private String changes;
     private byte[] compressedChanges;
+    private transient File changesFile;//compressed changes stored outside the build record
+    private Long changesSize;//size in bytes of the uncompressed changes, computed when the changes are stored
 
     public CommitChanges(CommitInfo commitInfo, String changes) {
         this.commitInfo = commitInfo;
@@ -28,6 +40,30 @@ public class CommitChanges implements Serializable {
         }
     }
 
+    CommitChanges(CommitInfo commitInfo, String changes, byte[] compressedChanges) {
+        this.commitInfo = commitInfo;
+        this.changes = changes;
+        this.compressedChanges = compressedChanges;
+    }
+
+    /**
+     * @param diffStream the commit diff as written by the VCS, kept compressed when it was compressed while written
+     */
+    public static CommitChanges of(CommitInfo commitInfo, CompressingDiffOutputStream diffStream) {
+        if (diffStream.isCompressed()) {
+            return new CommitChanges(commitInfo, null, diffStream.toByteArray());
+        }
+        return new CommitChanges(commitInfo, diffStream.toString(), null);
+    }
+
+    /**
+     * Commit changes which are the same as the given last changes (e.g. a single commit between revisions),
+     * the diff is reused as is, without decompressing it. Must be called before the last changes diffs are stored.
+     */
+    public static CommitChanges of(CommitInfo commitInfo, LastChanges lastChanges) {
+        return new CommitChanges(commitInfo, lastChanges.plainDiff(), lastChanges.compressedDiff());
+    }
+
     @Whitelisted
     public CommitInfo getCommitInfo() {
         return commitInfo;
@@ -35,6 +71,10 @@ public class CommitChanges implements Serializable {
 
 	@Whitelisted
 	public String getChanges() {
+		if (changesFile != null) {
+			final File file = changesFile;
+			return DiffRenderCache.get(file, "diff", () -> LastChangesUtil.decompress(file));
+		}
 		if (changes == null) {
 			return LastChangesUtil.decompress(compressedChanges);
 		} else {
@@ -42,13 +82,135 @@ public class CommitChanges implements Serializable {
 		}
 	}
 
+    /**
+     * @return stream of the uncompressed changes, read from disk when the changes are stored
+     */
+    public InputStream openChanges() throws IOException {
+        return LastChangesUtil.openDiff(changesFile, changes, compressedChanges);
+    }
+
+    /**
+     * @param storedDiffs diffs of the build already stored by digest, identical changes are linked to them instead of
+     *                    being written again, the stored changes are added
+     */
+    void storeChanges(File dir, Map<String, File> storedDiffs) throws IOException {
+        if (changesSize == null) {
+            changesSize = LastChangesUtil.diffSize(changesFile, changes, compressedChanges);
+        }
+        if ((changes != null || compressedChanges != null) && commitInfo != null) {
+            String digest = DiffDigest.of(changes, compressedChanges);
+            File file = changesFile(dir);
+            File stored = storedDiffs.get(digest);
+            if (stored != null) {
+                link(stored, file);
+            } else {
+                LastChangesUtil.writeDiff(file, changes, compressedChanges);
+                storedDiffs.put(digest, file);
+            }
+            changesFile = file;
+            changes = null;
+            compressedChanges = null;
+        }
+    }
+
+    /**
+     * Points the changes to a copy (or hard link) in dir of changes already stored by another build.
+     */
+    void reuseChanges(File storedChanges, File dir) throws IOException {
+        File file = changesFile(dir);
+        link(storedChanges, file);
+        changesFile = file;
+        changesSize = LastChangesUtil.diffSize(file, null, null);
+    }
+
+    /**
+     * Shares the payload of identical changes (see {@link LastChanges#addCommit(CommitChanges)}).
+     */
+    void shareChanges(String changes, byte[] compressedChanges) {
+        this.changes = changes;
+        this.compressedChanges = compressedChanges;
+    }
+
+    /**
+     * Hard links file to the stored diff, or copies it when links are not supported.
+     */
+    private static void link(File storedDiff, File file) throws IOException {
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.deleteIfExists(file.toPath());
+        try {
+            Files.createLink(file.toPath(), storedDiff.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(storedDiff.toPath(), file.toPath());
+        }
+    }
+
+    void attachChanges(File dir) {
+        if (changes == null && compressedChanges == null && commitInfo != null) {
+            File file = changesFile(dir);
+            changesFile = file.exists() ? file : null;
+        }
+    }
+
+    boolean hasInlineChanges() {
+        return changes != null || compressedChanges != null;
+    }
+
+    String plainChanges() {
+        return changes;
+    }
+
+    byte[] compressedChanges() {
+        return compressedChanges;
+    }
+
+    File storedChanges() {
+        return changesFile;
+    }
+
+    private File changesFile(File dir) {
+        return new File(dir, CHANGES_FILE_PREFIX + commitInfo.getCommitId() + CHANGES_FILE_SUFFIX);
+    }
+
+    /**
+     * @param fileName name of a file in a diffs directory
+     * @return id of the commit which changes are stored in the file or <code>null</code> if the file does not hold commit changes
+     */
+    static String commitIdOf(String fileName) {
+        if (fileName.startsWith(CHANGES_FILE_PREFIX) && fileName.endsWith(CHANGES_FILE_SUFFIX)
+                && fileName.length() > CHANGES_FILE_PREFIX.length() + CHANGES_FILE_SUFFIX.length()) {
+            return fileName.substring(CHANGES_FILE_PREFIX.length(), fileName.length() - CHANGES_FILE_SUFFIX.length());
+        }
+        return null;
+    }
+
     public String getEscapedDiff() {
-    	String changes = getChanges();
-        if (changes != null) {
-            return StringEscapeUtils.escapeEcmaScript(changes);
-        } else {
-            return "";
+        return DiffRenderCache.get(changesFile, "escaped", () -> {
+            String changes = getChanges();
+            if (changes != null) {
+                return StringEscapeUtils.escapeEcmaScript(changes);
+            } else {
+                return "";
+            }
+        });
+    }
+
+    /**
+     * @return size in bytes of the uncompressed changes, computed once (when published) without decompressing them
+     */
+    public long getChangesSize() {
+        if (changesSize == null) {
+            //builds published by older plugin versions
+            changesSize = LastChangesUtil.diffSize(changesFile, changes, compressedChanges);
         }
+        return changesSize;
+    }
+
+    /**
+     * @return <code>true</code> if the commit changes are not empty, the changes are not read
+     */
+    @Whitelisted
+    public boolean hasChanges() {
+        return getChangesSize() > 0;
     }
 
     @Override
@@ -8,6 +8,10 @@ import java.util.Date;
 import java.util.TimeZone;
 
 /**
+ * Commit time is kept as epoch millis and zone offset of the committer, the commit date is only formatted when it is
+ * displayed (using the locale of the controller). Builds published by older plugin versions only have the formatted
+ * date.
+ *
  * Created by rmpestano on 6/26/16.
  */
 public class CommitInfo implements Serializable {
@@ -18,7 +22,10 @@ public class CommitInfo implements Serializable {
     private String commitMessage;
     private String committerName;
     private String committerEmail;
-    private String commitDate;
+    private String commitDate;//formatted date, only kept by builds published by older plugin versions
+    private long commitTime;//epoch millis, 0 when unknown
+    private int commitTimeZoneOffset;//offset of the committer time zone in minutes
+    private transient String formattedCommitDate;
 
     @Whitelisted
     public String getCommitterName() {
@@ -34,9 +41,37 @@ public class CommitInfo implements Serializable {
         return getCommitterName();
     }
 
+    /**
+     * @return commit date formatted with the time zone of the committer
+     */
     @Whitelisted
     public String getCommitDate() {
-        return commitDate;
+        if (commitTime == 0) {
+            return commitDate;
+        }
+        String formatted = formattedCommitDate;
+        if (formatted == null) {
+            TimeZone tz = timeZone(commitTimeZoneOffset);
+            formatted = format(new Date(commitTime), tz) + " " + tz.getDisplayName();
+            formattedCommitDate = formatted;
+        }
+        return formatted;
+    }
+
+    /**
+     * @return commit time in milliseconds since epoch, 0 when unknown (builds published by older plugin versions)
+     */
+    @Whitelisted
+    public long getCommitTime() {
+        return commitTime;
+    }
+
+    /**
+     * @return offset (in minutes) of the committer time zone
+     */
+    @Whitelisted
+    public int getCommitTimeZoneOffset() {
+        return commitTimeZoneOffset;
     }
 
     @Whitelisted
@@ -75,6 +110,27 @@ public class CommitInfo implements Serializable {
         return this;
     }
 
+    /**
+     * @param commitTime commit time in milliseconds since epoch
+     * @param timeZoneOffset offset (in minutes) of the committer time zone
+     * @return this instance
+     */
+    public CommitInfo setCommitTime(long commitTime, int timeZoneOffset) {
+        this.commitTime = commitTime;
+        this.commitTimeZoneOffset = timeZoneOffset;
+        this.formattedCommitDate = null;
+        return this;
+    }
+
+    /**
+     * @param offset offset in minutes from UTC
+     * @return fixed offset time zone, named as git names them (e.g. <code>GMT-03:00</code>)
+     */
+    static TimeZone timeZone(int offset) {
+        int minutes = Math.abs(offset);
+        return TimeZone.getTimeZone("GMT%s%02d:%02d".formatted(offset < 0 ? "-" : "+", minutes / 60, minutes % 60));
+    }
+
     public CommitInfo setCommitId(String commitId) {
         this.commitId = commitId;
         return this;
@@ -139,7 +195,7 @@ public class CommitInfo implements Serializable {
                 append("Commit: ").append(commitId).append(newLine).
                 append("Author: ").append(committerName).append(newLine).
                 append("E-mail: ").append(committerEmail).append(newLine).
-                append("Date: ").append(commitDate).append(newLine).
+                append("Date: ").append(getCommitDate()).append(newLine).
                 append("Message: ").append(commitMessage).append(newLine).append(newLine);
 
         return sb.toString();
@@ -0,0 +1,71 @@
+package com.github.jenkins.lastchanges.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Identifies a diff payload by the SHA-256 of its bytes, so identical diffs of a {@link LastChanges} (e.g. the diff
+ * and the changes of its single commit) are kept, sent and stored once.
+ *
+ * Plain and compressed payloads of a diff have different digests, identical compressed payloads are the same diff
+ * compressed with the same codec (as the diffs of a build are).
+ */
+final class DiffDigest {
+
+    private static final byte PLAIN = 'P';
+    private static final byte COMPRESSED = 'C';
+
+    private DiffDigest() {
+    }
+
+    /**
+     * @return digest of the payload, <code>null</code> when there is no payload
+     */
+    static String of(String plain, byte[] compressed) {
+        if (plain != null) {
+            MessageDigest digest = sha256();
+            digest.update(PLAIN);
+            digest.update(plain.getBytes(UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        }
+        if (compressed != null) {
+            MessageDigest digest = sha256();
+            digest.update(COMPRESSED);
+            digest.update(compressed);
+            return HexFormat.of().formatHex(digest.digest());
+        }
+        return null;
+    }
+
+    /**
+     * @param stored compressed diff file
+     * @return digest of the file, equal to the digest of its content held in memory
+     */
+    static String of(File stored) throws IOException {
+        MessageDigest digest = sha256();
+        digest.update(COMPRESSED);
+        try (InputStream in = Files.newInputStream(stored.toPath())) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available.", e);
+        }
+    }
+}
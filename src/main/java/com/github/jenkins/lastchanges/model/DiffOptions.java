@@ -0,0 +1,215 @@
+package com.github.jenkins.lastchanges.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Options shaping the diffs computed on the node. Limits are expressed in bytes of uncompressed diff, zero (the
+ * default) means no limit. Path patterns are globs relative to the repository root (<code>*</code>, <code>?</code>
+ * and <code>**</code> for any number of directories), a pattern matching a directory matches all its files.
+ *
+ * Diffs computed with different options differ, {@link #key()} identifies them (e.g. in diff cache keys).
+ */
+public class DiffOptions implements Serializable {
+
+    private long maxDiffBytes;
+    private long maxFileBytes;
+    private int maxFiles;
+    private int maxCommits;
+    private List<String> includes = Collections.emptyList();
+    private List<String> excludes = Collections.emptyList();
+    private boolean detectRenames;
+    private int renameScore;
+    private int renameLimit;
+    private String diffCodec;
+    private int compressionLevel;
+
+    /**
+     * @return maximum size of a diff, files exceeding it are summarized
+     */
+    public long getMaxDiffBytes() {
+        return maxDiffBytes;
+    }
+
+    public DiffOptions setMaxDiffBytes(long maxDiffBytes) {
+        this.maxDiffBytes = Math.max(0, maxDiffBytes);
+        return this;
+    }
+
+    /**
+     * @return maximum size of the diff of a single file, bigger file diffs are summarized
+     */
+    public long getMaxFileBytes() {
+        return maxFileBytes;
+    }
+
+    public DiffOptions setMaxFileBytes(long maxFileBytes) {
+        this.maxFileBytes = Math.max(0, maxFileBytes);
+        return this;
+    }
+
+    /**
+     * @return maximum number of files of a diff, next files are omitted
+     */
+    public int getMaxFiles() {
+        return maxFiles;
+    }
+
+    public DiffOptions setMaxFiles(int maxFiles) {
+        this.maxFiles = Math.max(0, maxFiles);
+        return this;
+    }
+
+    /**
+     * @return maximum number of commits listed with their changes, older commits are omitted
+     */
+    public int getMaxCommits() {
+        return maxCommits;
+    }
+
+    public DiffOptions setMaxCommits(int maxCommits) {
+        this.maxCommits = Math.max(0, maxCommits);
+        return this;
+    }
+
+    /**
+     * @return patterns of the paths to include, empty means all paths
+     */
+    public List<String> getIncludes() {
+        return includes;
+    }
+
+    public DiffOptions setIncludes(List<String> includes) {
+        this.includes = includes != null ? List.copyOf(includes) : Collections.emptyList();
+        return this;
+    }
+
+    /**
+     * @return patterns of the paths to exclude, they win over includes
+     */
+    public List<String> getExcludes() {
+        return excludes;
+    }
+
+    public DiffOptions setExcludes(List<String> excludes) {
+        this.excludes = excludes != null ? List.copyOf(excludes) : Collections.emptyList();
+        return this;
+    }
+
+    /**
+     * @return <code>true</code> if renamed (and copied) files are detected instead of being deleted and added
+     */
+    public boolean isDetectRenames() {
+        return detectRenames;
+    }
+
+    public DiffOptions setDetectRenames(boolean detectRenames) {
+        this.detectRenames = detectRenames;
+        return this;
+    }
+
+    /**
+     * @return minimum similarity (percentage) of a deleted and an added file to be a rename, zero uses the VCS default
+     */
+    public int getRenameScore() {
+        return renameScore;
+    }
+
+    public DiffOptions setRenameScore(int renameScore) {
+        this.renameScore = Math.max(0, Math.min(100, renameScore));
+        return this;
+    }
+
+    /**
+     * @return maximum number of deleted or added files compared by content to find renames, over this limit only
+     *         exact renames are detected, zero uses the VCS default
+     */
+    public int getRenameLimit() {
+        return renameLimit;
+    }
+
+    public DiffOptions setRenameLimit(int renameLimit) {
+        this.renameLimit = Math.max(0, renameLimit);
+        return this;
+    }
+
+    /**
+     * @return name of the codec compressing the diffs (see {@link com.github.jenkins.lastchanges.DiffCodecs}),
+     *         <code>null</code> uses the default codec of the node
+     */
+    public String getDiffCodec() {
+        return diffCodec;
+    }
+
+    public DiffOptions setDiffCodec(String diffCodec) {
+        this.diffCodec = diffCodec;
+        return this;
+    }
+
+    /**
+     * @return compression level of the diffs, zero uses the default level of the codec
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public DiffOptions setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = Math.max(0, compressionLevel);
+        return this;
+    }
+
+    /**
+     * @param patterns path patterns separated by commas or new lines
+     * @return the non blank patterns
+     */
+    public static List<String> parsePatterns(String patterns) {
+        List<String> parsed = new ArrayList<>();
+        if (patterns != null) {
+            for (String pattern : patterns.split("[,\\n]")) {
+                if (!pattern.trim().isEmpty()) {
+                    parsed.add(pattern.trim());
+                }
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * @return <code>true</code> if only the changes of some paths are computed
+     */
+    public boolean hasPathFilters() {
+        return !includes.isEmpty() || !excludes.isEmpty();
+    }
+
+    /**
+     * @return <code>true</code> if the size of diffs is limited
+     */
+    public boolean hasLimits() {
+        return maxDiffBytes > 0 || maxFileBytes > 0 || maxFiles > 0;
+    }
+
+    /**
+     * @return identifies the options which change the content of a diff (the compression does not), empty for
+     *         default options
+     */
+    public String key() {
+        StringBuilder key = new StringBuilder();
+        if (hasLimits()) {
+            key.append("maxDiffBytes=").append(maxDiffBytes).append(",maxFileBytes=").append(maxFileBytes).append(",maxFiles=").append(maxFiles);
+        }
+        if (hasPathFilters()) {
+            key.append(key.length() > 0 ? "," : "").append("includes=").append(includes).append(",excludes=").append(excludes);
+        }
+        if (detectRenames) {
+            key.append(key.length() > 0 ? "," : "").append("renames=true,renameScore=").append(renameScore).append(",renameLimit=").append(renameLimit);
+        }
+        return key.toString();
+    }
+
+    @Override
+    public String toString() {
+        return key();
+    }
+}
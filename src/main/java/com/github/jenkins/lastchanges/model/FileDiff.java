@@ -0,0 +1,108 @@
+package com.github.jenkins.lastchanges.model;
+
+import org.jenkinsci.plugins.scriptsecurity.sandbox.whitelists.Whitelisted;
+
+import java.io.Serializable;
+
+/**
+ * A file changed in a diff: its path, how it changed, the number of added and removed lines and hunks and the
+ * position of its section (in bytes) inside the uncompressed diff.
+ */
+public class FileDiff implements Serializable {
+
+    private final int index;
+    private final String path;
+    private final String oldPath;
+    private final ChangeType changeType;
+    private final int added;
+    private final int removed;
+    private final int hunks;
+    private final boolean binary;
+    private final long offset;
+    private final long length;
+
+    public FileDiff(int index, String path, String oldPath, int added, int removed, long offset, long length) {
+        this(index, path, oldPath, ChangeType.MODIFIED, added, removed, 0, false, offset, length);
+    }
+
+    public FileDiff(int index, String path, String oldPath, ChangeType changeType, int added, int removed, int hunks, boolean binary, long offset, long length) {
+        this.index = index;
+        this.path = path;
+        this.oldPath = oldPath;
+        this.changeType = changeType;
+        this.added = added;
+        this.removed = removed;
+        this.hunks = hunks;
+        this.binary = binary;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Whitelisted
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return path of the file after the change (path before the change for deleted files)
+     */
+    @Whitelisted
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return path of the file before the change, differs from path on renames
+     */
+    @Whitelisted
+    public String getOldPath() {
+        return oldPath;
+    }
+
+    /**
+     * @return how the file changed, {@link ChangeType#MODIFIED} for files indexed by older plugin versions
+     */
+    @Whitelisted
+    public ChangeType getChangeType() {
+        return changeType != null ? changeType : ChangeType.MODIFIED;
+    }
+
+    @Whitelisted
+    public int getAdded() {
+        return added;
+    }
+
+    @Whitelisted
+    public int getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return number of hunks of the file diff, 0 for binary files and summarized (omitted) file diffs
+     */
+    @Whitelisted
+    public int getHunks() {
+        return hunks;
+    }
+
+    @Whitelisted
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * @return offset (in bytes) of the file section in the uncompressed diff
+     */
+    @Whitelisted
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return size (in bytes) of the file section
+     */
+    @Whitelisted
+    public long getLength() {
+        return length;
+    }
+}
@@ -1,9 +1,25 @@
 package com.github.jenkins.lastchanges.model;
 
+import com.github.jenkins.lastchanges.CompressingDiffOutputStream;
+import com.github.jenkins.lastchanges.DiffCodecs;
+import com.github.jenkins.lastchanges.DiffFiles;
+import com.github.jenkins.lastchanges.DiffRenderCache;
 import com.github.jenkins.lastchanges.LastChangesUtil;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.jenkinsci.plugins.scriptsecurity.sandbox.whitelists.Whitelisted;
@@ -22,15 +38,34 @@ import org.jenkinsci.plugins.scriptsecurity.sandbox.whitelists.Whitelisted;
  * commits is the list of commits between those revisions/trees. Each commit has the commit information (as in
  * current/previous revisions) as well as the diff compared to it's previous revision.
  *
+ * files lists the files of the diff (paths, change type, added/removed lines), they are indexed while the diff is
+ * written so file lists and summaries do not read the diff. They are stored next to the diff (not in the build record)
+ * and loaded on first access.
+ *
+ * Once published, diffs are stored as compressed files in the build directory (see {@link #storeDiffs(File)}) so they are
+ * not part of the build record and are only read when requested. Stored diffs record their codec (see
+ * {@link DiffCodecs}), they are read whatever the codec configured when they are read.
+ *
  * Created by rmpestano on 7/3/16.
  */
 public class LastChanges implements Serializable {
 
     private final CommitInfo currentRevision; //information about head commit
     private final CommitInfo previousRevision;
-    private final String diff;
-    private final byte[] compressedDiff;
+    private static final String DIFF_FILE = "changes.diff.gz";
+    private static final String FILES_FILE = "changes.files";
+    private static final Logger LOG = Logger.getLogger(LastChanges.class.getName());
+
+    private String diff;
+    private byte[] compressedDiff;
+    private transient File diffFile;//compressed diff stored outside the build record
     private final List<CommitChanges> commits;//commits between current and previous revisions along with their changes related to its previous commit
+    private String diffOptions;//key of the options the diffs were computed with, see DiffOptions#key()
+    private Long diffSize;//size in bytes of the uncompressed diff, computed when the diff is stored
+    private String repository;//path (relative to the workspace) of the repository working tree, empty for the workspace itself
+    private transient List<FileDiff> files;//files of the diff, indexed while the diff was written
+    private transient File filesFile;//files of the diff stored outside the build record
+    private transient Map<String, Integer> sharedDiffs;//inline payloads by digest, index of the commit holding it (-1 for the diff)
 
     public LastChanges(CommitInfo current, CommitInfo previous, String diff) {
         this.currentRevision = current;
@@ -45,6 +80,31 @@ public class LastChanges implements Serializable {
         commits = new ArrayList<>();
     }
 
+    /**
+     * @param diffStream the diff as written by the VCS, kept compressed when it was compressed while written
+     */
+    public LastChanges(CommitInfo current, CommitInfo previous, CompressingDiffOutputStream diffStream) {
+        this.currentRevision = current;
+        this.previousRevision = previous;
+        if (diffStream.isCompressed()) {
+            this.diff = null;
+            compressedDiff = diffStream.toByteArray();
+        } else {
+            this.diff = diffStream.toString();
+            compressedDiff = null;
+        }
+        files = new ArrayList<>(diffStream.getFiles());
+        commits = new ArrayList<>();
+    }
+
+    LastChanges(CommitInfo current, CommitInfo previous, String diff, byte[] compressedDiff) {
+        this.currentRevision = current;
+        this.previousRevision = previous;
+        this.diff = diff;
+        this.compressedDiff = compressedDiff;
+        commits = new ArrayList<>();
+    }
+
     @Whitelisted
     public CommitInfo getCurrentRevision() {
         return currentRevision;
@@ -55,8 +115,36 @@ public class LastChanges implements Serializable {
         return previousRevision;
     }
 
+    /**
+     * @return key of the options the diffs were computed with, <code>null</code> or empty for default options
+     */
+    public String getDiffOptions() {
+        return diffOptions;
+    }
+
+    public void setDiffOptions(String diffOptions) {
+        this.diffOptions = diffOptions;
+    }
+
+    /**
+     * @return path (relative to the workspace) of the repository the changes come from, empty for the workspace
+     *         itself, <code>null</code> for builds published by older plugin versions
+     */
+    @Whitelisted
+    public String getRepository() {
+        return repository;
+    }
+
+    public void setRepository(String repository) {
+        this.repository = repository;
+    }
+
     @Whitelisted
     public String getDiff() {
+        if (diffFile != null) {
+            final File file = diffFile;
+            return DiffRenderCache.get(file, "diff", () -> LastChangesUtil.decompress(file));
+        }
         if(diff == null) {
             return LastChangesUtil.decompress(compressedDiff);
         } else {
@@ -64,28 +152,325 @@ public class LastChanges implements Serializable {
         }
     }
 
+    /**
+     * Moves the diff and the diff of each commit to compressed files in dir, from now on they are read from disk when
+     * requested.
+     *
+     * @param dir directory where the diffs are written
+     */
+    public void storeDiffs(File dir) throws IOException {
+        if (diffSize == null) {
+            diffSize = LastChangesUtil.diffSize(diffFile, diff, compressedDiff);
+        }
+        //identical diffs are stored once, the following ones are links to the first stored file
+        Map<String, File> storedDiffs = new HashMap<>();
+        if (diff != null || compressedDiff != null) {
+            String digest = DiffDigest.of(diff, compressedDiff);
+            File file = new File(dir, DIFF_FILE);
+            LastChangesUtil.writeDiff(file, diff, compressedDiff);
+            storeFiles(new File(dir, FILES_FILE));
+            //the stored file is used before the inline diff is dropped, the diff may be read concurrently
+            diffFile = file;
+            diff = null;
+            compressedDiff = null;
+            storedDiffs.put(digest, file);
+        }
+        for (CommitChanges commit : commits) {
+            commit.storeChanges(dir, storedDiffs);
+        }
+        sharedDiffs = null;
+    }
+
+    private void storeFiles(File file) throws IOException {
+        //builds published by older plugin versions index their diff while it is still in memory
+        List<FileDiff> files = getFiles();
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            LastChangesWireFormat.writeFiles(diffSize, files, out);
+        }
+        filesFile = file;
+    }
+
+    /**
+     * Reuses the changes, stored by previous builds, of the commits which changes were not computed (and sent) by the
+     * node, see {@link #storedCommitChanges(File)}.
+     *
+     * @param storedChanges stored changes by commit id
+     * @param dir directory where the diffs of this build are stored
+     * @return number of commits which changes were reused
+     */
+    public int reuseCommitChanges(Map<String, File> storedChanges, File dir) throws IOException {
+        int reused = 0;
+        for (CommitChanges commit : commits) {
+            if (commit.getCommitInfo() != null && !commit.hasInlineChanges() && commit.storedChanges() == null) {
+                File stored = storedChanges.get(commit.getCommitInfo().getCommitId());
+                if (stored != null && stored.isFile()) {
+                    commit.reuseChanges(stored, dir);
+                    reused++;
+                }
+            }
+        }
+        return reused;
+    }
+
+    /**
+     * @return commits which changes are neither held nor stored, i.e. commits skipped by the node which changes could
+     *         not be reused by {@link #reuseCommitChanges(Map, File)} (e.g. the build storing them was deleted meanwhile)
+     */
+    public List<CommitInfo> getCommitsWithoutChanges() {
+        List<CommitInfo> commitsWithoutChanges = new ArrayList<>();
+        for (CommitChanges commit : commits) {
+            if (commit.getCommitInfo() != null && !commit.hasInlineChanges() && commit.storedChanges() == null) {
+                commitsWithoutChanges.add(commit.getCommitInfo());
+            }
+        }
+        return commitsWithoutChanges;
+    }
+
+    /**
+     * @param dir diffs directory of a build
+     * @return commit changes stored in the directory by commit id
+     */
+    public static Map<String, File> storedCommitChanges(File dir) {
+        Map<String, File> storedChanges = new HashMap<>();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String commitId = CommitChanges.commitIdOf(file.getName());
+                if (commitId != null) {
+                    storedChanges.put(commitId, file);
+                }
+            }
+        }
+        return storedChanges;
+    }
+
+    /**
+     * Points the diffs to the files previously written by {@link #storeDiffs(File)}, used when the build is loaded.
+     *
+     * @param dir directory where the diffs were written
+     */
+    public void attachDiffs(File dir) {
+        if (diff == null && compressedDiff == null) {
+            File file = new File(dir, DIFF_FILE);
+            diffFile = file.exists() ? file : null;
+        }
+        File file = new File(dir, FILES_FILE);
+        filesFile = file.exists() ? file : null;
+        for (CommitChanges commit : commits) {
+            commit.attachChanges(dir);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if any diff is still kept in memory (and in the build record), e.g. builds published by older plugin versions
+     */
+    public boolean hasInlineDiffs() {
+        if (diff != null || compressedDiff != null) {
+            return true;
+        }
+        for (CommitChanges commit : commits) {
+            if (commit.hasInlineChanges()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    String plainDiff() {
+        return diff;
+    }
+
+    byte[] compressedDiff() {
+        return compressedDiff;
+    }
+
+    File storedDiff() {
+        return diffFile;
+    }
+
+    /**
+     * @return stream of the uncompressed diff, read from disk when the diff is stored
+     */
+    public InputStream openDiff() throws IOException {
+        return LastChangesUtil.openDiff(diffFile, diff, compressedDiff);
+    }
+
+    /**
+     * @return the uncompressed diff, kept in the render cache when the diff is stored so slices of the diff (e.g. the
+     *         diff of a batch of files) are served without decompressing it again
+     */
+    public byte[] getDiffBytes() throws IOException {
+        try {
+            return DiffRenderCache.getBytes(diffFile, "bytes", () -> {
+                try (InputStream in = openDiff()) {
+                    return in.readAllBytes();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @return stream of the gzipped diff as stored, <code>null</code> when the diff is not kept gzipped (plain or
+     *         compressed with another codec)
+     */
+    public InputStream openCompressedDiff() throws IOException {
+        if (diffFile != null) {
+            return DiffCodecs.isGzip(diffFile) ? Files.newInputStream(diffFile.toPath()) : null;
+        }
+        return compressedDiff != null && DiffCodecs.isGzip(compressedDiff) ? new ByteArrayInputStream(compressedDiff) : null;
+    }
+
+    /**
+     * @return size in bytes of the gzipped diff, -1 when the diff is not kept gzipped
+     */
+    public long getCompressedDiffSize() {
+        if (diffFile != null) {
+            return DiffCodecs.isGzip(diffFile) ? diffFile.length() : -1;
+        }
+        return compressedDiff != null && DiffCodecs.isGzip(compressedDiff) ? compressedDiff.length : -1;
+    }
+
     @Whitelisted
     public String getEscapedDiff() {
-        String diff = getDiff();
-        if (diff != null) {
-            return StringEscapeUtils.escapeEcmaScript(diff);
-        } else {
-            return "";
+        return DiffRenderCache.get(diffFile, "escaped", () -> {
+            String diff = getDiff();
+            if (diff != null) {
+                return StringEscapeUtils.escapeEcmaScript(diff);
+            } else {
+                return "";
+            }
+        });
+    }
+
+    /**
+     * @return size in bytes of the uncompressed diff, computed once (when published) without decompressing the diff
+     */
+    public long getDiffSize() {
+        if (diffSize == null) {
+            //builds published by older plugin versions
+            diffSize = LastChangesUtil.diffSize(diffFile, diff, compressedDiff);
+        }
+        return diffSize;
+    }
+
+    /**
+     * @return <code>true</code> if the diff is not empty, the diff is not read
+     */
+    @Whitelisted
+    public boolean hasChanges() {
+        return getDiffSize() > 0;
+    }
+
+    /**
+     * @return files of the diff in the order they appear, indexed when the diff was written and loaded from disk on
+     *         first access (builds published by older plugin versions index their diff on first access)
+     */
+    @Whitelisted
+    public List<FileDiff> getFiles() {
+        List<FileDiff> files = this.files;
+        if (files == null && filesFile != null) {
+            try (InputStream in = Files.newInputStream(filesFile.toPath())) {
+                files = LastChangesWireFormat.readFiles(in).files();
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Could not read files of diff from %s, the diff is indexed again.".formatted(filesFile), e);
+            }
+        }
+        if (files == null) {
+            try (InputStream diff = openDiff()) {
+                files = new ArrayList<>(DiffFiles.index(diff));
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Could not index files of diff.", e);
+                return Collections.emptyList();
+            }
         }
+        this.files = files;
+        return Collections.unmodifiableList(files);
+    }
+
+    /**
+     * @return number of lines added by the diff, computed from its files
+     */
+    @Whitelisted
+    public int getAddedLines() {
+        int added = 0;
+        for (FileDiff file : getFiles()) {
+            added += file.getAdded();
+        }
+        return added;
+    }
+
+    /**
+     * @return number of lines removed by the diff, computed from its files
+     */
+    @Whitelisted
+    public int getRemovedLines() {
+        int removed = 0;
+        for (FileDiff file : getFiles()) {
+            removed += file.getRemoved();
+        }
+        return removed;
+    }
+
+    List<FileDiff> indexedFiles() {
+        return files;
+    }
+
+    void setFiles(List<FileDiff> files) {
+        this.files = files;
     }
 
     public void addCommits(List<CommitChanges> commitChanges) {
         if (commitChanges != null) {
-            commits.addAll(commitChanges);
+            for (CommitChanges commitChange : commitChanges) {
+                addCommit(commitChange);
+            }
         }
     }
 
+    /**
+     * Adds the commit, its changes share the payload of an identical diff of these last changes (the diff or the
+     * changes of a previous commit) so they are kept, sent and stored once.
+     */
     public void addCommit(CommitChanges commitchange) {
         if (commitchange != null) {
+            shareChanges(commitchange);
             commits.add(commitchange);
         }
     }
 
+    private void shareChanges(CommitChanges commit) {
+        if (!commit.hasInlineChanges()) {
+            return;
+        }
+        if (sharedDiffs == null) {
+            sharedDiffs = new HashMap<>();
+            if (diff != null || compressedDiff != null) {
+                sharedDiffs.put(DiffDigest.of(diff, compressedDiff), -1);
+            }
+            for (int i = 0; i < commits.size(); i++) {
+                CommitChanges other = commits.get(i);
+                if (other.hasInlineChanges()) {
+                    sharedDiffs.putIfAbsent(DiffDigest.of(other.plainChanges(), other.compressedChanges()), i);
+                }
+            }
+        }
+        String digest = DiffDigest.of(commit.plainChanges(), commit.compressedChanges());
+        Integer shared = sharedDiffs.putIfAbsent(digest, commits.size());
+        if (shared == null) {
+            return;
+        }
+        if (shared < 0) {
+            commit.shareChanges(diff, compressedDiff);
+        } else {
+            CommitChanges other = commits.get(shared);
+            commit.shareChanges(other.plainChanges(), other.compressedChanges());
+        }
+    }
+
     @Whitelisted
     public List<CommitChanges> getCommits() {
         return commits;
@@ -34,10 +34,24 @@ public class LastChangesBuild {
     
     private final int number;
     private final Date time;
+    private final String currentRevision;
+    private final String previousRevision;
+    private final String diffOptions;
 
     public LastChangesBuild(int number, Date time) {
+        this(number, time, null, null);
+    }
+
+    public LastChangesBuild(int number, Date time, String currentRevision, String previousRevision) {
+        this(number, time, currentRevision, previousRevision, null);
+    }
+
+    public LastChangesBuild(int number, Date time, String currentRevision, String previousRevision, String diffOptions) {
         this.number = number;
         this.time = time;
+        this.currentRevision = currentRevision;
+        this.previousRevision = previousRevision;
+        this.diffOptions = diffOptions;
     }
 
     public int getNumber() {
@@ -47,6 +61,21 @@ public class LastChangesBuild {
     public Date getTime() {
         return time;
     }
+
+    public String getCurrentRevision() {
+        return currentRevision;
+    }
+
+    public String getPreviousRevision() {
+        return previousRevision;
+    }
+
+    /**
+     * @return key of the options the build diffs were computed with, <code>null</code> or empty for default options
+     */
+    public String getDiffOptions() {
+        return diffOptions;
+    }
     
     
 }
@@ -0,0 +1,442 @@
+package com.github.jenkins.lastchanges.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compact binary format used to send {@link LastChanges} from the node where they are computed to the controller,
+ * instead of java serialization of the whole object graph.
+ *
+ * Committer names and emails are written once and referenced afterwards, commit dates are sent as epoch millis
+ * (delta encoded: difference with the date of the previous commit info, commits are written newest first) and time
+ * zone offset. Diffs are written as
+ * length prefixed payloads (kept compressed, with the codec recorded in them, when they were compressed on the
+ * node), the node writes them as they are computed, the controller holds each one (compressed) until it is stored. A diff identical to a diff already written (e.g. the changes of a single commit) is
+ * written as a reference to it and read as the same payload.
+ *
+ * <pre>
+ * stream     := MAGIC VERSION lastChanges END
+ * lastChanges:= commitInfo(current) commitInfo(previous) diff files varint(commits) (commitInfo diff)*
+ * commitInfo := byte(0 = null | 1) string(id) string(message) interned(name) interned(email)
+ *               varlong(zigzag time - time of the previous commitInfo, 0 before the first one)
+ *               varlong(zigzag time zone offset) [interned(date), only when time is 0]
+ * diff       := byte(NONE) | byte(PLAIN | COMPRESSED) varlong(length) bytes | byte(SHARED) varint(index of written diff)
+ * files      := varint(0 = not indexed | count + 1) file*
+ * file       := string(path) string(oldPath, null when equal to path) byte(changeType) byte(binary)
+ *               varint(added) varint(removed) varint(hunks) varlong(gap since previous file) varlong(length)
+ * string     := varint(0 = null | length + 1) bytes
+ * interned   := varint(0 = null | 1 = new string, added to table | index + 2)
+ * </pre>
+ *
+ * The changes of several repositories are sent as a sequence of entries, each one holding the changes of a
+ * repository or nothing when they could not be computed: <code>entry := byte(0) | byte(1) stream</code>
+ *
+ * The files of a stored diff are kept next to it in the same format:
+ * <code>fileIndex := FILES_MAGIC FILES_VERSION varlong(diff size) files END</code>
+ */
+public final class LastChangesWireFormat {
+
+    private static final int MAGIC = 0x4C434846;//LCHF
+    static final byte VERSION = 5;
+    private static final int FILES_MAGIC = 0x4C434649;//LCFI
+    private static final byte FILES_VERSION = 1;
+    private static final byte END = 0x7F;
+
+    private static final byte DIFF_NONE = 0;
+    private static final byte DIFF_PLAIN = 1;
+    private static final byte DIFF_COMPRESSED = 2;
+    private static final byte DIFF_SHARED = 3;
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private LastChangesWireFormat() {
+    }
+
+    /**
+     * @param lastChanges changes to send
+     * @param out receives the changes, it is flushed but not closed
+     */
+    public static void write(LastChanges lastChanges, OutputStream out) throws IOException {
+        Writer writer = new Writer(new DataOutputStream(new BufferedOutputStream(out, CHUNK_SIZE)));
+        writer.out.writeInt(MAGIC);
+        writer.out.writeByte(VERSION);
+        writer.writeCommitInfo(lastChanges.getCurrentRevision());
+        writer.writeCommitInfo(lastChanges.getPreviousRevision());
+        writer.writeDiff(lastChanges.plainDiff(), lastChanges.compressedDiff(), lastChanges.storedDiff());
+        writer.writeFiles(lastChanges.indexedFiles());
+        List<CommitChanges> commits = lastChanges.getCommits();
+        writer.writeVarLong(commits.size());
+        for (CommitChanges commit : commits) {
+            writer.writeCommitInfo(commit.getCommitInfo());
+            writer.writeDiff(commit.plainChanges(), commit.compressedChanges(), commit.storedChanges());
+        }
+        writer.out.writeByte(END);
+        writer.out.flush();
+    }
+
+    /**
+     * @param in stream written by {@link #write(LastChanges, OutputStream)}, it is read until the end of the changes but not closed
+     * @return the changes, their diffs are kept in memory (as sent)
+     */
+    public static LastChanges read(InputStream in) throws IOException {
+        Reader reader = new Reader(new DataInputStream(in instanceof BufferedInputStream ? in : new BufferedInputStream(in, CHUNK_SIZE)));
+        if (reader.in.readInt() != MAGIC) {
+            throw new StreamCorruptedException("Not a last changes stream.");
+        }
+        byte version = reader.in.readByte();
+        if (version != VERSION) {
+            throw new StreamCorruptedException("Unsupported last changes stream version " + version + ".");
+        }
+        CommitInfo current = reader.readCommitInfo();
+        CommitInfo previous = reader.readCommitInfo();
+        Diff diff = reader.readDiff();
+        LastChanges lastChanges = new LastChanges(current, previous, diff.plain, diff.compressed);
+        lastChanges.setFiles(reader.readFiles());
+        long commits = reader.readVarLong();
+        for (long i = 0; i < commits; i++) {
+            CommitInfo commitInfo = reader.readCommitInfo();
+            Diff changes = reader.readDiff();
+            lastChanges.addCommit(new CommitChanges(commitInfo, changes.plain, changes.compressed));
+        }
+        if (reader.in.readByte() != END) {
+            throw new StreamCorruptedException("Last changes stream is not terminated.");
+        }
+        return lastChanges;
+    }
+
+    /**
+     * @param lastChanges changes of a repository, <code>null</code> when they could not be computed
+     * @param out receives the entry, it is flushed but not closed
+     */
+    public static void writeEntry(LastChanges lastChanges, OutputStream out) throws IOException {
+        if (lastChanges == null) {
+            out.write(0);
+            out.flush();
+            return;
+        }
+        out.write(1);
+        write(lastChanges, out);
+    }
+
+    /**
+     * @param in stream of entries written by {@link #writeEntry(LastChanges, OutputStream)}, it must be the same
+     *           (buffered) stream for all the entries
+     * @return changes of the entry, <code>null</code> when they could not be computed
+     */
+    public static LastChanges readEntry(BufferedInputStream in) throws IOException {
+        int entry = in.read();
+        if (entry < 0) {
+            throw new EOFException("Last changes stream ended before all the entries were read.");
+        }
+        if (entry == 0) {
+            return null;
+        }
+        if (entry != 1) {
+            throw new StreamCorruptedException("Invalid last changes entry " + entry + ".");
+        }
+        return read(in);
+    }
+
+    /**
+     * @param diffSize size in bytes of the uncompressed diff
+     * @param files files of the diff, <code>null</code> when it is not indexed
+     * @param out receives the file index, it is flushed but not closed
+     */
+    public static void writeFiles(long diffSize, List<FileDiff> files, OutputStream out) throws IOException {
+        Writer writer = new Writer(new DataOutputStream(new BufferedOutputStream(out, CHUNK_SIZE)));
+        writer.out.writeInt(FILES_MAGIC);
+        writer.out.writeByte(FILES_VERSION);
+        writer.writeVarLong(diffSize);
+        writer.writeFiles(files);
+        writer.out.writeByte(END);
+        writer.out.flush();
+    }
+
+    /**
+     * @param in stream written by {@link #writeFiles(long, List, OutputStream)}, it is not closed
+     * @return the file index
+     */
+    public static FileIndex readFiles(InputStream in) throws IOException {
+        Reader reader = new Reader(new DataInputStream(in instanceof BufferedInputStream ? in : new BufferedInputStream(in, CHUNK_SIZE)));
+        if (reader.in.readInt() != FILES_MAGIC) {
+            throw new StreamCorruptedException("Not a last changes file index.");
+        }
+        byte version = reader.in.readByte();
+        if (version != FILES_VERSION) {
+            throw new StreamCorruptedException("Unsupported last changes file index version " + version + ".");
+        }
+        FileIndex index = new FileIndex(reader.readVarLong(), reader.readFiles());
+        if (reader.in.readByte() != END) {
+            throw new StreamCorruptedException("Last changes file index is not terminated.");
+        }
+        return index;
+    }
+
+    /**
+     * Files of a stored diff and the size of the uncompressed diff.
+     *
+     * @param diffSize size in bytes of the uncompressed diff
+     * @param files files of the diff, <code>null</code> when it is not indexed
+     */
+    public record FileIndex(long diffSize, List<FileDiff> files) {
+    }
+
+    private static class Writer {
+
+        private final DataOutputStream out;
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final Map<String, Integer> diffs = new HashMap<>();//index of the written diffs by digest
+        private long time;//time of the last written commit info
+
+        Writer(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void writeCommitInfo(CommitInfo commitInfo) throws IOException {
+            if (commitInfo == null) {
+                out.writeByte(0);
+                return;
+            }
+            out.writeByte(1);
+            writeString(commitInfo.getCommitId());
+            writeString(commitInfo.getCommitMessage());
+            writeInterned(commitInfo.getCommitterName());
+            writeInterned(commitInfo.getCommitterEmail());
+            long delta = commitInfo.getCommitTime() - time;
+            writeVarLong((delta << 1) ^ (delta >> 63));
+            time = commitInfo.getCommitTime();
+            int offset = commitInfo.getCommitTimeZoneOffset();
+            writeVarLong((offset << 1) ^ (offset >> 31));
+            if (commitInfo.getCommitTime() == 0) {
+                writeInterned(commitInfo.getCommitDate());
+            }
+        }
+
+        void writeDiff(String plain, byte[] compressed, File stored) throws IOException {
+            String digest = plain != null || compressed != null ? DiffDigest.of(plain, compressed) : stored != null ? DiffDigest.of(stored) : null;
+            if (digest != null) {
+                Integer index = diffs.putIfAbsent(digest, diffs.size());
+                if (index != null) {
+                    out.writeByte(DIFF_SHARED);
+                    writeVarLong(index);
+                    return;
+                }
+            }
+            if (plain != null) {
+                byte[] bytes = plain.getBytes(UTF_8);
+                out.writeByte(DIFF_PLAIN);
+                writeVarLong(bytes.length);
+                out.write(bytes);
+            } else if (compressed != null) {
+                out.writeByte(DIFF_COMPRESSED);
+                writeVarLong(compressed.length);
+                out.write(compressed);
+            } else if (stored != null) {
+                out.writeByte(DIFF_COMPRESSED);
+                writeVarLong(stored.length());
+                Files.copy(stored.toPath(), out);
+            } else {
+                out.writeByte(DIFF_NONE);
+            }
+        }
+
+        void writeFiles(List<FileDiff> files) throws IOException {
+            if (files == null) {
+                writeVarLong(0);
+                return;
+            }
+            writeVarLong(files.size() + 1L);
+            long end = 0;
+            for (FileDiff file : files) {
+                writeString(file.getPath());
+                writeString(file.getOldPath() == null || file.getOldPath().equals(file.getPath()) ? null : file.getOldPath());
+                out.writeByte(file.getChangeType().ordinal());
+                out.writeByte(file.isBinary() ? 1 : 0);
+                writeVarLong(file.getAdded());
+                writeVarLong(file.getRemoved());
+                writeVarLong(file.getHunks());
+                writeVarLong(file.getOffset() - end);
+                writeVarLong(file.getLength());
+                end = file.getOffset() + file.getLength();
+            }
+        }
+
+        void writeString(String value) throws IOException {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(UTF_8);
+            writeVarLong(bytes.length + 1L);
+            out.write(bytes);
+        }
+
+        void writeInterned(String value) throws IOException {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            Integer index = strings.get(value);
+            if (index != null) {
+                writeVarLong(index + 2L);
+                return;
+            }
+            strings.put(value, strings.size());
+            writeVarLong(1);
+            writeString(value);
+        }
+
+        void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+    }
+
+    private static class Reader {
+
+        private final DataInputStream in;
+        private final List<String> strings = new ArrayList<>();
+        private final List<Diff> diffs = new ArrayList<>();
+        private long time;//time of the last read commit info
+
+        Reader(DataInputStream in) {
+            this.in = in;
+        }
+
+        CommitInfo readCommitInfo() throws IOException {
+            if (in.readByte() == 0) {
+                return null;
+            }
+            CommitInfo commitInfo = new CommitInfo()
+                    .setCommitId(readString())
+                    .setCommitMessage(readString())
+                    .setCommitterName(readInterned())
+                    .setCommitterEmail(readInterned());
+            long delta = readVarLong();
+            time += (delta >>> 1) ^ -(delta & 1);
+            int zigzag = (int) readVarLong();
+            commitInfo.setCommitTime(time, (zigzag >>> 1) ^ -(zigzag & 1));
+            if (time == 0) {
+                commitInfo.setCommitDate(readInterned());
+            }
+            return commitInfo;
+        }
+
+        Diff readDiff() throws IOException {
+            byte type = in.readByte();
+            Diff diff = switch (type) {
+                case DIFF_NONE -> new Diff(null, null);
+                case DIFF_PLAIN -> new Diff(new String(readBytes(readVarLong()), UTF_8), null);
+                case DIFF_COMPRESSED -> new Diff(null, readBytes(readVarLong()));
+                case DIFF_SHARED -> {
+                    long index = readVarLong();
+                    if (index >= diffs.size()) {
+                        throw new StreamCorruptedException("Unknown diff reference " + index + ".");
+                    }
+                    yield diffs.get((int) index);
+                }
+                default -> throw new StreamCorruptedException("Unknown diff type " + type + ".");
+            };
+            if (type == DIFF_PLAIN || type == DIFF_COMPRESSED) {
+                diffs.add(diff);
+            }
+            return diff;
+        }
+
+        List<FileDiff> readFiles() throws IOException {
+            long count = readVarLong() - 1;
+            if (count < 0) {
+                return null;
+            }
+            if (count > Integer.MAX_VALUE - 8) {
+                throw new StreamCorruptedException("Invalid number of files " + count + ".");
+            }
+            ChangeType[] changeTypes = ChangeType.values();
+            List<FileDiff> files = new ArrayList<>();
+            long offset = 0;
+            for (int i = 0; i < count; i++) {
+                String path = readString();
+                String oldPath = readString();
+                int changeType = in.readUnsignedByte();
+                if (changeType >= changeTypes.length) {
+                    throw new StreamCorruptedException("Unknown change type " + changeType + ".");
+                }
+                boolean binary = in.readByte() != 0;
+                int added = (int) readVarLong();
+                int removed = (int) readVarLong();
+                int hunks = (int) readVarLong();
+                offset += readVarLong();
+                long length = readVarLong();
+                files.add(new FileDiff(i, path, oldPath != null ? oldPath : path, changeTypes[changeType], added, removed, hunks, binary, offset, length));
+                offset += length;
+            }
+            return files;
+        }
+
+        String readString() throws IOException {
+            long length = readVarLong();
+            return length == 0 ? null : new String(readBytes(length - 1), UTF_8);
+        }
+
+        String readInterned() throws IOException {
+            long code = readVarLong();
+            if (code == 0) {
+                return null;
+            }
+            if (code == 1) {
+                String value = readString();
+                strings.add(value);
+                return value;
+            }
+            if (code - 2 >= strings.size()) {
+                throw new StreamCorruptedException("Unknown string reference " + code + ".");
+            }
+            return strings.get((int) (code - 2));
+        }
+
+        byte[] readBytes(long length) throws IOException {
+            if (length < 0 || length > Integer.MAX_VALUE - 8) {
+                throw new StreamCorruptedException("Invalid length " + length + ".");
+            }
+            byte[] bytes = new byte[(int) length];
+            in.readFully(bytes);
+            return bytes;
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = in.read();
+                if (b < 0) {
+                    throw new EOFException("Last changes stream ended unexpectedly.");
+                }
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new StreamCorruptedException("Malformed variable length number.");
+        }
+    }
+
+    private record Diff(String plain, byte[] compressed) {
+    }
+}
@@ -9,6 +9,7 @@ import com.google.inject.Inject;
 import hudson.Extension;
 import org.jenkinsci.plugins.workflow.steps.*;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 
 public class GetLastChangesPublisherStep extends AbstractStepImpl {
@@ -23,6 +24,18 @@ public class GetLastChangesPublisherStep extends AbstractStepImpl {
     private String specificRevision;
     private String vcsDir;
     private String specificBuild;
+    private Integer diffWorkers;
+    private Boolean reachableTagsOnly;
+    private Long maxDiffBytes;
+    private Long maxFileDiffBytes;
+    private Integer maxDiffFiles;
+    private Integer maxCommits;
+    private String includePaths;
+    private String excludePaths;
+    private Boolean detectRenames;
+    private Integer renameScore;
+    private Integer renameLimit;
+    private Boolean allRepositories;
 
     @DataBoundConstructor
     public GetLastChangesPublisherStep(SinceType since,
@@ -47,6 +60,114 @@ public class GetLastChangesPublisherStep extends AbstractStepImpl {
         this.specificBuild = specificBuild;
     }
 
+    public Integer getDiffWorkers() {
+        return diffWorkers;
+    }
+
+    @DataBoundSetter
+    public void setDiffWorkers(Integer diffWorkers) {
+        this.diffWorkers = diffWorkers;
+    }
+
+    public Boolean getReachableTagsOnly() {
+        return reachableTagsOnly;
+    }
+
+    @DataBoundSetter
+    public void setReachableTagsOnly(Boolean reachableTagsOnly) {
+        this.reachableTagsOnly = reachableTagsOnly;
+    }
+
+    public Long getMaxDiffBytes() {
+        return maxDiffBytes;
+    }
+
+    @DataBoundSetter
+    public void setMaxDiffBytes(Long maxDiffBytes) {
+        this.maxDiffBytes = maxDiffBytes;
+    }
+
+    public Long getMaxFileDiffBytes() {
+        return maxFileDiffBytes;
+    }
+
+    @DataBoundSetter
+    public void setMaxFileDiffBytes(Long maxFileDiffBytes) {
+        this.maxFileDiffBytes = maxFileDiffBytes;
+    }
+
+    public Integer getMaxDiffFiles() {
+        return maxDiffFiles;
+    }
+
+    @DataBoundSetter
+    public void setMaxDiffFiles(Integer maxDiffFiles) {
+        this.maxDiffFiles = maxDiffFiles;
+    }
+
+    public Integer getMaxCommits() {
+        return maxCommits;
+    }
+
+    @DataBoundSetter
+    public void setMaxCommits(Integer maxCommits) {
+        this.maxCommits = maxCommits;
+    }
+
+    public String getIncludePaths() {
+        return includePaths;
+    }
+
+    @DataBoundSetter
+    public void setIncludePaths(String includePaths) {
+        this.includePaths = includePaths;
+    }
+
+    public String getExcludePaths() {
+        return excludePaths;
+    }
+
+    @DataBoundSetter
+    public void setExcludePaths(String excludePaths) {
+        this.excludePaths = excludePaths;
+    }
+
+    public Boolean getDetectRenames() {
+        return detectRenames;
+    }
+
+    @DataBoundSetter
+    public void setDetectRenames(Boolean detectRenames) {
+        this.detectRenames = detectRenames;
+    }
+
+    public Integer getRenameScore() {
+        return renameScore;
+    }
+
+    @DataBoundSetter
+    public void setRenameScore(Integer renameScore) {
+        this.renameScore = renameScore;
+    }
+
+    public Integer getRenameLimit() {
+        return renameLimit;
+    }
+
+    @DataBoundSetter
+    public void setRenameLimit(Integer renameLimit) {
+        this.renameLimit = renameLimit;
+    }
+
+    public Boolean getAllRepositories() {
+        return allRepositories;
+    }
+
+    @DataBoundSetter
+    public void setAllRepositories(Boolean allRepositories) {
+        this.allRepositories = allRepositories;
+    }
+
     public static class Execution extends AbstractSynchronousStepExecution<LastChangesPublisherScript> {
 
         @Inject(optional = true)
@@ -66,6 +187,18 @@ public class GetLastChangesPublisherStep extends AbstractStepImpl {
                     step.specificRevision,
                     step.vcsDir,
                     step.specificBuild);
+            publisher.setDiffWorkers(step.diffWorkers);
+            publisher.setReachableTagsOnly(step.reachableTagsOnly);
+            publisher.setMaxDiffBytes(step.maxDiffBytes);
+            publisher.setMaxFileDiffBytes(step.maxFileDiffBytes);
+            publisher.setMaxDiffFiles(step.maxDiffFiles);
+            publisher.setMaxCommits(step.maxCommits);
+            publisher.setIncludePaths(step.includePaths);
+            publisher.setExcludePaths(step.excludePaths);
+            publisher.setDetectRenames(step.detectRenames);
+            publisher.setRenameScore(step.renameScore);
+            publisher.setRenameLimit(step.renameLimit);
+            publisher.setAllRepositories(step.allRepositories);
 
             return new LastChangesPublisherScript(publisher);
         }
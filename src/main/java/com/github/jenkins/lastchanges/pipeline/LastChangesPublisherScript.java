@@ -13,6 +13,7 @@ import org.jenkinsci.plugins.workflow.cps.CpsScript;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 public class LastChangesPublisherScript implements Serializable {
@@ -45,6 +46,11 @@ public class LastChangesPublisherScript implements Serializable {
     public LastChanges getLastChanges() throws Exception {
         return this.publisher.getLastChanges();
     }
+
+    @Whitelisted
+    public List<LastChanges> getRepositoriesChanges() {
+        return this.publisher.getRepositoriesChanges();
+    }
     
     @Whitelisted
     public String getHtmlDiff() throws IOException {
@@ -1,9 +1,13 @@
 window.jQueryJenkins = jQuery.noConflict();
 
+// number of files fetched (and rendered) at once when they are scrolled into view
+const FILES_PER_BATCH = 20;
+// estimated height of a diff line, used to reserve space for files not rendered yet
+const LINE_HEIGHT = 18;
+
 jQueryJenkins(document).ready(function () {
     const lastChangesData = document.querySelector(".last-changes-data").dataset;
     const {
-        buildChanges,
         format,
         matchWordsThreshold,
         matchingMaxComparisons,
@@ -11,6 +15,7 @@ jQueryJenkins(document).ready(function () {
         currentRevisionCommitId,
         previousRevisionCommitId
     } = lastChangesData;
+    const fileCount = parseInt(lastChangesData.fileCount, 10) || 0;
     const showFiles = lastChangesData.showFiles === "true";
     const synchronisedScroll = lastChangesData.synchronisedScroll === "true";
 
@@ -22,20 +27,23 @@ jQueryJenkins(document).ready(function () {
         sidePanelTD.parentNode.removeChild(sidePanelTD);
     }
 
-    if(buildChanges) {
-        var diff2htmlUi = new Diff2HtmlUI({diff: buildChanges});
-
-        diff2htmlUi.draw(`#${format}`, {
-            inputFormat: 'json',
-            outputFormat: format,
-            showFiles,
-            synchronisedScroll,
-            matchWordsThreshold,
-            matchingMaxComparisons,
-            matching
-        });
-        diff2htmlUi.fileListCloseable(format, false);
-        diff2htmlUi.highlightCode(`#${format}`);
+    if(fileCount > 0) {
+        fetch('files').then(response => {
+            if (!response.ok) {
+                throw new Error(`Could not load changed files: ${response.status}`);
+            }
+            return response.json();
+        }).then(data => {
+            renderFiles(data.files, format, showFiles, {
+                inputFormat: 'json',
+                outputFormat: format,
+                showFiles: false,
+                synchronisedScroll,
+                matchWordsThreshold,
+                matchingMaxComparisons,
+                matching
+            });
+        }).catch(error => console.error(error));
     } else {
         jQueryJenkins('#line-by-line').append(`<p style="margin-top:150px;text-align:center;font-size:14px;">No changes between revision <span style="font-weight:600;text-decoration:underline">${currentRevisionCommitId}</span> and <span style="font-weight:600;text-decoration:underline">${previousRevisionCommitId}</span> </p>`)
         jQueryJenkins('#changes-info, .d2h-show2').hide();
@@ -49,6 +57,103 @@ jQueryJenkins(document).ready(function () {
     });
 }); //end documentReady
 
+/**
+ * Creates a placeholder per file, the diff of a file is only fetched and rendered when its placeholder gets
+ * close to the viewport.
+ */
+function renderFiles(files, format, showFiles, diffOptions) {
+    const container = document.getElementById(format);
+    if (showFiles) {
+        container.appendChild(fileList(files));
+    }
+    const loadedBatches = new Set();
+    const observer = new IntersectionObserver(entries => {
+        entries.filter(entry => entry.isIntersecting).forEach(entry => {
+            const batch = Math.floor(parseInt(entry.target.dataset.index, 10) / FILES_PER_BATCH);
+            if (!loadedBatches.has(batch)) {
+                loadedBatches.add(batch);
+                loadBatch(files, batch, observer, diffOptions);
+            }
+        });
+    }, {rootMargin: '1000px 0px'});
+
+    files.forEach(file => {
+        const placeholder = document.createElement('div');
+        placeholder.id = fileElementId(file);
+        placeholder.className = 'last-changes-file-placeholder';
+        placeholder.dataset.index = file.index;
+        placeholder.style.minHeight = `${(file.added + file.removed + 3) * LINE_HEIGHT}px`;
+        placeholder.textContent = file.path;
+        container.appendChild(placeholder);
+        observer.observe(placeholder);
+    });
+}
+
+function loadBatch(files, batch, observer, diffOptions) {
+    const batchFiles = files.slice(batch * FILES_PER_BATCH, (batch + 1) * FILES_PER_BATCH);
+    fetch(`fileDiffs?start=${batchFiles[0].index}&count=${batchFiles.length}`).then(response => {
+        if (!response.ok) {
+            throw new Error(`Could not load diff of files ${batchFiles[0].path} to ${batchFiles[batchFiles.length - 1].path}: ${response.status}`);
+        }
+        return response.arrayBuffer();
+    }).then(buffer => {
+        // the response has the diff of each file one after another, file lengths are in bytes
+        const decoder = new TextDecoder('utf-8');
+        let offset = 0;
+        batchFiles.forEach(file => {
+            const fileDiff = decoder.decode(new Uint8Array(buffer, offset, file.length));
+            offset += file.length;
+            const placeholder = document.getElementById(fileElementId(file));
+            observer.unobserve(placeholder);
+            placeholder.className = '';
+            placeholder.style.minHeight = '';
+            placeholder.textContent = '';
+            const diff2htmlUi = new Diff2HtmlUI({diff: fileDiff});
+            diff2htmlUi.draw(`#${placeholder.id}`, diffOptions);
+            diff2htmlUi.highlightCode(`#${placeholder.id}`);
+        });
+    }).catch(error => console.error(error));
+}
+
+function fileList(files) {
+    const wrapper = document.createElement('div');
+    wrapper.className = 'd2h-file-list-wrapper';
+    const header = document.createElement('div');
+    header.className = 'd2h-file-list-header';
+    const title = document.createElement('span');
+    title.className = 'd2h-file-list-title';
+    title.textContent = `Files changed (${files.length})`;
+    header.appendChild(title);
+    wrapper.appendChild(header);
+    const list = document.createElement('ol');
+    list.className = 'd2h-file-list';
+    files.forEach(file => {
+        const line = document.createElement('li');
+        line.className = 'd2h-file-list-line';
+        const stats = document.createElement('span');
+        stats.className = 'd2h-file-stats';
+        stats.innerHTML = '<span class="d2h-lines-added"></span><span class="d2h-lines-deleted"></span>';
+        stats.firstChild.textContent = `+${file.added}`;
+        stats.lastChild.textContent = `-${file.removed}`;
+        const name = document.createElement('span');
+        name.className = 'd2h-file-name-wrapper';
+        const link = document.createElement('a');
+        link.className = 'd2h-file-name';
+        link.href = `#${fileElementId(file)}`;
+        link.textContent = file.oldPath && file.oldPath !== file.path ? `${file.oldPath} \u2192 ${file.path}` : file.path;
+        name.appendChild(link);
+        name.appendChild(stats);
+        line.appendChild(name);
+        list.appendChild(line);
+    });
+    wrapper.appendChild(list);
+    return wrapper;
+}
+
+function fileElementId(file) {
+    return `last-changes-file-${file.index}`;
+}
+
 function showCommits() {
     jQueryJenkins('.d2h-show2').hide();
     jQueryJenkins('.d2h-hide2, #commits').show();
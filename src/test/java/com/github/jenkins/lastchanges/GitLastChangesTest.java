@@ -2,23 +2,48 @@ package com.github.jenkins.lastchanges;
 
 import com.github.jenkins.lastchanges.exception.GitTreeNotFoundException;
 import com.github.jenkins.lastchanges.exception.RepositoryNotFoundException;
+import com.github.jenkins.lastchanges.impl.DiffCache;
+import com.github.jenkins.lastchanges.impl.GitChangesSession;
+import com.github.jenkins.lastchanges.impl.GitCommitChangesEngine;
 import com.github.jenkins.lastchanges.impl.GitLastChanges;
+import com.github.jenkins.lastchanges.model.ChangeType;
+import com.github.jenkins.lastchanges.model.CommitChanges;
+import com.github.jenkins.lastchanges.model.CommitInfo;
+import com.github.jenkins.lastchanges.model.DiffOptions;
+import com.github.jenkins.lastchanges.model.FileDiff;
 import com.github.jenkins.lastchanges.model.LastChanges;
+import com.github.jenkins.lastchanges.model.LastChangesWireFormat;
 import hudson.Functions;
+import org.apache.commons.lang3.StringEscapeUtils;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StringWriter;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.TimeZone;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
 
 import static com.github.jenkins.lastchanges.impl.GitLastChanges.repository;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -68,6 +93,8 @@ class GitLastChangesTest {
         assertThat(lastChanges.getCurrentRevision()).isNotNull();
         assertThat(lastChanges.getCurrentRevision().getCommitMessage()).isEqualTo("Added javadoc\n");
         assertThat(lastChanges.getCurrentRevision().getCommitId()).isEqualTo("27ad83a8fbee4b551670a03fc035bf87f7a3bcfb");
+        assertThat(lastChanges.getCurrentRevision().getCommitTimeZoneOffset()).isEqualTo(120);
+        assertThat(lastChanges.getCurrentRevision().getCommitDate()).endsWith(" GMT+02:00");
 
         assertThat(lastChanges.getDiff()).isEqualToIgnoringWhitespace(("diff --git a/kotlinee-framework/src/main/java/com/github/kotlinee/framework/vaadin/VaadinUtils.kt b/kotlinee-framework/src/main/java/com/github/kotlinee/framework/vaadin/VaadinUtils.kt" + newLine +
                 "index 6d28c9b..bcc2ac0 100644" + newLine +
@@ -141,4 +168,431 @@ class GitLastChangesTest {
             assertThat(e.getMessage()).isEqualTo("Could not find previous head of repository located at %s. Its your first commit?".formatted(file.getAbsolutePath()));
         }
     }
+
+    @Test
+    void shouldResolveLastTagReachableFromHead() {
+        String repositoryLocation = GitLastChangesTest.class.getResource("/git-with-tags-repo").getFile();
+        try (GitChangesSession session = GitChangesSession.open(repositoryLocation)) {
+            ObjectId newestTag = GitLastChanges.getInstance().getLastTagRevision(session, false);
+            ObjectId reachableTag = GitLastChanges.getInstance().getLastTagRevision(session, true);
+            assertThat(newestTag.name()).isEqualTo("11445cc8b27f35312876c5e9d30b64a5802b3b59");
+            assertThat(reachableTag).isEqualTo(newestTag);
+        }
+    }
+
+    @Test
+    void shouldGetCommitChangesInParallelKeepingCommitsOrder() throws Exception {
+        Repository repository = repository(gitRepoPath);
+        List<CommitInfo> commits = GitLastChanges.getInstance().getCommitsBetweenRevisions(repository, repository.resolve("HEAD"), repository.resolve("HEAD~10"));
+        assertThat(commits).hasSize(10);
+
+        List<CommitChanges> sequential = new GitCommitChangesEngine(repository, 1).changesOf(commits);
+        List<CommitChanges> parallel = new GitCommitChangesEngine(repository, 4).changesOf(commits);
+
+        assertThat(parallel).hasSize(commits.size());
+        for (int i = 0; i < commits.size(); i++) {
+            assertThat(parallel.get(i).getCommitInfo()).isEqualTo(commits.get(i));
+            assertThat(parallel.get(i).getChanges()).isEqualTo(sequential.get(i).getChanges());
+        }
+        assertThat(parallel.get(0).getChanges()).startsWith("diff --git a/kotlinee-framework/src/main/java/com/github/kotlinee/framework/vaadin/VaadinUtils.kt");
+    }
+
+    @Test
+    void shouldStoreDiffsOutsideOfLastChanges(@TempDir Path buildDir) throws Exception {
+        LastChanges lastChanges = GitLastChanges.getInstance().changesOf(repository(gitRepoPath));
+        lastChanges.addCommit(CommitChanges.of(lastChanges.getCurrentRevision(), lastChanges));
+        String diff = lastChanges.getDiff();
+        assertThat(lastChanges.hasInlineDiffs()).isTrue();
+
+        File diffsDir = buildDir.resolve("last-changes").toFile();
+        lastChanges.storeDiffs(diffsDir);
+
+        assertThat(lastChanges.hasInlineDiffs()).isFalse();
+        assertThat(diffsDir.list()).containsExactlyInAnyOrder("changes.diff.gz", "changes.files", "commit-27ad83a8fbee4b551670a03fc035bf87f7a3bcfb.diff.gz");
+        assertThat(lastChanges.getDiff()).isEqualTo(diff);
+
+        //simulates build record reload
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(lastChanges);
+        }
+        LastChanges loaded;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            loaded = (LastChanges) in.readObject();
+        }
+        loaded.attachDiffs(diffsDir);
+        assertThat(loaded.getDiff()).isEqualTo(diff);
+        assertThat(loaded.getCommits().get(0).getChanges()).isEqualTo(diff);
+    }
+
+    @Test
+    void shouldReportSkippedCommitsWhichChangesCouldNotBeReused(@TempDir Path buildDir) throws Exception {
+        CommitInfo reused = new CommitInfo().setCommitId("27ad83a8fbee4b551670a03fc035bf87f7a3bcfb");
+        CommitInfo deleted = new CommitInfo().setCommitId("c90d87de4d02cb5182629e09120cec053bfb3a00");
+        LastChanges previous = GitLastChanges.getInstance().changesOf(repository(gitRepoPath));
+        previous.addCommit(CommitChanges.of(reused, previous));
+        previous.addCommit(CommitChanges.of(deleted, previous));
+        File previousDir = buildDir.resolve("previous").toFile();
+        previous.storeDiffs(previousDir);
+        Map<String, File> storedChanges = LastChanges.storedCommitChanges(previousDir);
+        //changes skipped by the node, the build storing the changes of a commit is deleted before they are reused
+        LastChanges lastChanges = GitLastChanges.getInstance().changesOf(repository(gitRepoPath));
+        lastChanges.addCommit(new CommitChanges(reused, null));
+        lastChanges.addCommit(new CommitChanges(deleted, null));
+        Files.delete(storedChanges.get(deleted.getCommitId()).toPath());
+
+        File diffsDir = buildDir.resolve("last-changes").toFile();
+        lastChanges.storeDiffs(diffsDir);
+
+        assertThat(lastChanges.reuseCommitChanges(storedChanges, diffsDir)).isEqualTo(1);
+        assertThat(lastChanges.getCommitsWithoutChanges()).containsExactly(deleted);
+    }
+
+    @Test
+    void shouldStreamDownloadsFromStoredDiff(@TempDir Path buildDir) throws Exception {
+        LastChanges lastChanges = GitLastChanges.getInstance().changesOf(repository(gitRepoPath));
+        String diff = lastChanges.getDiff();
+        lastChanges.storeDiffs(buildDir.toFile());
+
+        try (InputStream compressed = new GZIPInputStream(lastChanges.openCompressedDiff())) {
+            assertThat(new String(compressed.readAllBytes(), UTF_8)).isEqualTo(diff);
+        }
+        assertThat(lastChanges.getCompressedDiffSize()).isPositive().isLessThan(lastChanges.getDiffSize());
+        StringWriter html = new StringWriter();
+        LastChangesUtil.writeHtmlDiff(lastChanges, "build #1", html);
+        assertThat(html.toString())
+                .contains("Changes of build build #1")
+                .contains(StringEscapeUtils.escapeEcmaScript(diff))
+                .doesNotContain("[DIFF]");
+        assertThat(DownloadRenderer.acceptsGzip("deflate, gzip;q=0.8")).isTrue();
+        assertThat(DownloadRenderer.acceptsGzip("gzip;q=0, *")).isFalse();
+        assertThat(DownloadRenderer.parseRange("bytes=100-199", 1000)).containsExactly(100, 199);
+        assertThat(DownloadRenderer.parseRange("bytes=-100", 1000)).containsExactly(900, 999);
+        assertThat(DownloadRenderer.parseRange("bytes=1000-", 1000)).isEmpty();
+        assertThat(DownloadRenderer.parseRange("bytes=0-1,5-6", 1000)).isNull();
+    }
+
+    @Test
+    void shouldWriteHtmlTemplateInSinglePass() throws Exception {
+        HtmlDiffTemplate template = HtmlDiffTemplate.parse("<h1>[TITLE]</h1>[UNKNOWN] [CURRENT_MESSAGE] by [CURRENT_AUTHOR] '[DIFF]'");
+        LastChanges lastChanges = new LastChanges(new CommitInfo().setCommitId("1").setCommitMessage("fixes [DIFF]"), null, "+'quoted'\n");
+
+        StringWriter html = new StringWriter();
+        template.write(lastChanges, "job #1", html);
+
+        //values are not substituted again and placeholders without value are left empty
+        assertThat(html.toString()).isEqualTo("<h1>Changes of build job #1</h1>[UNKNOWN] fixes [DIFF] by  '+\\'quoted\\'\\n'");
+    }
+
+    @Test
+    void shouldReadDiffsOfAnyCodec() throws Exception {
+        Repository repository = repository(gitRepoPath);
+        LastChanges lastChanges = GitLastChanges.getInstance().changesOf(repository, repository.resolve("HEAD^{tree}"), repository.resolve("HEAD~15^{tree}"));
+        String diff = lastChanges.getDiff() + "\r\n+windows line\r\n";
+
+        for (String codec : DiffCodecs.names()) {
+            try (CompressingDiffOutputStream diffStream = new CompressingDiffOutputStream(1, new DiffOptions().setDiffCodec(codec).setCompressionLevel(9))) {
+                diffStream.write(diff.getBytes(UTF_8));
+                byte[] compressed = diffStream.toByteArray();
+
+                //read back with the codec recorded in the diff, whatever the default codec
+                assertThat(LastChangesUtil.decompress(compressed)).as(codec).isEqualTo(diff);
+                assertThat(DiffCodecs.uncompressedSize(compressed)).as(codec).isEqualTo(diff.getBytes(UTF_8).length);
+                assertThat(DiffCodecs.isGzip(compressed)).as(codec).isEqualTo(codec.equals(DiffCodecs.GZIP));
+            }
+        }
+    }
+
+    @Test
+    void shouldCompressStreamedDiffOnceItReachesThreshold() throws Exception {
+        Repository repository = repository(gitRepoPath);
+        ObjectId head = repository.resolve("HEAD^{tree}");
+        ObjectId previous = repository.resolve("HEAD~15^{tree}");
+        LastChanges lastChanges = GitLastChanges.getInstance().changesOf(repository, head, previous);
+        byte[] diff;
+        try (InputStream diffStream = lastChanges.openDiff()) {
+            diff = diffStream.readAllBytes();
+        }
+
+        CompressingDiffOutputStream small = new CompressingDiffOutputStream(diff.length + 1);
+        CompressingDiffOutputStream big = new CompressingDiffOutputStream(diff.length / 2);
+        try (ObjectReader reader = repository.newObjectReader(); small; big) {
+            GitLastChanges.getInstance().diffOf(repository, reader, head, previous, small);
+            GitLastChanges.getInstance().diffOf(repository, reader, head, previous, big);
+        }
+
+        //under the threshold the diff is kept as is
+        assertThat(small.isCompressed()).isFalse();
+        assertThat(small.toString()).isEqualTo(new String(diff, UTF_8));
+        //over the threshold the diff is compressed while written and never converted to a String
+        assertThat(big.isCompressed()).isTrue();
+        assertThat(big.size()).isEqualTo(diff.length);
+        assertThat(big.toByteArray().length).isLessThan(diff.length);
+        assertThrows(IllegalStateException.class, big::toString);
+        assertThat(DiffCodecs.decompress(big.toByteArray())).isEqualTo(diff);
+        assertThat(big.getFiles()).extracting(FileDiff::getPath, FileDiff::getOffset, FileDiff::getLength)
+                .containsExactlyElementsOf(lastChanges.getFiles().stream().map(file -> tuple(file.getPath(), file.getOffset(), file.getLength())).toList());
+        assertThat(new LastChanges(null, null, big).getDiff()).isEqualTo(new String(diff, UTF_8));
+    }
+
+    @Test
+    void shouldIndexFilesOfDiff() throws Exception {
+        Repository repository = repository(gitRepoPath);
+        LastChanges lastChanges = GitLastChanges.getInstance().changesOf(repository, repository.resolve("HEAD^{tree}"), repository.resolve("HEAD~15^{tree}"));
+        byte[] diff;
+        try (InputStream diffStream = lastChanges.openDiff()) {
+            diff = diffStream.readAllBytes();
+        }
+
+        List<FileDiff> files = DiffFiles.index(new ByteArrayInputStream(diff));
+
+        assertThat(files).hasSize(10);
+        assertThat(files.get(0).getPath()).isEqualTo("README.md");
+        assertThat(files.get(0).getAdded()).isEqualTo(91);
+        assertThat(files.get(0).getRemoved()).isEqualTo(2);
+        assertThat(files.stream().mapToLong(FileDiff::getLength).sum()).isEqualTo(diff.length);
+        assertThat(files.get(0).getHunks()).isEqualTo(4);
+        assertThat(files.get(5).getPath()).endsWith("GridUtils.kt");
+        assertThat(files.get(5).getChangeType()).isEqualTo(ChangeType.ADDED);
+        assertThat(files).filteredOn(file -> file.getChangeType() == ChangeType.MODIFIED).hasSize(9);
+        //indexed while the diff was written
+        assertThat(lastChanges.getFiles()).extracting(FileDiff::getPath, FileDiff::getChangeType, FileDiff::getAdded, FileDiff::getRemoved, FileDiff::getHunks, FileDiff::getOffset, FileDiff::getLength)
+                .containsExactlyElementsOf(files.stream().map(file -> tuple(file.getPath(), file.getChangeType(), file.getAdded(), file.getRemoved(), file.getHunks(), file.getOffset(), file.getLength())).toList());
+        assertThat(lastChanges.getAddedLines()).isEqualTo(312);
+        assertThat(lastChanges.getRemovedLines()).isEqualTo(129);
+        ByteArrayOutputStream fileDiffs = new ByteArrayOutputStream();
+        try (InputStream diffStream = lastChanges.openDiff()) {
+            DiffFiles.copy(diffStream, files.get(8), files.get(9), fileDiffs);
+        }
+        assertThat(fileDiffs.toString(UTF_8))
+                .startsWith("diff --git a/kotlinee-framework/src/main/java/com/github/kotlinee/framework/vaadin/VaadinUtils.kt")
+                .isEqualTo(new String(diff, (int) files.get(8).getOffset(), (int) (files.get(8).getLength() + files.get(9).getLength()), UTF_8));
+    }
+
+    @Test
+    void shouldIndexCommitsByTreeOnce() throws Exception {
+        try (GitChangesSession session = GitChangesSession.open(gitRepoPath)) {
+            RevCommit head = session.walk().parseCommit(session.resolve("HEAD"));
+            RevCommit older = session.walk().parseCommit(session.resolve("HEAD~5"));
+
+            assertThat(session.commitOfTree(older.getTree().getId()).getTree()).isEqualTo(older.getTree());
+            long walked = session.getTreeIndexWalkedCommits();
+            assertThat(session.commitOfTree(head.getTree().getId())).isEqualTo(head);
+            assertThat(session.getTreeIndexWalkedCommits()).isEqualTo(walked);
+
+            //an unknown tree walks the rest of the history once
+            assertThat(session.commitOfTree(ObjectId.zeroId())).isNull();
+            long allWalked = session.getTreeIndexWalkedCommits();
+            assertThat(allWalked).isGreaterThan(walked);
+            assertThat(session.commitOfTree(ObjectId.zeroId())).isNull();
+            assertThat(session.getTreeIndexWalkedCommits()).isEqualTo(allWalked);
+        }
+    }
+
+    @Test
+    void shouldReuseCachedDiffBetweenSameTrees(@TempDir Path cacheDir) throws Exception {
+        DiffCache diffCache = DiffCache.of(cacheDir.toFile(), 1024 * 1024);
+
+        LastChanges lastChanges;
+        try (GitChangesSession session = GitChangesSession.open(gitRepoPath).setDiffCache(diffCache)) {
+            lastChanges = GitLastChanges.getInstance().changesOf(session);
+        }
+        assertThat(diffCache.getMisses()).isEqualTo(1);
+        assertThat(diffCache.getHits()).isZero();
+
+        LastChanges cachedLastChanges;
+        try (GitChangesSession session = GitChangesSession.open(gitRepoPath).setDiffCache(diffCache)) {
+            cachedLastChanges = GitLastChanges.getInstance().changesOf(session);
+        }
+        assertThat(diffCache.getHits()).isEqualTo(1);
+        assertThat(cachedLastChanges.getDiff()).isEqualTo(lastChanges.getDiff());
+        assertThat(cachedLastChanges.getCurrentRevision()).isEqualTo(lastChanges.getCurrentRevision());
+    }
+
+    @Test
+    void shouldReturnCachedDiffAsStored(@TempDir Path cacheDir) throws Exception {
+        DiffCache diffCache = DiffCache.of(cacheDir.toFile(), 1024 * 1024);
+        Repository repository = repository(gitRepoPath);
+        LastChanges lastChanges = GitLastChanges.getInstance().changesOf(repository, repository.resolve("HEAD"), repository.resolve("HEAD~15"));
+        CompressingDiffOutputStream diff = new CompressingDiffOutputStream(0);
+        try (InputStream in = lastChanges.openDiff()) {
+            in.transferTo(diff);
+        }
+        diff.close();
+        String key = DiffCache.key("test", "HEAD~15", "HEAD");
+
+        diffCache.put(key, diff);
+        long size = diffCache.getSize();
+        //replacing a cached diff does not count it twice
+        diffCache.put(key, diff);
+        CompressingDiffOutputStream cachedDiff = diffCache.get(key);
+
+        assertThat(diffCache.getSize()).isEqualTo(size).isEqualTo(diff.toByteArray().length);
+        assertThat(cachedDiff.isCompressed()).isTrue();
+        assertThat(cachedDiff.toByteArray()).isEqualTo(diff.toByteArray());
+        assertThat(cachedDiff.size()).isEqualTo(diff.size());
+        assertThat(cachedDiff.getFiles()).extracting(FileDiff::getPath, FileDiff::getChangeType, FileDiff::getAdded, FileDiff::getRemoved, FileDiff::getOffset, FileDiff::getLength)
+                .containsExactlyElementsOf(lastChanges.getFiles().stream().map(file -> tuple(file.getPath(), file.getChangeType(), file.getAdded(), file.getRemoved(), file.getOffset(), file.getLength())).toList());
+    }
+
+    @Test
+    void shouldReturnCachedDiffInTheFormItWasProduced(@TempDir Path cacheDir) throws Exception {
+        DiffCache diffCache = DiffCache.of(cacheDir.toFile(), 1024 * 1024);
+        CompressingDiffOutputStream diff = new CompressingDiffOutputStream(Long.MAX_VALUE);
+        diff.write("diff --git a/file b/file\n+line\n".getBytes(UTF_8));
+        diff.close();
+        String key = DiffCache.key("test", "plain");
+
+        diffCache.put(key, diff);
+        DiffCache otherBuildCache = DiffCache.of(cacheDir.toFile(), 1024 * 1024);
+        CompressingDiffOutputStream cachedDiff = otherBuildCache.get(key);
+
+        //a hit holds the same payload as the miss which cached it
+        assertThat(cachedDiff.isCompressed()).isFalse();
+        assertThat(cachedDiff.toString()).isEqualTo(diff.toString());
+        assertThat(new LastChanges(null, null, cachedDiff).getDiff()).isEqualTo(new LastChanges(null, null, diff).getDiff());
+        //caches of the same directory share their diffs, not their statistics
+        assertThat(otherBuildCache.getHits()).isEqualTo(1);
+        assertThat(diffCache.getHits()).isZero();
+    }
+
+    @Test
+    void shouldSendLastChangesInWireFormat() throws Exception {
+        Repository repository = repository(gitRepoPath);
+        ObjectId head = repository.resolve("HEAD");
+        ObjectId previous = repository.resolve("HEAD~15");
+        LastChanges lastChanges = GitLastChanges.getInstance().changesOf(repository, head, previous);
+        List<CommitInfo> commits = GitLastChanges.getInstance().getCommitsBetweenRevisions(repository, head, previous);
+        lastChanges.addCommits(new GitCommitChangesEngine(repository, 2).changesOf(commits));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LastChangesWireFormat.write(lastChanges, out);
+        LastChanges received = LastChangesWireFormat.read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertThat(received.getDiff()).isEqualTo(lastChanges.getDiff());
+        assertThat(received.getCurrentRevision().toString()).isEqualTo(lastChanges.getCurrentRevision().toString());
+        assertThat(received.getPreviousRevision().toString()).isEqualTo(lastChanges.getPreviousRevision().toString());
+        assertThat(received.getFiles()).extracting(FileDiff::getPath, FileDiff::getOffset, FileDiff::getLength, FileDiff::getHunks)
+                .containsExactlyElementsOf(lastChanges.getFiles().stream().map(file -> tuple(file.getPath(), file.getOffset(), file.getLength(), file.getHunks())).toList());
+        assertThat(received.getCommits()).hasSize(15);
+        for (int i = 0; i < commits.size(); i++) {
+            assertThat(received.getCommits().get(i).getCommitInfo().toString()).isEqualTo(lastChanges.getCommits().get(i).getCommitInfo().toString());
+            assertThat(received.getCommits().get(i).getChanges()).isEqualTo(lastChanges.getCommits().get(i).getChanges());
+        }
+    }
+
+    @Test
+    void shouldSendAndStoreIdenticalDiffsOnce(@TempDir Path diffsDir) throws Exception {
+        Repository repository = repository(gitRepoPath);
+        ObjectId head = repository.resolve("HEAD");
+        ObjectId previous = repository.resolve("HEAD~1");
+        LastChanges lastChanges = GitLastChanges.getInstance().changesOf(repository, head, previous);
+        ByteArrayOutputStream withoutCommits = new ByteArrayOutputStream();
+        LastChangesWireFormat.write(lastChanges, withoutCommits);
+        //the changes of the single commit between the revisions are the diff itself
+        List<CommitInfo> commits = GitLastChanges.getInstance().getCommitsBetweenRevisions(repository, head, previous);
+        lastChanges.addCommits(new GitCommitChangesEngine(repository, 1).changesOf(commits));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LastChangesWireFormat.write(lastChanges, out);
+        LastChanges received = LastChangesWireFormat.read(new ByteArrayInputStream(out.toByteArray()));
+        received.storeDiffs(diffsDir.toFile());
+
+        assertThat(received.getCommits()).hasSize(1);
+        assertThat(out.size() - withoutCommits.size()).isLessThan(1000);
+        assertThat(received.getCommits().get(0).getChanges()).isEqualTo(lastChanges.getDiff());
+        assertThat(received.getCommits().get(0).getChangesSize()).isEqualTo(received.getDiffSize());
+        assertThat(diffsDir.resolve("commit-" + head.getName() + ".diff.gz")).hasSameBinaryContentAs(diffsDir.resolve("changes.diff.gz"));
+    }
+
+    @Test
+    void shouldSummarizeFilesExceedingDiffLimits() throws Exception {
+        LastChanges lastChanges;
+        try (GitChangesSession session = GitChangesSession.open(gitRepoPath).setDiffOptions(new DiffOptions().setMaxFileBytes(2000).setMaxFiles(5))) {
+            Repository repository = session.getRepository();
+            lastChanges = GitLastChanges.getInstance().changesOf(session, repository.resolve("HEAD"), repository.resolve("HEAD~15"));
+        }
+        String diff = lastChanges.getDiff();
+
+        List<FileDiff> files = DiffFiles.index(new ByteArrayInputStream(diff.getBytes(UTF_8)));
+
+        assertThat(files).hasSize(5);
+        assertThat(files.get(0).getPath()).isEqualTo("README.md");
+        assertThat(files.get(0).getAdded()).isEqualTo(91);
+        assertThat(files.get(0).getRemoved()).isEqualTo(2);
+        assertThat(diff).contains("file README.md: +91/-2, diff omitted (file diff exceeds 2000 bytes)")
+                .doesNotContain("@@ -12,6 +12,95 @@")
+                .endsWith("5 more file(s) omitted, diff exceeds 5 files." + System.lineSeparator());
+    }
+
+    @Test
+    void shouldSummarizeAddedFilesExceedingFileLimitWithoutFormattingThem() throws Exception {
+        List<FileDiff> files;
+        List<FileDiff> limitedFiles;
+        String limitedDiff;
+        try (GitChangesSession session = GitChangesSession.open(gitRepoPath)) {
+            Repository repository = session.getRepository();
+            String diff = GitLastChanges.getInstance().changesOf(session, repository.resolve("HEAD"), repository.resolve("HEAD~15")).getDiff();
+            files = DiffFiles.index(new ByteArrayInputStream(diff.getBytes(UTF_8)));
+        }
+        try (GitChangesSession session = GitChangesSession.open(gitRepoPath).setDiffOptions(new DiffOptions().setMaxFileBytes(500))) {
+            Repository repository = session.getRepository();
+            limitedDiff = GitLastChanges.getInstance().changesOf(session, repository.resolve("HEAD"), repository.resolve("HEAD~15")).getDiff();
+            limitedFiles = DiffFiles.index(new ByteArrayInputStream(limitedDiff.getBytes(UTF_8)));
+        }
+
+        //GridUtils.kt is added, its lines are counted from its blob
+        assertThat(limitedDiff).contains("file kotlinee-framework/src/main/java/com/github/kotlinee/framework/vaadin/GridUtils.kt: +80/-0, diff omitted (file diff exceeds 500 bytes)");
+        assertThat(limitedFiles).extracting(FileDiff::getPath, FileDiff::getAdded, FileDiff::getRemoved)
+                .containsExactlyElementsOf(files.stream().map(file -> tuple(file.getPath(), file.getAdded(), file.getRemoved())).toList());
+    }
+
+    @Test
+    void shouldGetChangesOfFilteredPathsOnly() throws Exception {
+        DiffOptions diffOptions = new DiffOptions().setIncludes(List.of("kotlinee-framework")).setExcludes(List.of("**/*Test.kt"));
+        try (GitChangesSession session = GitChangesSession.open(gitRepoPath).setDiffOptions(diffOptions)) {
+            Repository repository = session.getRepository();
+            ObjectId head = repository.resolve("HEAD");
+            ObjectId previous = repository.resolve("HEAD~15");
+            LastChanges lastChanges = GitLastChanges.getInstance().changesOf(session, head, previous);
+            List<CommitInfo> commits = GitLastChanges.getInstance().getCommitsBetweenRevisions(session, head, previous);
+
+            List<FileDiff> files = DiffFiles.index(new ByteArrayInputStream(lastChanges.getDiff().getBytes(UTF_8)));
+
+            assertThat(files).hasSize(4)
+                    .allMatch(file -> file.getPath().startsWith("kotlinee-framework/src/main/"));
+            assertThat(commits).hasSize(7);
+        }
+    }
+
+    @Test
+    void shouldDetectRenamedFilesWhenEnabled() throws Exception {
+        String movedFile = "kotlinee-framework/src/main/java/com/github/kotlinee/framework/VaadinDSL.kt";
+        List<FileDiff> renames;
+        try (GitChangesSession session = GitChangesSession.open(gitRepoPath).setDiffOptions(new DiffOptions().setDetectRenames(true))) {
+            Repository repository = session.getRepository();
+            LastChanges lastChanges = GitLastChanges.getInstance().changesOf(session, repository.resolve("ef5433a0cef51e2d86a28d012b31283daefdabf3"), repository.resolve("ef5433a0cef51e2d86a28d012b31283daefdabf3~"));
+            renames = DiffFiles.index(new ByteArrayInputStream(lastChanges.getDiff().getBytes(UTF_8)));
+        }
+        //over the rename limit only files with identical content would be renames
+        List<FileDiff> exactRenames;
+        try (GitChangesSession session = GitChangesSession.open(gitRepoPath).setDiffOptions(new DiffOptions().setDetectRenames(true).setRenameLimit(1))) {
+            Repository repository = session.getRepository();
+            LastChanges lastChanges = GitLastChanges.getInstance().changesOf(session, repository.resolve("ef5433a0cef51e2d86a28d012b31283daefdabf3"), repository.resolve("ef5433a0cef51e2d86a28d012b31283daefdabf3~"));
+            exactRenames = DiffFiles.index(new ByteArrayInputStream(lastChanges.getDiff().getBytes(UTF_8)));
+        }
+
+        assertThat(renames).hasSize(9)
+                .anySatisfy(file -> {
+                    assertThat(file.getOldPath()).isEqualTo(movedFile);
+                    assertThat(file.getPath()).isEqualTo("kotlinee-framework/src/main/java/com/github/kotlinee/framework/vaadin/VaadinDSL.kt");
+                    assertThat(file.getAdded()).isEqualTo(2);
+                    assertThat(file.getRemoved()).isEqualTo(2);
+                });
+        assertThat(exactRenames).hasSize(13)
+                .anySatisfy(file -> {
+                    assertThat(file.getPath()).isEqualTo(movedFile);
+                    assertThat(file.getRemoved()).isEqualTo(143);
+                });
+    }
 }
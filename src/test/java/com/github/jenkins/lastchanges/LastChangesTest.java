@@ -2,11 +2,17 @@ package com.github.jenkins.lastchanges;
 
 import com.github.jenkins.lastchanges.model.CommitChanges;
 import com.github.jenkins.lastchanges.model.CommitInfo;
+import com.github.jenkins.lastchanges.model.FileDiff;
 import com.github.jenkins.lastchanges.model.FormatType;
 import com.github.jenkins.lastchanges.model.LastChanges;
+import com.github.jenkins.lastchanges.model.LastChangesBuild;
 import com.github.jenkins.lastchanges.model.MatchingType;
 import com.github.jenkins.lastchanges.model.SinceType;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
 import hudson.model.Actionable;
+import hudson.model.BuildListener;
 import hudson.model.FreeStyleBuild;
 import hudson.model.FreeStyleProject;
 import hudson.model.Result;
@@ -18,19 +24,26 @@ import hudson.scm.SubversionSCM.ModuleLocation;
 import hudson.slaves.DumbSlave;
 import jenkins.plugins.git.GitSampleRepoRule;
 import jenkins.plugins.git.junit.jupiter.WithGitSampleRepo;
+import net.sf.json.JSONObject;
+import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.jvnet.hudson.test.Issue;
 import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
 import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -40,6 +53,7 @@ import java.util.logging.Logger;
 import java.util.logging.StreamHandler;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 
 @WithJenkins
 @WithGitSampleRepo
@@ -119,6 +133,8 @@ class LastChangesTest {
         assertThat(lastChanges.getCurrentRevision()).isNotNull();
         assertThat(lastChanges.getCurrentRevision().getCommitMessage()).isEqualTo("Added javadoc\n");
         assertThat(lastChanges.getCurrentRevision().getCommitId()).isEqualTo("27ad83a8fbee4b551670a03fc035bf87f7a3bcfb");
+        assertThat(lastChanges.hasChanges()).isTrue();
+        assertThat(lastChanges.getDiffSize()).isEqualTo(lastChanges.getDiff().getBytes(StandardCharsets.UTF_8).length);
 
         final String diff = ("diff --git a/kotlinee-framework/src/main/java/com/github/kotlinee/framework/vaadin/VaadinUtils.kt b/kotlinee-framework/src/main/java/com/github/kotlinee/framework/vaadin/VaadinUtils.kt" + newLine +
                 "index 6d28c9b..bcc2ac0 100644" + newLine +
@@ -164,6 +180,200 @@ class LastChangesTest {
         jenkins.assertLogContains("Last changes from revision 27ad83a (current) to a511a43 (previous) published successfully!", build);
     }
 
+    @Test
+    void shouldIndexBuildsPublishingLastChanges() throws Exception {
+
+        // given
+        List<UserRemoteConfig> remoteConfigs = new ArrayList<>();
+        remoteConfigs.add(new UserRemoteConfig(sampleRepoDir.getAbsolutePath(), "origin", "", null));
+        List<BranchSpec> branches = new ArrayList<>();
+        branches.add(new BranchSpec("master"));
+        GitSCM scm = new GitSCM(remoteConfigs, branches, false,
+                Collections.emptyList(), null, null,
+                Collections.singletonList(new DisableRemotePoll()));
+        FreeStyleProject project = jenkins.createFreeStyleProject("git-test");
+        project.setScm(scm);
+        LastChangesPublisher publisher = new LastChangesPublisher(SinceType.PREVIOUS_REVISION, FormatType.LINE, MatchingType.NONE, true, false, "0.50", "1500", null, null, null);
+        project.getPublishersList().add(publisher);
+        project.save();
+
+        // when
+        FreeStyleBuild firstBuild = jenkins.buildAndAssertSuccess(project);
+        FreeStyleBuild secondBuild = jenkins.buildAndAssertSuccess(project);
+
+        // then
+        List<LastChangesBuild> indexedBuilds = LastChangesIndex.of(project).getBuilds();
+        assertThat(indexedBuilds).extracting(LastChangesBuild::getNumber).containsExactly(secondBuild.getNumber(), firstBuild.getNumber());
+        assertThat(indexedBuilds.get(0).getCurrentRevision()).isEqualTo("27ad83a8fbee4b551670a03fc035bf87f7a3bcfb");
+        assertThat(new File(project.getRootDir(), LastChangesIndex.INDEX_FILE)).exists();
+        assertThat(project.getAction(LastChangesProjectAction.class).getLastChangesBuilds()).hasSize(2);
+
+        secondBuild.delete();
+        assertThat(LastChangesIndex.of(project).getBuilds()).extracting(LastChangesBuild::getNumber).containsExactly(firstBuild.getNumber());
+    }
+
+    @Test
+    void shouldStoreFilesOfDiffOutsideOfBuildRecord() throws Exception {
+        // given
+        List<UserRemoteConfig> remoteConfigs = new ArrayList<>();
+        remoteConfigs.add(new UserRemoteConfig(sampleRepoDir.getAbsolutePath(), "origin", "", null));
+        List<BranchSpec> branches = new ArrayList<>();
+        branches.add(new BranchSpec("master"));
+        GitSCM scm = new GitSCM(remoteConfigs, branches, false,
+                Collections.emptyList(), null, null,
+                Collections.singletonList(new DisableRemotePoll()));
+        FreeStyleProject project = jenkins.createFreeStyleProject("git-test");
+        project.setScm(scm);
+        LastChangesPublisher publisher = new LastChangesPublisher(SinceType.PREVIOUS_REVISION, FormatType.LINE, MatchingType.NONE, true, false, "0.50", "1500",
+                "c90d87de4d02cb5182629e09120cec053bfb3a00", null, null);
+        project.getPublishersList().add(publisher);
+        project.save();
+        FreeStyleBuild build = jenkins.buildAndAssertSuccess(project);
+        List<FileDiff> files = build.getAction(LastChangesBuildAction.class).getBuildChanges().getFiles();
+        assertThat(files).isNotEmpty();
+
+        // when
+        build.reload();
+
+        // then
+        assertThat(Files.readString(new File(build.getRootDir(), "build.xml").toPath())).doesNotContain("FileDiff").doesNotContain("<files>");
+        assertThat(new File(LastChangesBuildAction.getDiffsDir(build), "changes.files")).exists();
+        LastChanges loaded = build.getAction(LastChangesBuildAction.class).getBuildChanges();
+        assertThat(loaded.getFiles()).extracting(FileDiff::getPath, FileDiff::getChangeType, FileDiff::getAdded, FileDiff::getRemoved, FileDiff::getOffset, FileDiff::getLength)
+                .containsExactlyElementsOf(files.stream().map(file -> tuple(file.getPath(), file.getChangeType(), file.getAdded(), file.getRemoved(), file.getOffset(), file.getLength())).toList());
+    }
+
+    @Test
+    void shouldMoveInlineDiffsOutOfBuildRecordInBackground() throws Exception {
+        FreeStyleProject project = jenkins.createFreeStyleProject("inline-diffs");
+        FreeStyleBuild build = jenkins.buildAndAssertSuccess(project);
+        //diffs held in the build record, as published by older plugin versions
+        LastChanges lastChanges = new LastChanges(new CommitInfo().setCommitId("1"), null, "diff --git a/file b/file\n+line\n");
+        build.addAction(new LastChangesBuildAction(build, lastChanges, null));
+        build.save();
+
+        build.getAction(LastChangesBuildAction.class).onLoad(build);
+
+        //loading a build does not write it
+        assertThat(lastChanges.hasInlineDiffs()).isTrue();
+        assertThat(LastChangesBuildAction.getDiffsDir(build)).doesNotExist();
+
+        LastChangesDiffsMigration.migrate(build);
+
+        assertThat(lastChanges.hasInlineDiffs()).isFalse();
+        assertThat(new File(LastChangesBuildAction.getDiffsDir(build), "changes.diff.gz")).exists();
+        assertThat(lastChanges.getDiff()).isEqualTo("diff --git a/file b/file\n+line\n");
+    }
+
+    @Test
+    void shouldFindRepositoriesNestedInCheckout(@TempDir Path workspace) throws Exception {
+        Files.createDirectories(workspace.resolve(".git"));
+        Files.createDirectories(workspace.resolve("libs/first/.git"));
+        Files.createDirectories(workspace.resolve("libs/second/.svn"));
+        Files.createDirectories(workspace.resolve("node_modules/dependency/.git"));
+
+        FilePath ws = new FilePath(workspace.toFile());
+
+        assertThat(LastChangesPublisher.findVCSDirs(ws, true)).containsExactly(".git", "libs/first/.git", "libs/second/.svn");
+        assertThat(LastChangesPublisher.findVCSDirs(ws, false)).containsExactly(".git");
+    }
+
+    @Test
+    void shouldRefreshCachedVcsDirsWhenAnyIsDeleted(@TempDir Path workspace) throws Exception {
+        Files.createDirectories(workspace.resolve("first/.git"));
+        Files.createDirectories(workspace.resolve("second/.git"));
+        FilePath ws = new FilePath(workspace.toFile());
+        assertThat(LastChangesPublisher.findVCSDirs(ws, false)).containsExactly("first/.git", "second/.git");
+
+        FileUtils.deleteDirectory(workspace.resolve("second").toFile());
+        Files.createDirectories(workspace.resolve("third/.git"));
+
+        assertThat(LastChangesPublisher.findVCSDirs(ws, false)).containsExactly("first/.git", "third/.git");
+        assertThat(LastChangesPublisher.findVCSDirs(ws, true)).containsExactly("first/.git", "third/.git");
+    }
+
+    @Test
+    void shouldPersistEmptyLastChangesIndex() throws Exception {
+        FreeStyleProject project = jenkins.createFreeStyleProject("no-last-changes");
+        jenkins.buildAndAssertSuccess(project);
+
+        assertThat(LastChangesIndex.of(project).isEmpty()).isTrue();
+        //the builds of jobs which never published last changes are not scanned again after a restart
+        assertThat(new File(project.getRootDir(), LastChangesIndex.INDEX_FILE)).exists();
+    }
+
+    @Test
+    void shouldReuseCommitChangesPublishedByPreviousBuild() throws Exception {
+        // given
+        List<UserRemoteConfig> remoteConfigs = new ArrayList<>();
+        remoteConfigs.add(new UserRemoteConfig(sampleRepoDir.getAbsolutePath(), "origin", "", null));
+        List<BranchSpec> branches = new ArrayList<>();
+        branches.add(new BranchSpec("master"));
+        GitSCM scm = new GitSCM(remoteConfigs, branches, false,
+                Collections.emptyList(), null, null,
+                Collections.singletonList(new DisableRemotePoll()));
+        FreeStyleProject project = jenkins.createFreeStyleProject("git-test");
+        project.setScm(scm);
+        LastChangesPublisher publisher = new LastChangesPublisher(SinceType.PREVIOUS_REVISION, FormatType.LINE, MatchingType.NONE, true, false, "0.50", "1500",
+                "c90d87de4d02cb5182629e09120cec053bfb3a00", null, null);
+        project.getPublishersList().add(publisher);
+        project.save();
+
+        // when
+        FreeStyleBuild firstBuild = jenkins.buildAndAssertSuccess(project);
+        FreeStyleBuild secondBuild = jenkins.buildAndAssertSuccess(project);
+
+        // then
+        jenkins.assertLogNotContains("reused changes", firstBuild);
+        jenkins.assertLogContains("Last Changes Plugin: reused changes of 3 commit(s) published by previous builds.", secondBuild);
+        List<CommitChanges> firstCommits = firstBuild.getAction(LastChangesBuildAction.class).getBuildChanges().getCommits();
+        List<CommitChanges> secondCommits = secondBuild.getAction(LastChangesBuildAction.class).getBuildChanges().getCommits();
+        assertThat(secondCommits).hasSize(3);
+        for (int i = 0; i < firstCommits.size(); i++) {
+            assertThat(secondCommits.get(i).getChanges()).isNotEmpty().isEqualTo(firstCommits.get(i).getChanges());
+        }
+    }
+
+    @Test
+    void shouldServeChangedFilesAndTheirDiffsInBatches() throws Exception {
+        // given
+        List<UserRemoteConfig> remoteConfigs = new ArrayList<>();
+        remoteConfigs.add(new UserRemoteConfig(sampleRepoDir.getAbsolutePath(), "origin", "", null));
+        List<BranchSpec> branches = new ArrayList<>();
+        branches.add(new BranchSpec("master"));
+        GitSCM scm = new GitSCM(remoteConfigs, branches, false,
+                Collections.emptyList(), null, null,
+                Collections.singletonList(new DisableRemotePoll()));
+        FreeStyleProject project = jenkins.createFreeStyleProject("git-test");
+        project.setScm(scm);
+        LastChangesPublisher publisher = new LastChangesPublisher(SinceType.PREVIOUS_REVISION, FormatType.LINE, MatchingType.NONE, true, false, "0.50", "1500",
+                "c90d87de4d02cb5182629e09120cec053bfb3a00", null, null);
+        project.getPublishersList().add(publisher);
+        project.save();
+        FreeStyleBuild build = jenkins.buildAndAssertSuccess(project);
+        LastChanges lastChanges = build.getAction(LastChangesBuildAction.class).getBuildChanges();
+        int total = lastChanges.getFiles().size();
+        assertThat(total).isGreaterThan(1);
+        JenkinsRule.WebClient webClient = jenkins.createWebClient();
+        String url = build.getUrl() + "last-changes/";
+
+        // when
+        JSONObject files = JSONObject.fromObject(webClient.goTo(url + "files?start=1&limit=1", "application/json").getWebResponse().getContentAsString());
+        StringBuilder batches = new StringBuilder();
+        for (int start = 0; start < total; start += 2) {
+            batches.append(webClient.goTo(url + "fileDiffs?start=" + start + "&count=2", "text/plain").getWebResponse().getContentAsString());
+        }
+
+        // then
+        assertThat(files.getInt("total")).isEqualTo(total);
+        assertThat(files.getJSONArray("files")).hasSize(1);
+        assertThat(files.getJSONArray("files").getJSONObject(0).getString("path")).isEqualTo(lastChanges.getFiles().get(1).getPath());
+        //the batches, served from the diff decompressed once, make up the whole diff
+        assertThat(batches.toString()).isEqualTo(lastChanges.getDiff());
+        webClient.setThrowExceptionOnFailingStatusCode(false);
+        assertThat(webClient.goTo(url + "fileDiffs?start=" + total, null).getWebResponse().getStatusCode()).isEqualTo(404);
+    }
+
     @Test
     @Issue("JENKINS-53860")
     void shouldNotProduceWarnWhenJobDoesNotPublishLastChanges() throws Exception {
@@ -219,6 +429,41 @@ class LastChangesTest {
         jenkins.assertLogContains(" (previous) published successfully!", build);
     }
 
+    @Test
+    void shouldGetLastChangesOfAllRepositories() throws Exception {
+
+        // given
+        FreeStyleProject project = jenkins.createFreeStyleProject("multi-repository-test");
+        project.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws IOException, InterruptedException {
+                File workspace = new File(build.getWorkspace().getRemote());
+                FileUtils.copyDirectory(sampleRepoDir, new File(workspace, "first/.git"));
+                FileUtils.copyDirectory(new File(LastChangesTest.class.getResource("/git-with-tags-repo").getFile()), new File(workspace, "second/.git"));
+                return true;
+            }
+        });
+        LastChangesPublisher publisher = new LastChangesPublisher(SinceType.PREVIOUS_REVISION, FormatType.LINE, MatchingType.NONE, true, false, "0.50", "1500", null, null, null);
+        publisher.setAllRepositories(true);
+        project.getPublishersList().add(publisher);
+        project.save();
+
+        // when
+        FreeStyleBuild build = jenkins.buildAndAssertSuccess(project);
+
+        // then
+        LastChangesBuildAction action = build.getAction(LastChangesBuildAction.class);
+        assertThat(action).isNotNull();
+        assertThat(action.getRepositories()).extracting(LastChanges::getRepository).containsExactly("first", "second");
+        assertThat(action.getBuildChanges().getCurrentRevision().getCommitId()).isEqualTo("27ad83a8fbee4b551670a03fc035bf87f7a3bcfb");
+        LastChanges second = action.getRepository("1").getBuildChanges();
+        assertThat(second.getCurrentRevision().getCommitId()).isEqualTo("afc0bcd5a83cb7a73fe4b3db82fd4f4974e60691");
+        assertThat(second.getDiff()).startsWith("diff --git");
+        assertThat(action.getRepositoryChanges("second")).isSameAs(second);
+        jenkins.assertLogContains("Last changes of repository first from revision 27ad83a (current) to a511a43 (previous) published successfully!", build);
+        jenkins.assertLogContains("Last changes of repository second from revision afc0bcd (current)", build);
+    }
+
     @Test
     void shouldGetLastChangesOfLastSuccessfulBuild() throws Exception {
 